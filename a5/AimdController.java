@@ -0,0 +1,54 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: AimdController.java
+ *
+ **************************************************/
+
+/**
+ * Loss-based congestion control in the style of TCP Reno (RFC 5681):
+ * + slow start: the window grows by one packet per ACKed packet (i.e.,
+ *   doubles every RTT) until it reaches the slow start threshold
+ * + congestion avoidance: the window grows by about one packet per RTT
+ *   (additive increase)
+ * + a loss halves the window (multiplicative decrease) and a timeout
+ *   brings it back to one packet, restarting slow start
+ */
+public class AimdController implements CongestionController
+{
+    // initial window for packets larger than 2190 bytes (RFC 5681)
+    public static final int INITIAL_WINDOW = 2;
+    private static final int MIN_SSTHRESH = 2;
+
+    private double cwnd = INITIAL_WINDOW;      // congestion window
+    private double ssthresh = Integer.MAX_VALUE; // slow start threshold
+
+    @Override
+    public int window()
+    {
+        return (int) cwnd;
+    }// window
+
+    @Override
+    public void onAck(int ackedPackets, long rttNs, long nowNs)
+    {
+        if (cwnd < ssthresh)
+            cwnd = Math.min(cwnd + ackedPackets, Math.max(ssthresh, cwnd));
+        else
+            cwnd += (double) ackedPackets / cwnd;
+    }// onAck
+
+    @Override
+    public void onLoss(long nowNs)
+    {
+        ssthresh = Math.max(cwnd / 2, MIN_SSTHRESH);
+        cwnd = ssthresh;
+    }// onLoss
+
+    @Override
+    public void onTimeout(long nowNs)
+    {
+        ssthresh = Math.max(cwnd / 2, MIN_SSTHRESH);
+        cwnd = 1;
+    }// onTimeout
+}// AimdController
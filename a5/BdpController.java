@@ -0,0 +1,96 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: BdpController.java
+ *
+ **************************************************/
+
+/**
+ * Rate-based congestion control that sizes the window after the estimated
+ * bandwidth-delay product (BDP) of the path, in the spirit of BBR:
+ * + the delivery rate is measured once per round trip and the path's
+ *   bandwidth is taken as the max rate over the last few rounds
+ * + the path's propagation delay is taken as the min RTT seen so far
+ * + startup: the window doubles every round until the bandwidth stops
+ *   growing by at least 25% for three rounds in a row
+ * + then the window is kept at twice the BDP
+ * Losses are not taken as a congestion signal; a timeout goes back to
+ * startup.
+ */
+public class BdpController implements CongestionController
+{
+    private static final int MIN_WINDOW = 4;
+    private static final int MAX_WINDOW = 1 << 16;
+    private static final int BANDWIDTH_ROUNDS = 10;  // max filter length
+    private static final double WINDOW_GAIN = 2.0;
+    private static final double STARTUP_GROWTH = 1.25;
+    private static final int STARTUP_ROUNDS = 3;
+
+    private boolean startup = true;          // still probing for bandwidth
+    private int cwnd = MIN_WINDOW;           // congestion window
+    private long minRttNs = Long.MAX_VALUE;  // propagation delay estimate
+    private double[] rates =                 // delivery rates (packets/ns)
+            new double[BANDWIDTH_ROUNDS];    // of the last rounds
+    private int round;                       // # of rounds measured
+    private double fullBandwidth;            // startup: best rate so far
+    private int roundsWithoutGrowth;         // startup: # of flat rounds
+    private long delivered;                  // # of packets ACKed so far
+    private long roundStartNs = -1;          // start of the current round
+    private long roundStartDelivered;        // delivered at that time
+
+    @Override
+    public int window()
+    {
+        return cwnd;
+    }// window
+
+    @Override
+    public void onAck(int ackedPackets, long rttNs, long nowNs)
+    {
+        delivered += ackedPackets;
+        if (rttNs > 0)
+            minRttNs = Math.min(minRttNs, rttNs);
+        if (roundStartNs < 0) {
+            roundStartNs = nowNs;
+            roundStartDelivered = delivered;
+            return;
+        }
+        if (minRttNs == Long.MAX_VALUE || nowNs - roundStartNs < minRttNs)
+            return;
+        double rate = (double) (delivered - roundStartDelivered)
+                      / (nowNs - roundStartNs);
+        rates[round++ % BANDWIDTH_ROUNDS] = rate;
+        roundStartNs = nowNs;
+        roundStartDelivered = delivered;
+        double bandwidth = 0;
+        for (double r : rates)
+            bandwidth = Math.max(bandwidth, r);
+        if (startup) {
+            if (bandwidth >= fullBandwidth * STARTUP_GROWTH) {
+                fullBandwidth = bandwidth;
+                roundsWithoutGrowth = 0;
+            } else if (++roundsWithoutGrowth >= STARTUP_ROUNDS) {
+                startup = false;
+            }
+            cwnd = Math.min(2 * cwnd, MAX_WINDOW);
+        }
+        if (!startup)
+            cwnd = (int) Math.max(MIN_WINDOW, Math.min(MAX_WINDOW,
+                       Math.ceil(WINDOW_GAIN * bandwidth * minRttNs)));
+    }// onAck
+
+    @Override
+    public void onLoss(long nowNs)
+    {
+    }// onLoss
+
+    @Override
+    public void onTimeout(long nowNs)
+    {
+        startup = true;
+        cwnd = MIN_WINDOW;
+        fullBandwidth = 0;
+        roundsWithoutGrowth = 0;
+        roundStartNs = -1;
+    }// onTimeout
+}// BdpController
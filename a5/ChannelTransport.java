@@ -0,0 +1,227 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ChannelTransport.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Transport built on a DatagramChannel connected to the peer's receiver.
+ *
+ * It works on direct buffers, which the channel reads and writes in place
+ * (heap buffers would be copied into a temporary direct buffer on every
+ * call), and since the channel is connected, sending and receiving do not
+ * create any address object either. Datagrams from any other source are
+ * filtered out by the OS.
+ *
+ * An unconnected channel transport may share its port with other ones
+ * (SO_REUSEPORT), in which case the OS spreads the incoming datagrams over
+ * them by source address, so that the receiving work of an RDTServer can be
+ * spread over several threads.
+ *
+ * A connected channel transport may also be driven by an RDTEngine, which
+ * switches it to non-blocking mode (see register and receiveNow). A packet
+ * that does not fit in the socket's send buffer is then lost, as if the
+ * network had dropped it.
+ *
+ * Likewise, the first burst received (see the array flavour of receive)
+ * switches the channel to non-blocking mode for good: the datagrams that
+ * are waiting are drained one read after the other, and the receiving
+ * thread only blocks, in a selector of the transport, once there are none
+ * left. Every wakeup thus delivers as many datagrams as came in meanwhile.
+ *
+ * Unlike SocketTransport, this transport does not inject any error.
+ */
+public class ChannelTransport implements Transport
+{
+    private final DatagramChannel channel; // bound to our receiver port and
+                                           // connected to the peer's (if
+                                           // any)
+    private volatile Selector selector;    // waits for bursts (null: no
+                                           // burst received yet)
+
+    public ChannelTransport(InetAddress peerIpAddress,
+                            int rcvPortNum,
+                            int peerRcvPortNum) throws IOException
+    {
+        channel = DatagramChannel.open();
+        try {
+            channel.bind(new InetSocketAddress(rcvPortNum));
+            channel.connect(new InetSocketAddress(peerIpAddress,
+                                                  peerRcvPortNum));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }// constructor
+
+    // creates an unconnected transport bound to the given port, which it
+    // may share with other transports if reusePort is true
+    public ChannelTransport(int rcvPortNum, boolean reusePort)
+        throws IOException
+    {
+        channel = DatagramChannel.open();
+        try {
+            if (reusePort)
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            channel.bind(new InetSocketAddress(rcvPortNum));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }// constructor
+
+    // returns true if and only if transports can share a port on this OS
+    public static boolean reusePortSupported()
+    {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            return channel.supportedOptions()
+                          .contains(StandardSocketOptions.SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }// reusePortSupported
+
+    @Override
+    public ByteBuffer allocate(int capacity)
+    {
+        return ByteBuffer.allocateDirect(capacity);
+    }// allocate
+
+    /**
+     * Writes the packet to the channel. When the peer is not up yet, the OS
+     * reports it (ICMP port unreachable) on the next write or read of a
+     * connected channel: the packet is then treated as lost.
+     */
+    @Override
+    public void send(ByteBuffer packet) throws IOException
+    {
+        try {
+            channel.write(packet);
+        } catch (PortUnreachableException e) {
+            packet.position(packet.limit());
+        }
+    }// send
+
+    @Override
+    public void sendTo(ByteBuffer packet, SocketAddress address)
+        throws IOException
+    {
+        channel.send(packet, address);
+    }// sendTo
+
+    @Override
+    public SocketAddress receiveFrom(ByteBuffer packet) throws IOException
+    {
+        return channel.receive(packet);
+    }// receiveFrom
+
+    @Override
+    public int receive(ByteBuffer packet) throws IOException
+    {
+        if (!channel.isConnected()) {
+            int start = packet.position();
+            channel.receive(packet);
+            return packet.position() - start;
+        }
+        while (true) {
+            try {
+                return channel.read(packet);
+            } catch (PortUnreachableException e) {
+                // reported for an earlier send: keep waiting
+            }
+        }
+    }// receive
+
+    /**
+     * Reads the datagrams waiting in the channel, up to one per buffer, and
+     * waits in the selector of this transport for more only if there are
+     * none (see the class comment)
+     */
+    @Override
+    public int receive(ByteBuffer[] packets, int[] lengths)
+        throws IOException
+    {
+        if (selector == null) {
+            Selector newSelector = Selector.open();
+            register(newSelector, null);
+            selector = newSelector;
+        }
+        while (true) {
+            int n = 0;
+            while (n < packets.length) {
+                int length = receiveNow(packets[n]);
+                if (length < 0)
+                    break;
+                lengths[n++] = length;
+            }
+            if (n > 0)
+                return n;
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+            } catch (ClosedSelectorException e) {
+                throw new AsynchronousCloseException(); // see close
+            }
+        }
+    }// receive
+
+    @Override
+    public void reserveBuffers(int bytes) throws IOException
+    {
+        if (channel.getOption(StandardSocketOptions.SO_RCVBUF) < bytes)
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, bytes);
+        if (channel.getOption(StandardSocketOptions.SO_SNDBUF) < bytes)
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, bytes);
+    }// reserveBuffers
+
+    /**
+     * Switches the channel to non-blocking mode and registers it with the
+     * given selector for reading, with the given attachment
+     */
+    SelectionKey register(Selector selector, Object attachment)
+        throws IOException
+    {
+        channel.configureBlocking(false);
+        return channel.register(selector, SelectionKey.OP_READ, attachment);
+    }// register
+
+    /**
+     * Same as receive on a connected transport in non-blocking mode,
+     * except that it returns -1 right away if no datagram is waiting
+     */
+    int receiveNow(ByteBuffer packet) throws IOException
+    {
+        while (true) {
+            try {
+                int length = channel.read(packet);
+                return length > 0 ? length : -1;
+            } catch (PortUnreachableException e) {
+                // reported for an earlier send: look for the next datagram
+            }
+        }
+    }// receiveNow
+
+    @Override
+    public void close() throws IOException
+    {
+        // the selector first: a channel registered with a selector stays
+        // bound to its port until the selector lets go of it
+        if (selector != null)
+            selector.close(); // also wakes up a pending receive
+        channel.close();
+    }// close
+}// ChannelTransport
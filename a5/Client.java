@@ -9,6 +9,16 @@ import java.awt.BorderLayout;
 import java.awt.Image;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.DataFormatException;
 
 import javax.imageio.ImageIO;
 import javax.swing.ImageIcon;
@@ -20,22 +30,63 @@ import javax.swing.JLabel;
  */
 public class Client
 {
+    private static final String PARTIAL_SUFFIX = ".part"; // of the files
+                                       // being received
     private RDT rdt;                   // the client-side rdt instance 
     private String fileName;           // name of the image file to be received
     private JFrame frame;              // window to display the image
     private ByteArrayOutputStream out; // stream used to store the data bytes in
       // the image file into a byte array to be displayed in the frame above
+    private File saveFolder;           // if set, the file is written there as
+                                       // it comes in instead of in memory
+    private boolean display;           // display the image once received
+    private boolean resume;            // resume interrupted transfers
+    private RDT[] streams;             // rdt, followed by the other instances
+                                       // of a parallel transfer, if any
+    private boolean compress;          // accept deflated chunks
 
     /**
      * Constructor: creates the rdt instance with its IP address and the port
      *              number of its receiver, as well as the port number of its
      *              peer's receiver; then the thread sleeps of 0.1 second.
+     *              The rdt mode and window size are read from the rdt.*
+     *              system properties (see RDTConfig). The file is streamed
+     *              to the folder given by the client.saveTo property, if
+     *              any, and the image is displayed unless the
+     *              client.display property is false. The client.port
+     *              property, if set, replaces the port of the receiver
+     *              (0: any free port), so that several clients can run on
+     *              the same host against a session server. The
+     *              client.streams property gives the # of rdt instances
+     *              over which the file is received in parallel (default: 1,
+     *              see Streams); it must match the server's. Files are
+     *              saved as name.part until complete, and unless the
+     *              client.resume property is false, the client resumes
+     *              the transfer of any such partial file in the folder
+     *              instead of asking for a new file. Unless the
+     *              client.compress property is false, the client tells
+     *              the server that it accepts deflated chunks (see
+     *              Compression).
      */
     public Client(String ipAddress, 
                   int rcvPortNum,
                   int peerRcvPortNum) throws Exception
     {
-        rdt = new RDT(ipAddress, rcvPortNum, peerRcvPortNum, "");
+        rcvPortNum = Integer.getInteger("client.port", rcvPortNum);
+        RDTConfig config = RDTConfig.fromSystemProperties();
+        rdt = new RDT(ipAddress, rcvPortNum, peerRcvPortNum, "", config);
+        streams = Streams.open(rdt, Integer.getInteger("client.streams", 1),
+                               ipAddress, rcvPortNum, peerRcvPortNum, "",
+                               config);
+        String folder = System.getProperty("client.saveTo");
+        if (folder != null)
+            saveFolder = new File(folder);
+        display = Boolean.parseBoolean(
+            System.getProperty("client.display", "true"));
+        resume = Boolean.parseBoolean(
+            System.getProperty("client.resume", "true"));
+        compress = Boolean.parseBoolean(
+            System.getProperty("client.compress", "true"));
         Thread.sleep(100); 
     }// constructor
 
@@ -49,39 +100,72 @@ public class Client
      * 1) loop on the file chunks, writing them to disk (and sending 
      *    appropriate messages to the console), making sure to have the thread
      *    yield after each block.
-     * 2) display the image for two seconds (using the Thread.sleep method)
+     * 2) once the whole file is in, close the rdt instances (see
+     *    RDT.close), then display the image for two seconds (using the
+     *    Thread.sleep method), unless display is turned off
      * 3) close the frame before exiting the program.
+     * The rdt instances are closed whatever happens, so that the program
+     * ends with their threads.
      */
     public void run() throws Exception
     {
-        sendFileRequest(); // Send initial request for an image file
+        try {
+            receive();
+        } finally {
+            Streams.close(streams);
+        }
+    }// run
+
+    // runs the protocol described above
+    private void receive() throws Exception
+    {
+        String resumedName = findPartialFile();
+        if (resumedName != null)
+            sendResumeRequest(resumedName);
+        else
+            sendFileRequest(); // Send initial request for an image file
 
         if (getFileName()) { // If a file name was received
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            boolean done = false;
-            while (!done) {
-                byte[] msg = rdt.receiveData();
-                switch (msg[0]) {
-                    case A5.MSG_FILE_DATA:
-                        // Append data to ByteArrayOutputStream
-                        out.write(msg, 1, msg.length - 1);
-                        A5.print("", "CLIENT received file chunk of " + (msg.length - 1) + " bytes");
-                        break;
-                    case A5.MSG_FILE_DONE:
-                        A5.print("", "CLIENT received file done message");
-                        displayImage(out.toByteArray());
-                        Thread.sleep(2000); 
-                        frame.setVisible(false);
-                        frame.dispose();
-                        done = true;
-                        System.exit(0);
+            byte[] fileData = null;
+            File file = null;
+            File part = null;
+            if (saveFolder != null) {
+                // the server's file name must not escape the save folder
+                file = new File(saveFolder, new File(fileName).getName());
+                part = partialFile(file);
+            }
+            if (resumedName != null && part != null)
+                resumeFile(part);
+            else if (streams.length > 1)
+                fileData = receiveFileRanges(part);
+            else if (part == null)
+                fileData = receiveFile();
+            else
+                receiveFile(part);
+            if (part != null) {
+                Files.move(part.toPath(), file.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+                if (display)
+                    fileData = Files.readAllBytes(file.toPath());
+            }
+            Streams.close(streams);
+            if (display) {
+                displayImage(fileData);
+                Thread.sleep(2000); 
+                if (frame != null) {
+                    frame.setVisible(false);
+                    frame.dispose();
                 }
+                System.exit(0); // ends the AWT threads too
             }
         } else {
             A5.print("", "CLIENT no image file available");
+            if (resumedName != null) // the server no longer has it
+                Files.deleteIfExists(
+                    partialFile(new File(saveFolder, resumedName)).toPath());
             return; // Exit if no image file is available
         }
-    }// run
+    }// receive
 
     // Do not modify this method
     public static void main(String[] args)
@@ -125,12 +209,253 @@ public class Client
         }
     }// displayImage
 
+    // receives the file chunks into memory and returns the file's content
+    private byte[] receiveFile() throws DataFormatException, IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Compression.ChunkInflater inflater = new Compression.ChunkInflater();
+        ByteBuffer chunk = ByteBuffer.allocate(A5.MAX_DATA_SIZE);
+        try {
+            while (true) {
+                byte[] msg = Messages.receive(rdt, "file done");
+                switch (msg[0]) {
+                    case Messages.MSG_FILE_DATA_DEFLATED:
+                        chunk.clear();
+                        inflater.inflate(ByteBuffer.wrap(msg, 1, msg.length - 1),
+                                         chunk);
+                        out.write(chunk.array(), 0, chunk.position());
+                        A5.print("", "CLIENT received file chunk of " + chunk.position() + " bytes (" + (msg.length - 1) + " deflated)");
+                        break;
+                    case A5.MSG_FILE_DATA:
+                        // Append data to ByteArrayOutputStream
+                        out.write(msg, 1, msg.length - 1);
+                        A5.print("", "CLIENT received file chunk of " + (msg.length - 1) + " bytes");
+                        break;
+                    case A5.MSG_FILE_DONE:
+                        A5.print("", "CLIENT received file done message");
+                        return out.toByteArray();
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }// receiveFile
+
+    /**
+     * Receives the file chunks and writes them to the given file as they
+     * come in, so that the file is never held in memory. Once the size of
+     * the file is known (MSG_FILE_SIZE), the file is preallocated and
+     * mapped, and chunks are copied straight into the mapping; otherwise
+     * (or past the announced size) they are written through the channel.
+     * Deflated chunks are inflated first, into a buffer of their own.
+     */
+    private void receiveFile(File file) throws Exception
+    {
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        ByteBuffer plain = ByteBuffer.allocate(A5.MAX_DATA_SIZE);
+        Compression.ChunkInflater inflater = new Compression.ChunkInflater();
+        MappedByteBuffer map = null;
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (true) {
+                Messages.receive(rdt, msg, "file done");
+                byte type = msg.get();
+                if (type == Messages.MSG_FILE_SIZE) {
+                    long size = msg.getLong();
+                    if (size > 0 && size <= Integer.MAX_VALUE)
+                        map = channel.map(FileChannel.MapMode.READ_WRITE,
+                                          0, size);
+                } else if (type == A5.MSG_FILE_DATA ||
+                           type == Messages.MSG_FILE_DATA_DEFLATED) {
+                    ByteBuffer chunk = msg;
+                    if (type == Messages.MSG_FILE_DATA_DEFLATED) {
+                        plain.clear();
+                        inflater.inflate(msg, plain);
+                        chunk = plain.flip();
+                    }
+                    int length = chunk.remaining();
+                    if (map != null && map.remaining() < length)
+                        map = null; // past the announced size
+                    if (map != null)
+                        map.put(chunk);
+                    else
+                        while (chunk.hasRemaining())
+                            channel.write(chunk, written + length
+                                                 - chunk.remaining());
+                    written += length;
+                    A5.print("", "CLIENT received file chunk of " + length + " bytes");
+                    Thread.yield();
+                } else if (type == A5.MSG_FILE_DONE) {
+                    A5.print("", "CLIENT received file done message");
+                    break;
+                }
+            }
+            // the announced size may have been wrong
+            channel.truncate(written);
+        } finally {
+            inflater.end();
+        }
+    }// receiveFile
+
+    /**
+     * Receives the file over all the streams at once (see Server's
+     * sendFileRanges): once stream 0 got the size of the file, each stream
+     * writes its chunks at their offset, either into the given file or (if
+     * the file is null) into memory, whose content is then returned.
+     */
+    private byte[] receiveFileRanges(File file) throws Exception
+    {
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        Messages.receive(rdt, msg, "file size");
+        if (msg.get() != Messages.MSG_FILE_SIZE)
+            throw new IOException("file size expected");
+        long size = msg.getLong();
+        if (size < 0 || (file == null && size > Integer.MAX_VALUE))
+            throw new IOException("file size out of range: " + size);
+        if (file == null) {
+            byte[] fileData = new byte[(int) size];
+            ByteBuffer target = ByteBuffer.wrap(fileData);
+            Streams.forEach(streams.length,
+                            i -> receiveRange(i, size, target, null));
+            return fileData;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                 StandardOpenOption.TRUNCATE_EXISTING)) {
+            Streams.forEach(streams.length,
+                            i -> receiveRange(i, size, null, channel));
+        }
+        return null;
+    }// receiveFileRanges
+
+    /**
+     * Copies the chunks of the file of the given size received over the
+     * given stream, until that stream is done, at their offset into either
+     * the given buffer, which holds the whole file, or (if the buffer is
+     * null) the file open on the given channel, through positional writes,
+     * so that the file may be of any size and written by several streams
+     * at once. Deflated chunks are inflated first, into a buffer of their
+     * own.
+     */
+    private void receiveRange(int stream, long size, ByteBuffer target,
+                              FileChannel channel)
+        throws DataFormatException, IOException
+    {
+        RDT in = streams[stream];
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        ByteBuffer plain = ByteBuffer.allocate(A5.MAX_DATA_SIZE);
+        Compression.ChunkInflater inflater = new Compression.ChunkInflater();
+        try {
+            while (true) {
+                Messages.receive(in, msg, "file done on stream " + stream);
+                byte type = msg.get();
+                if (type == Messages.MSG_FILE_RANGE ||
+                    type == Messages.MSG_FILE_RANGE_DEFLATED) {
+                    long offset = msg.getLong();
+                    ByteBuffer chunk = msg;
+                    String deflated = "";
+                    if (type == Messages.MSG_FILE_RANGE_DEFLATED) {
+                        deflated = " (" + msg.remaining() + " deflated)";
+                        plain.clear();
+                        inflater.inflate(msg, plain);
+                        chunk = plain.flip();
+                    }
+                    int length = chunk.remaining();
+                    if (offset < 0 || offset > size - length)
+                        throw new IOException("chunk out of the file: "
+                                              + offset);
+                    if (target != null)
+                        target.put((int) offset, chunk, chunk.position(),
+                                   length);
+                    else
+                        while (chunk.hasRemaining())
+                            channel.write(chunk, offset + length
+                                                 - chunk.remaining());
+                    A5.print("", "CLIENT received file chunk of " + length + " bytes" + deflated + " at offset " + offset + " on stream " + stream);
+                    Thread.yield();
+                } else if (type == A5.MSG_FILE_DONE) {
+                    A5.print("", "CLIENT received file done message on stream " + stream);
+                    return;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+    }// receiveRange
+
+    /**
+     * Resumes the transfer of the file whose partial copy is the given file:
+     * once the manifest is in, tells the server which chunks of the copy
+     * are intact, then writes the other chunks, which the server sends
+     * tagged with their offset, in place (see receiveRange)
+     */
+    private void resumeFile(File part) throws Exception
+    {
+        try (FileChannel channel = FileChannel.open(part.toPath(),
+                 StandardOpenOption.CREATE, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE)) {
+            Manifest manifest = Manifest.receive(rdt);
+            BitSet intact = manifest.intactChunks(channel);
+            manifest.sendChunkSet(rdt, intact);
+            A5.print("", "CLIENT has " + intact.cardinality() + " of " + manifest.chunkCount() + " chunks");
+            if (channel.size() > manifest.size())
+                channel.truncate(manifest.size());
+            receiveRange(0, manifest.size(), null, channel);
+        }
+    }// resumeFile
+
+    // returns the name of a file whose transfer was interrupted, i.e., of
+    // which there is a partial copy in the save folder, or null if there is
+    // none (or if resuming is turned off)
+    private String findPartialFile()
+    {
+        if (saveFolder == null || !resume)
+            return null;
+        String[] names = saveFolder.list();
+        if (names != null)
+            for (String name : names)
+                if (name.endsWith(PARTIAL_SUFFIX) &&
+                    name.length() > PARTIAL_SUFFIX.length())
+                    return name.substring(0, name.length()
+                                             - PARTIAL_SUFFIX.length());
+        return null;
+    }// findPartialFile
+
+    // returns the file holding the given file while it is being received
+    private static File partialFile(File file)
+    {
+        return new File(file.getPath() + PARTIAL_SUFFIX);
+    }// partialFile
+
+    /**
+     * Sends the MSG_RESUME_FILE message for the file with the given name,
+     * with the DEFLATE flag if the client accepts deflated chunks
+     */
+    private void sendResumeRequest(String name)
+    {
+        byte[] data = name.getBytes();
+        byte[] msg = new byte[data.length + 2];
+        msg[0] = Messages.MSG_RESUME_FILE;
+        msg[1] = compress ? Compression.DEFLATE : 0;
+        System.arraycopy(data, 0, msg, 2, data.length);
+        rdt.sendData(msg);
+        A5.print("", "CLIENT sent request to resume " + name);
+    }// sendResumeRequest
+
     /**
-     * Sends the MSG_REQUEST_IMG_FILE message
+     * Sends the MSG_REQUEST_IMG_FILE message, followed by the DEFLATE flag
+     * if the client accepts deflated chunks
      */
     private void sendFileRequest()
     {
-        rdt.sendData(new byte[]{A5.MSG_REQUEST_IMG_FILE});
+        if (compress)
+            rdt.sendData(new byte[]{A5.MSG_REQUEST_IMG_FILE,
+                                    Compression.DEFLATE});
+        else
+            rdt.sendData(new byte[]{A5.MSG_REQUEST_IMG_FILE});
         A5.print("", "CLIENT sent file request");
     }// sendFileRequest
 
@@ -139,9 +464,9 @@ public class Client
      * only if the message received is MSG_FILE_NAME, in which case it updates
      * the appropriate instance variable.
      */    
-    private boolean getFileName()
+    private boolean getFileName() throws IOException
     {
-        byte[] msg = rdt.receiveData();
+        byte[] msg = Messages.receive(rdt, "file name");
         if (msg[0] == A5.MSG_FILE_NAME) {
             fileName = new String(msg, 1, msg.length - 1);
             A5.print("", "CLIENT got file name: " + fileName);
@@ -0,0 +1,149 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Compression.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression of the file chunks.
+ *
+ * A client that can inflate chunks says so in its file request, which it
+ * follows with a byte of flags (DEFLATE), as it does in its requests to
+ * resume a file (see Messages.MSG_RESUME_FILE); older servers ignore it. The
+ * server then decides for each transfer whether to compress: not for
+ * formats that are compressed already (by extension, e.g., PNG or JPEG),
+ * nor when the first chunk looks random (high byte entropy). Each chunk is
+ * deflated on its own (raw deflate, no dictionary carried over), so that
+ * any chunk can be inflated whatever the order in which chunks are
+ * delivered, and is sent as a MSG_FILE_DATA_DEFLATED (or, within a range,
+ * MSG_FILE_RANGE_DEFLATED) message only if that makes it smaller;
+ * otherwise it goes out as a plain MSG_FILE_DATA (or MSG_FILE_RANGE).
+ */
+public class Compression
+{
+    // flag following MSG_REQUEST_IMG_FILE and MSG_RESUME_FILE: the client
+    // inflates chunks
+    public static final byte DEFLATE = 1;
+
+    // above this # of bits per byte, data is not worth deflating
+    private static final double MAX_ENTROPY = 7.5;
+
+    private static final String[] COMPRESSED_FORMATS = {
+        ".png", ".jpg", ".jpeg", ".gif", ".webp", ".zip", ".gz"
+    };
+
+    /**
+     * Returns true if and only if the file with the given name, whose first
+     * chunk is between the position and the limit of the given buffer, is
+     * worth compressing
+     */
+    public static boolean worthCompressing(String fileName, ByteBuffer first)
+    {
+        String name = fileName.toLowerCase();
+        for (String extension : COMPRESSED_FORMATS)
+            if (name.endsWith(extension))
+                return false;
+        return entropy(first) <= MAX_ENTROPY;
+    }// worthCompressing
+
+    // returns the Shannon entropy, in bits per byte, of the bytes between
+    // the position and the limit of the given buffer
+    static double entropy(ByteBuffer data)
+    {
+        int[] counts = new int[256];
+        int n = data.remaining();
+        for (int i = data.position(); i < data.limit(); i++)
+            counts[data.get(i) & 0xff]++;
+        double bits = 0;
+        for (int count : counts)
+            if (count > 0)
+                bits -= count * Math.log((double) count / n);
+        return n == 0 ? 0 : bits / n / Math.log(2);
+    }// entropy
+
+    /***********************************************************************
+     * inner class: ChunkDeflater
+     ***********************************************************************/
+
+    /** Deflates chunks one at a time (single thread). */
+    public static class ChunkDeflater
+    {
+        private final Deflater deflater;
+
+        public ChunkDeflater(int level)
+        {
+            deflater = new Deflater(level, true);
+        }// constructor
+
+        /**
+         * Deflates the bytes between the position and the limit of the
+         * given chunk into the given buffer, from its position, and returns
+         * true, unless the result would not be smaller than the chunk or
+         * does not fit in the buffer, in which case it returns false (the
+         * position of the buffer is then meaningless). The position of the
+         * chunk is left unchanged.
+         */
+        public boolean deflate(ByteBuffer chunk, ByteBuffer out)
+        {
+            int length = chunk.remaining();
+            int start = out.position();
+            ByteBuffer input = chunk.duplicate();
+            deflater.reset();
+            deflater.setInput(input);
+            deflater.finish();
+            int limit = out.limit();
+            out.limit(Math.min(limit, start + length - 1));
+            while (!deflater.finished() && out.hasRemaining())
+                deflater.deflate(out);
+            out.limit(limit);
+            return deflater.finished();
+        }// deflate
+
+        // releases the native resources of the deflater
+        public void end()
+        {
+            deflater.end();
+        }// end
+    }// ChunkDeflater
+
+    /***********************************************************************
+     * inner class: ChunkInflater
+     ***********************************************************************/
+
+    /** Inflates chunks one at a time (single thread). */
+    public static class ChunkInflater
+    {
+        private final Inflater inflater = new Inflater(true);
+
+        /**
+         * Inflates the bytes between the position and the limit of the
+         * given deflated chunk into the given buffer, from its position,
+         * and returns the length of the chunk
+         */
+        public int inflate(ByteBuffer deflated, ByteBuffer out)
+            throws DataFormatException
+        {
+            int start = out.position();
+            inflater.reset();
+            inflater.setInput(deflated);
+            while (!inflater.finished()) {
+                if (!out.hasRemaining() ||
+                    (inflater.inflate(out) == 0 && inflater.needsInput()))
+                    throw new DataFormatException("bad deflated chunk");
+            }
+            return out.position() - start;
+        }// inflate
+
+        // releases the native resources of the inflater
+        public void end()
+        {
+            inflater.end();
+        }// end
+    }// ChunkInflater
+}// Compression
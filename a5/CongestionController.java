@@ -0,0 +1,33 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: CongestionController.java
+ *
+ **************************************************/
+
+/**
+ * Congestion control algorithm used by an RDT sender.
+ *
+ * The sender never has more packets in flight than the window returned by
+ * the controller (nor than its own window size or the window advertised by
+ * the peer's receiver). The sender calls every method while holding its
+ * send lock, so implementations need not be thread-safe.
+ */
+public interface CongestionController
+{
+    // returns the congestion window, i.e., the max # of packets in flight
+    int window();
+
+    /**
+     * Called when an ACK acknowledges the given number of packets for the
+     * first time. rttNs is the RTT sample taken from that ACK, or -1 if the
+     * ACK did not yield one (see Karn's rule in RttEstimator).
+     */
+    void onAck(int ackedPackets, long rttNs, long nowNs);
+
+    // called once per loss detected by duplicate ACKs or SACKs
+    void onLoss(long nowNs);
+
+    // called when the retransmission timer of the oldest packet goes off
+    void onTimeout(long nowNs);
+}// CongestionController
@@ -0,0 +1,159 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ContentCache.java
+ *
+ **************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least-recently-used cache of the content of files, along with their
+ * manifest once computed, bounded by the total # of bytes held, so that
+ * popular files are served without any disk I/O nor re-hashing.
+ *
+ * An entry is reloaded if its file changed on disk (size or modification
+ * time) and can be dropped explicitly (e.g., by a FileCatalog). Files larger
+ * than the capacity are not cached (see get). Two threads missing the same
+ * file at the same time may both load it; the last one wins.
+ */
+public class ContentCache
+{
+    /** Content of a file, read-only, with its manifest (computed the first
+     *  time it is needed, i.e., when a transfer of the file is resumed).
+     */
+    public static class Entry
+    {
+        private final ByteBuffer content;   // the whole file
+        private Manifest manifest;          // null until needed
+        private final long lastModified;    // of the file when loaded
+
+        private Entry(ByteBuffer inContent, long inLastModified)
+        {
+            content = inContent;
+            lastModified = inLastModified;
+        }// constructor
+
+        // returns a read-only view of the content, positioned at 0
+        public ByteBuffer content()
+        {
+            return content.duplicate();
+        }// content
+
+        public synchronized Manifest manifest()
+        {
+            if (manifest == null)
+                manifest = Manifest.of(content.duplicate());
+            return manifest;
+        }// manifest
+    }// Entry
+
+    private final long capacity;               // max # of bytes held
+    private long size;                         // # of bytes held
+    private final LinkedHashMap<String, Entry> entries = // by file path, in
+            new LinkedHashMap<>(16, 0.75f, true);       // access order
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // creates a cache holding up to the given # of bytes of content (at most
+    // Integer.MAX_VALUE, the largest file that fits in a buffer)
+    public ContentCache(long inCapacity)
+    {
+        capacity = Math.min(inCapacity, Integer.MAX_VALUE);
+    }// constructor
+
+    /**
+     * Returns the content of the given file, from the cache if it holds the
+     * current version of the file, from disk otherwise, or null if the file
+     * is larger than the cache (it is then to be read from disk as it is
+     * sent)
+     */
+    public Entry get(File file) throws IOException
+    {
+        String key = file.getPath();
+        long lastModified = file.lastModified();
+        if (file.length() > capacity)
+            return null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.lastModified == lastModified &&
+                entry.content.capacity() == file.length()) {
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        Entry entry = load(file, lastModified);
+        synchronized (this) {
+            Entry old = entries.remove(key);
+            if (old != null)
+                size -= old.content.capacity();
+            entries.put(key, entry);
+            size += entry.content.capacity();
+            evict();
+        }
+        return entry;
+    }// get
+
+    // drops the given file from the cache, if it is there
+    public synchronized void invalidate(File file)
+    {
+        Entry old = entries.remove(file.getPath());
+        if (old != null)
+            size -= old.content.capacity();
+    }// invalidate
+
+    // returns the # of bytes held
+    public synchronized long size()
+    {
+        return size;
+    }// size
+
+    // returns the # of requests served from the cache
+    public long hits()
+    {
+        return hits.sum();
+    }// hits
+
+    // returns the # of requests that had to read the file
+    public long misses()
+    {
+        return misses.sum();
+    }// misses
+
+    // drops the least recently used entries until the cache fits in its
+    // capacity
+    private void evict()
+    {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (size > capacity && it.hasNext()) {
+            size -= it.next().getValue().content.capacity();
+            it.remove();
+        }
+    }// evict
+
+    // reads the given file
+    private static Entry load(File file, long lastModified) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                                                    StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("file too large: " + length);
+            ByteBuffer content = ByteBuffer.allocate((int) length);
+            while (content.hasRemaining())
+                if (channel.read(content) < 0)
+                    throw new IOException("file shrank: " + channel.size());
+            content.flip();
+            return new Entry(content.asReadOnlyBuffer(), lastModified);
+        }
+    }// load
+}// ContentCache
@@ -0,0 +1,55 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Crc32cCheck.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * CRC-32C (Castagnoli) integrity field (4 bytes, big-endian).
+ *
+ * It detects every error burst of up to 32 bits and any odd number of bit
+ * flips, and the JVM computes it with the CRC32 instructions of x86 (SSE4.2)
+ * and ARMv8, i.e., several bytes per cycle on heap and direct buffers alike.
+ */
+public class Crc32cCheck implements IntegrityCheck
+{
+    private static final int SIZE = 4;
+    private static final ThreadLocal<CRC32C> CRC = // CRC32C is stateful
+            ThreadLocal.withInitial(CRC32C::new);
+
+    @Override
+    public int size()
+    {
+        return SIZE;
+    }// size
+
+    @Override
+    public void sign(ByteBuffer packet, int length)
+    {
+        packet.putInt(length, crc(packet, length));
+    }// sign
+
+    @Override
+    public boolean verify(ByteBuffer packet, int length)
+    {
+        return length >= SIZE &&
+               packet.getInt(length - SIZE) == crc(packet, length - SIZE);
+    }// verify
+
+    // returns the CRC of the first length bytes of the given buffer
+    private static int crc(ByteBuffer buffer, int length)
+    {
+        CRC32C crc = CRC.get();
+        crc.reset();
+        int position = buffer.position();
+        int limit = buffer.limit();
+        buffer.limit(length).position(0);
+        crc.update(buffer);
+        buffer.limit(limit).position(position);
+        return (int) crc.getValue();
+    }// crc
+}// Crc32cCheck
@@ -0,0 +1,145 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: FileCatalog.java
+ *
+ **************************************************/
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * In-memory list of the image files of a folder, kept up to date by a
+ * WatchService, so that picking a file for a request does not list the
+ * folder every time.
+ *
+ * The list is replaced as a whole whenever a file is added or removed, so
+ * that readers never lock. A daemon thread waits for the changes; every file
+ * that is changed or removed is also reported to the listener given to the
+ * constructor (e.g., to drop it from a ContentCache). If the watch service
+ * loses events, the folder is listed again.
+ */
+public class FileCatalog
+{
+    private final Path folder;                  // watched folder
+    private final Consumer<String> listener;    // told about changed files
+    private final WatchService watcher;
+    private final TreeSet<String> names =       // image files (guarded by
+            new TreeSet<>();                    // this)
+    private volatile String[] snapshot =        // copy of names for the
+            new String[0];                      // readers
+
+    /**
+     * Creates the catalog of the given folder and starts watching it; the
+     * given listener is called with the name of every image file that is
+     * changed or removed
+     */
+    public FileCatalog(File inFolder, Consumer<String> inListener)
+        throws IOException
+    {
+        folder = inFolder.toPath();
+        listener = inListener;
+        watcher = FileSystems.getDefault().newWatchService();
+        folder.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+        rescan();
+        Thread thread = new Thread(this::watch, "file-catalog");
+        thread.setDaemon(true);
+        thread.start();
+    }// constructor
+
+    // returns true if and only if the given file name is that of an image
+    // file (same rule as Server's getRandomImageFile, plus uncompressed
+    // bitmaps, which are worth deflating; see Compression)
+    public static boolean isImage(String fileName)
+    {
+        String name = fileName.toLowerCase();
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") ||
+               name.endsWith(".gif") || name.endsWith(".png") ||
+               name.endsWith(".bmp");
+    }// isImage
+
+    // returns the name of an image file picked at random, or null if there
+    // is none
+    public String randomFile()
+    {
+        String[] files = snapshot;
+        if (files.length == 0)
+            return null;
+        return files[ThreadLocalRandom.current().nextInt(files.length)];
+    }// randomFile
+
+    // returns the # of image files in the catalog
+    public int size()
+    {
+        return snapshot.length;
+    }// size
+
+    // stops watching the folder
+    public void close() throws IOException
+    {
+        watcher.close();
+    }// close
+
+    /**
+     * Implements the watching thread: in an infinite loop, waits for
+     * changes in the folder and applies them to the catalog
+     */
+    private void watch()
+    {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        rescan();
+                        continue;
+                    }
+                    String name = ((Path) event.context()).toString();
+                    if (!isImage(name))
+                        continue;
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)
+                        update(name, true);
+                    else if (event.kind() ==
+                             StandardWatchEventKinds.ENTRY_DELETE)
+                        update(name, false);
+                    listener.accept(name);
+                }
+                if (!key.reset())
+                    break; // the folder is gone
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the catalog was closed
+        }
+    }// watch
+
+    // adds or removes the given file
+    private synchronized void update(String name, boolean present)
+    {
+        if (present ? names.add(name) : names.remove(name))
+            snapshot = names.toArray(new String[0]);
+    }// update
+
+    // lists the folder again
+    private synchronized void rescan()
+    {
+        names.clear();
+        String[] files = folder.toFile().list();
+        if (files != null)
+            for (String name : files)
+                if (isImage(name))
+                    names.add(name);
+        snapshot = names.toArray(new String[0]);
+    }// rescan
+}// FileCatalog
@@ -0,0 +1,134 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Histogram.java
+ *
+ **************************************************/
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative long values (e.g., durations in
+ * microseconds), which any # of threads may record at once without
+ * contending on a lock or a single counter.
+ *
+ * Values are counted in log-linear buckets, in the spirit of HdrHistogram:
+ * every power of two is split into SUB_BUCKETS buckets of equal width, so
+ * that a percentile is known to within 1/SUB_BUCKETS of its value (12.5%),
+ * whatever its magnitude. Values below SUB_BUCKETS get a bucket each.
+ *
+ * Reading the histogram while values are being recorded gives a slightly
+ * inconsistent snapshot (e.g., a count that is one sample ahead of the
+ * buckets), which is fine for monitoring.
+ */
+public class Histogram
+{
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS =             // enough for any long
+            (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    public Histogram()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }// constructor
+
+    // records the given value (negative values are recorded as 0)
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        buckets[bucket(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }// record
+
+    // returns the # of values recorded
+    public long count()
+    {
+        return count.sum();
+    }// count
+
+    // returns the sum of the values recorded
+    public long sum()
+    {
+        return sum.sum();
+    }// sum
+
+    // returns the mean of the values recorded (0 if none)
+    public double mean()
+    {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }// mean
+
+    // returns the largest value recorded (0 if none)
+    public long max()
+    {
+        return max.get();
+    }// max
+
+    /**
+     * Returns the value below which the given fraction (0..1) of the values
+     * recorded fall, i.e., the upper bound of the bucket holding that
+     * percentile (but no more than the max), or 0 if no value was recorded
+     */
+    public long percentile(double fraction)
+    {
+        long n = 0;
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            n += counts[i] = buckets[i].sum();
+        if (n == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max());
+        }
+        return max();
+    }// percentile
+
+    // forgets every value recorded so far (not atomic: values recorded
+    // meanwhile may be partly kept)
+    public void reset()
+    {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        count.reset();
+        sum.reset();
+        max.reset();
+    }// reset
+
+    // returns the index of the bucket of the given non-negative value
+    private static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }// bucket
+
+    // returns the largest value that falls into the bucket with the given
+    // index
+    private static long upperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+            return index;
+        int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }// upperBound
+}// Histogram
@@ -0,0 +1,31 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: IntegrityCheck.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+
+/**
+ * Integrity field closing every RDT packet, used to detect corrupted packets.
+ *
+ * Implementations must be thread-safe (the sender, the receiver and the app
+ * thread all use the same instance), must only use absolute positions, and
+ * must leave the position and the limit of the buffers they are given as
+ * they found them.
+ */
+public interface IntegrityCheck
+{
+    // returns the # of bytes of the integrity field
+    int size();
+
+    // computes the integrity field of the first length bytes of the given
+    // packet and stores it right behind them
+    void sign(ByteBuffer packet, int length);
+
+    // returns true if and only if the integrity field held in the last
+    // size() bytes of the first length bytes of the given packet matches
+    // the bytes before it
+    boolean verify(ByteBuffer packet, int length);
+}// IntegrityCheck
@@ -0,0 +1,224 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Manifest.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32C;
+
+/**
+ * Manifest of a file: its size, cut into chunks of CHUNK_SIZE bytes (the
+ * last one may be shorter), and the CRC-32C of every chunk, so that a
+ * client can tell which chunks of a partial copy are intact and resume a
+ * transfer from there (see Messages.MSG_RESUME_FILE). The CRC detects torn
+ * or stale chunks, not malicious ones.
+ *
+ * The manifest travels in as many MSG_MANIFEST messages as needed, and the
+ * list of chunks that the client has in as many MSG_HAVE_CHUNKS messages
+ * as needed (see Messages for the layouts).
+ */
+public class Manifest
+{
+    // chunks are as large as the data of a MSG_FILE_RANGE, so that a
+    // missing chunk is resent in a single message
+    public static final int CHUNK_SIZE = Messages.RANGE_DATA_SIZE;
+
+    private static final int HASHES_PER_MSG = (A5.MAX_MSG_SIZE - 17) / 4;
+    private static final int CHUNKS_PER_HAVE_MSG = (A5.MAX_MSG_SIZE - 5) * 8;
+
+    private final long size;          // of the file in bytes
+    private final int chunkSize;      // in bytes
+    private final int[] hashes;       // CRC-32C of every chunk
+
+    private Manifest(long inSize, int inChunkSize)
+    {
+        if (inSize < 0 || inChunkSize < 1 ||
+            (inSize + inChunkSize - 1) / inChunkSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                "invalid manifest: " + inSize + " bytes in chunks of "
+                + inChunkSize);
+        size = inSize;
+        chunkSize = inChunkSize;
+        hashes = new int[(int) ((size + chunkSize - 1) / chunkSize)];
+    }// constructor
+
+    // returns the manifest of the file read through the given channel
+    public static Manifest of(FileChannel channel) throws IOException
+    {
+        Manifest manifest = new Manifest(channel.size(), CHUNK_SIZE);
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        for (int i = 0; i < manifest.hashes.length; i++) {
+            if (!manifest.readChunk(channel, i, chunk))
+                throw new IOException("file shrank: " + channel.size());
+            manifest.hashes[i] = hash(chunk);
+        }
+        return manifest;
+    }// of
+
+    // returns the manifest of the bytes between the position and the limit
+    // of the given buffer
+    public static Manifest of(ByteBuffer content)
+    {
+        Manifest manifest = new Manifest(content.remaining(), CHUNK_SIZE);
+        ByteBuffer chunk = content.duplicate();
+        for (int i = 0; i < manifest.hashes.length; i++) {
+            int start = content.position() + (int) manifest.offset(i);
+            chunk.limit(start + (int) Math.min(CHUNK_SIZE, manifest.size
+                                                   - manifest.offset(i)))
+                 .position(start);
+            manifest.hashes[i] = hash(chunk);
+        }
+        return manifest;
+    }// of
+
+    public long size()
+    {
+        return size;
+    }// size
+
+    public int chunkCount()
+    {
+        return hashes.length;
+    }// chunkCount
+
+    // returns the offset of the given chunk in the file
+    public long offset(int chunk)
+    {
+        return (long) chunk * chunkSize;
+    }// offset
+
+    /**
+     * Returns the set of the chunks of the (partial) copy of the file read
+     * through the given channel that are intact, i.e., whose bytes are all
+     * there and match their CRC
+     */
+    public BitSet intactChunks(FileChannel channel) throws IOException
+    {
+        BitSet intact = new BitSet(hashes.length);
+        ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+        for (int i = 0; i < hashes.length; i++)
+            if (readChunk(channel, i, chunk) && hash(chunk) == hashes[i])
+                intact.set(i);
+        return intact;
+    }// intactChunks
+
+    // sends this manifest over the given rdt instance
+    public void send(RDT rdt)
+    {
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        int first = 0;
+        do {
+            int count = Math.min(HASHES_PER_MSG, hashes.length - first);
+            msg.clear();
+            msg.put(Messages.MSG_MANIFEST).putLong(size).putInt(chunkSize)
+               .putInt(first);
+            for (int i = first; i < first + count; i++)
+                msg.putInt(hashes[i]);
+            msg.flip();
+            rdt.sendData(msg);
+            first += count;
+        } while (first < hashes.length);
+    }// send
+
+    /**
+     * Receives a manifest over the given rdt instance, skipping any other
+     * message that comes before or in between its messages
+     */
+    public static Manifest receive(RDT rdt) throws IOException
+    {
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        Manifest manifest = null;
+        int received = 0;
+        do {
+            Messages.receive(rdt, msg, "manifest");
+            if (msg.get() != Messages.MSG_MANIFEST)
+                continue;
+            long size = msg.getLong();
+            int chunkSize = msg.getInt();
+            int first = msg.getInt();
+            if (manifest == null)
+                manifest = new Manifest(size, chunkSize);
+            if (size != manifest.size || chunkSize != manifest.chunkSize ||
+                first != received ||
+                msg.remaining() / 4 > manifest.hashes.length - first)
+                throw new IOException("inconsistent manifest");
+            while (msg.hasRemaining())
+                manifest.hashes[received++] = msg.getInt();
+        } while (manifest == null || received < manifest.hashes.length);
+        return manifest;
+    }// receive
+
+    // sends the given set of chunks of this manifest's file over the given
+    // rdt instance
+    public void sendChunkSet(RDT rdt, BitSet chunks)
+    {
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        int first = 0;
+        do {
+            int count = Math.min(CHUNKS_PER_HAVE_MSG, hashes.length - first);
+            msg.clear();
+            msg.put(Messages.MSG_HAVE_CHUNKS).putInt(first);
+            msg.put(Arrays.copyOf(chunks.get(first, first + count)
+                                        .toByteArray(), (count + 7) / 8));
+            msg.flip();
+            rdt.sendData(msg);
+            first += count;
+        } while (first < hashes.length);
+    }// sendChunkSet
+
+    /**
+     * Receives a set of chunks of this manifest's file over the given rdt
+     * instance, skipping any other message that comes before or in between
+     * its messages
+     */
+    public BitSet receiveChunkSet(RDT rdt) throws IOException
+    {
+        ByteBuffer msg = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        BitSet chunks = new BitSet(hashes.length);
+        int received = 0;
+        while (true) {
+            Messages.receive(rdt, msg, "chunk set");
+            if (msg.get() != Messages.MSG_HAVE_CHUNKS)
+                continue;
+            int first = msg.getInt();
+            int count = Math.min(msg.remaining() * 8, hashes.length - first);
+            if (first != received)
+                throw new IOException("inconsistent chunk set");
+            BitSet bits = BitSet.valueOf(msg);
+            for (int i = bits.nextSetBit(0); i >= 0 && i < count;
+                 i = bits.nextSetBit(i + 1))
+                chunks.set(first + i);
+            received += count;
+            if (received >= hashes.length)
+                return chunks;
+        }
+    }// receiveChunkSet
+
+    // reads the given chunk of the file read through the given channel into
+    // the given buffer (ready to be read); returns false if the file ends
+    // before the end of the chunk
+    private boolean readChunk(FileChannel channel, int chunk, ByteBuffer buffer)
+        throws IOException
+    {
+        long offset = offset(chunk);
+        buffer.clear().limit((int) Math.min(chunkSize, size - offset));
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                return false;
+        buffer.flip();
+        return true;
+    }// readChunk
+
+    private static int hash(ByteBuffer chunk)
+    {
+        CRC32C crc = new CRC32C();
+        crc.update(chunk);
+        return (int) crc.getValue();
+    }// hash
+}// Manifest
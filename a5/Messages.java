@@ -0,0 +1,85 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Messages.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Application-level messages added on top of the ones defined in A5 (which
+ * must not be modified). Their first byte never clashes with A5's message
+ * types, and peers that do not know them simply skip them.
+ */
+public class Messages
+{
+    // sent by the server right after MSG_FILE_NAME:
+    //   MSG_FILE_SIZE (1) | size of the file in bytes (8, big-endian)
+    public static final byte MSG_FILE_SIZE = 6;
+
+    // sent instead of MSG_FILE_DATA in a parallel transfer (see Streams),
+    // so that the chunks of each stream can be written in place:
+    //   MSG_FILE_RANGE (1) | offset of the chunk in the file (8, big-endian)
+    //   | chunk (up to RANGE_DATA_SIZE bytes)
+    public static final byte MSG_FILE_RANGE = 7;
+    public static final int RANGE_DATA_SIZE = A5.MAX_MSG_SIZE - 9;
+
+    // sent by the server right after MSG_FILE_SIZE in a resumed transfer
+    // (see MSG_RESUME_FILE), in as many messages as needed to cover every
+    // chunk (see Manifest):
+    //   MSG_MANIFEST (1) | size of the file (8) | chunk size (4)
+    //   | index of the first chunk covered (4) | CRC-32C of each chunk (4)
+    public static final byte MSG_MANIFEST = 8;
+
+    // sent by the client instead of MSG_REQUEST_IMG_FILE to resume the
+    // transfer of a file of which it has a partial copy:
+    //   MSG_RESUME_FILE (1) | flags (1, see Compression) | file name
+    // the server answers with the size and the manifest of the file, then
+    // waits for the list of the intact chunks of the copy (see below), then
+    // only sends the others, as MSG_FILE_RANGE (or MSG_FILE_RANGE_DEFLATED)
+    // messages
+    public static final byte MSG_RESUME_FILE = 9;
+
+    // sent by the client after the manifest in a resumed transfer, in as
+    // many messages as needed to cover every chunk:
+    //   MSG_HAVE_CHUNKS (1) | index of the first chunk covered (4)
+    //   | bitmap (bit i of byte j set: the client has chunk first + 8j + i)
+    public static final byte MSG_HAVE_CHUNKS = 10;
+
+    // sent instead of MSG_FILE_DATA to a client that accepts it, for a
+    // chunk that shrinks once deflated on its own (see Compression):
+    //   MSG_FILE_DATA_DEFLATED (1) | raw-deflated chunk
+    public static final byte MSG_FILE_DATA_DEFLATED = 11;
+
+    // same as above, instead of MSG_FILE_RANGE:
+    //   MSG_FILE_RANGE_DEFLATED (1) | offset of the chunk in the file (8)
+    //   | raw-deflated chunk (up to RANGE_DATA_SIZE bytes once inflated)
+    public static final byte MSG_FILE_RANGE_DEFLATED = 12;
+
+    /**
+     * Returns the next message received over the given rdt instance.
+     * Throws an IOException instead if the stream ends first (the peer
+     * closed, or the instance was closed or terminated, e.g., reaped for
+     * being idle), which names what was still awaited.
+     */
+    public static byte[] receive(RDT rdt, String awaited) throws IOException
+    {
+        byte[] msg = rdt.receiveData();
+        if (msg == null)
+            throw new IOException("connection closed before " + awaited);
+        return msg;
+    }// receive
+
+    // same as above, except that the message is copied into the given
+    // buffer, which is left ready to be read
+    public static void receive(RDT rdt, ByteBuffer msg, String awaited)
+        throws IOException
+    {
+        msg.clear();
+        if (rdt.receiveData(msg) < 0)
+            throw new IOException("connection closed before " + awaited);
+        msg.flip();
+    }// receive
+}// Messages
@@ -21,50 +21,99 @@ import java.util.Random;
  * protocol, namely:
  * 1. drop the packet with some probability 
  * 2. corrupt one bit of the packet with some probability
+ *
+ * For testing and benchmarking, the error rates and the delay before every
+ * send can be set from the command line with the socket.drop,
+ * socket.corrupt and socket.sleep (in ms, default 0) system properties.
+ * Injected errors are counted in the metrics given to the socket, if any
+ * (see setMetrics), and only printed if the socket.verbose property is
+ * true. The socket.seed property (default 391) seeds the random choices.
+ * The socket.mtu property emulates a path MTU: datagrams that would not
+ * fit in it (with IPv4 and UDP headers) are dropped, as a router does with
+ * packets that must not be fragmented.
+ *
+ * Packets that survive are then sent across a NetEmulator, which can add
+ * latency, jitter, a bandwidth cap, reordering, duplication and bursty
+ * loss (see the socket.* properties of NetEmulator). With none of them
+ * set, and no sleep, packets are sent as soon as send is called.
  */
 public class MyDatagramSocket extends DatagramSocket
 {
     private static final int DEFAULT_ONE_OUT_OF = 0;
-    private              int dropOneOutOf       = DEFAULT_ONE_OUT_OF;
-    private              int corruptOneOutOf    = DEFAULT_ONE_OUT_OF;
+    private static final int DEFAULT_SLEEP_MS   = 0;
+    private              int dropOneOutOf       =
+        Integer.getInteger("socket.drop", DEFAULT_ONE_OUT_OF);
+    private              int corruptOneOutOf    =
+        Integer.getInteger("socket.corrupt", DEFAULT_ONE_OUT_OF);
+    private              long sleepMs           =
+        Long.getLong("socket.sleep", DEFAULT_SLEEP_MS);
+    private              boolean verbose        =
+        Boolean.getBoolean("socket.verbose");
+    private              int mtu                =
+        Integer.getInteger("socket.mtu", 0);
     private              Random rand;
+    private              RDTMetrics metrics;  // null: errors not counted
+    private final        NetEmulator path       =
+        new NetEmulator(super::send,
+                        e -> dropped("packet (" + e.getMessage() + ")"));
 
-    // sets the socket's random number generator with seed value 391
+    // sets the socket's random number generator with seed value
+    // socket.seed (default 391)
     // the socket will use an OS-generated port number
     public MyDatagramSocket() throws SocketException
     {
         super();
-        rand = new Random(391);
+        rand = new Random(Long.getLong("socket.seed", 391));
     }
 
-    // sets the socket's random number generator with seed value 391
+    // sets the socket's random number generator with seed value
+    // socket.seed (default 391)
     // the socket will use the given port number
     public MyDatagramSocket(int port) throws SocketException
     {
         super(port);
-        rand = new Random(391);    
+        rand = new Random(Long.getLong("socket.seed", 391));
     }
 
+    // counts the errors injected from now on in the given metrics
+    public void setMetrics(RDTMetrics inMetrics)
+    {
+        metrics = inMetrics;
+    }// setMetrics
+
     /**
      *  sends packet, just like DatagramSocket would, but:
      * +  with a probability of 1/dropOneOutOf of dropping the packet
      * +  with a probability of 1/corruptOneOutOf of flipping one bit in the 
      *    packet
+     * +  across the emulated path (see NetEmulator)
      */
     @Override
     public void send(DatagramPacket packet) throws IOException
     {
+        if (mtu > 0 && packet.getLength() + 28 > mtu)
+        {
+            // too large for the path
+            dropped("packet of " + packet.getLength() + " bytes (MTU " +
+                    mtu + ")");
+            return;
+        }
+
         if (dropOneOutOf > 0 && rand.nextInt(dropOneOutOf) == 0)
         {
             // drop the packet
             if (packet.getLength() > 0)
-            {
-                String firstBytes = firstBytesAsStr(packet.getData());
-                System.out.println("   *** DROPPED packet with first bytes " +
-                                   firstBytes); 
-            }     
+                dropped("packet with first bytes " +
+                        firstBytesAsStr(packet.getData()));
             else
-                System.out.println("   *** DROPPED empty packet");
+                dropped("empty packet");
+            return;
+        }
+
+        if (path.burstLoss())
+        {
+            // drop the packet in a burst
+            dropped("packet in a burst");
             return;
         }
 
@@ -83,9 +132,11 @@ public class MyDatagramSocket extends DatagramSocket
                 randBit = 1 << rand.nextInt(Byte.SIZE);
             // flip the selected bit
             corruptBytes[randByte] = (byte)(corruptBytes[randByte] ^ randBit);
-            String firstBytes = firstBytesAsStr(corruptBytes);
-            System.out.println("   *** CORRUPTED packet with first bytes = " +
-                               firstBytes);
+            if (metrics != null)
+                metrics.injectedCorruption();
+            if (verbose)
+                System.out.println("   *** CORRUPTED packet with first bytes = " +
+                                   firstBytesAsStr(corruptBytes));
             sendPacket = new DatagramPacket(corruptBytes,
                                             0,
                                             corruptBytes.length,
@@ -94,10 +145,40 @@ public class MyDatagramSocket extends DatagramSocket
         }
         
         // Sleep to give the receiver time to catch up
-        try { Thread.sleep(100); } catch (Exception e) { }
-        super.send(sendPacket);
+        if (sleepMs > 0)
+            try { Thread.sleep(sleepMs); } catch (Exception e) { }
+        int copies = 1;
+        if (path.duplicate())
+        {
+            if (metrics != null)
+                metrics.injectedDuplicate();
+            if (verbose)
+                System.out.println("   *** DUPLICATED packet");
+            copies = 2;
+        }
+        for (int i = 0; i < copies; i++)
+            if (!path.transmit(sendPacket))
+                dropped("packet (queue full)");
     }// send
 
+    // counts the drop of the given packet and prints it if verbose
+    private void dropped(String what)
+    {
+        if (metrics != null)
+            metrics.injectedDrop();
+        if (verbose)
+            System.out.println("   *** DROPPED " + what);
+    }// dropped
+
+    // closes the socket, dropping the packets still in flight
+    @Override
+    public void close()
+    {
+        if (path != null)    // null if the constructor failed
+            path.close();
+        super.close();
+    }// close
+
     // returns as a string the first (up to) 3 bytes of the given array
     private String firstBytesAsStr(byte[] array)
     {
@@ -0,0 +1,269 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: NetEmulator.java
+ *
+ * Like MyDatagramSocket, this class is for testing
+ * purposes only: nothing else may depend on it.
+ **************************************************/
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Emulated network path between a MyDatagramSocket and its peers, in the
+ * spirit of Linux netem. It is configured from the following system
+ * properties (durations in ms, which may have decimals):
+ * + socket.latency: one-way delay of every packet
+ * + socket.jitter: the delay varies uniformly by up to this much either
+ *   way, which reorders packets sent closer together than that
+ * + socket.bandwidth: link rate in kbit/s (IPv4 and UDP headers included);
+ *   packets wait their turn in a queue of up to socket.queue packets
+ *   (default 1000), and are dropped when it is full
+ * + socket.reorder: 1 out of N packets is held back for another
+ *   socket.reorderDelay (default 10), so that the next ones overtake it
+ * + socket.duplicate: 1 out of N packets is sent twice
+ * + socket.gemodel: bursty loss following a Gilbert-Elliott model, given
+ *   as "p,r[,1-h[,1-k]]" in percent as for netem: p and r are the odds of
+ *   going from the good state to the bad one and back at each packet, and
+ *   1-h and 1-k are the loss rates in the bad state (default 100) and in
+ *   the good one (default 0); bursts last 100/r packets on average
+ *
+ * Every random choice is drawn from generators seeded with socket.seed
+ * (default 391), one per kind of impairment, so that a given sequence of
+ * sends always meets the same losses, duplicates and delays, and that
+ * turning one impairment on does not change the pattern of the others.
+ *
+ * Nothing is delayed unless latency, jitter, bandwidth or reordering is
+ * set: packets then go straight to the socket from the sending thread.
+ * Otherwise they are copied and handed to the socket, when due, by a
+ * daemon thread of the emulator; packets still in flight when the socket
+ * is closed are lost, and so are those that the socket then fails to send
+ * (see the constructor).
+ */
+public class NetEmulator
+{
+    /** Where the packets go once they have crossed the emulated path. */
+    public interface Link
+    {
+        void send(DatagramPacket packet) throws IOException;
+    }// Link
+
+    private static final int HEADERS = 28;   // IPv4 + UDP, in bytes
+
+    private final Link link;                 // the socket, really
+    private final Consumer<IOException> lost; // told of the delayed
+                                             // packets the link failed
+                                             // to send
+    private final long latencyNs =
+        nanosProperty("socket.latency", 0);
+    private final long jitterNs =
+        nanosProperty("socket.jitter", 0);
+    private final long bitsPerSec =          // 0: unlimited
+        Long.getLong("socket.bandwidth", 0) * 1000;
+    private final int queueLimit =           // in packets
+        Integer.getInteger("socket.queue", 1000);
+    private final int reorderOneOutOf =
+        Integer.getInteger("socket.reorder", 0);
+    private final long reorderNs =
+        nanosProperty("socket.reorderDelay", 10);
+    private final int duplicateOneOutOf =
+        Integer.getInteger("socket.duplicate", 0);
+    private final double goodToBad;          // Gilbert-Elliott model
+    private final double badToGood;          // as probabilities (off when
+    private final double lossInBad;          // p and 1-k are both 0)
+    private final double lossInGood;
+    private final Random lossRand;           // one generator per kind of
+    private final Random delayRand;          // impairment
+    private final Random duplicateRand;
+
+    private boolean bad;                     // state of the loss model
+    private long linkFreeAt;                 // when the link is done
+                                             // sending the queued packets
+    private final ArrayDeque<Long> backlog = // when each queued packet
+        new ArrayDeque<>();                  // leaves the queue
+    private final PriorityQueue<Delivery> inFlight = // by arrival time
+        new PriorityQueue<>();
+    private long sent;                       // # of packets scheduled
+    private Thread deliverer;                // started by the first delay
+    private volatile boolean closed;
+
+    // creates the path configured by the socket.* system properties in
+    // front of the given link, which tells the given consumer about the
+    // delayed packets that the link failed to send (those sent right away
+    // throw instead, see transmit)
+    public NetEmulator(Link inLink, Consumer<IOException> inLost)
+    {
+        link = inLink;
+        lost = inLost;
+        long seed = Long.getLong("socket.seed", 391);
+        lossRand = new Random(seed + 1);
+        delayRand = new Random(seed + 2);
+        duplicateRand = new Random(seed + 3);
+        String model = System.getProperty("socket.gemodel");
+        double[] odds = { 0, 0, 100, 0 };
+        if (model != null) {
+            String[] fields = model.split(",");
+            if (fields.length < 2 || fields.length > 4)
+                throw new IllegalArgumentException(
+                    "socket.gemodel must be p,r[,1-h[,1-k]]: " + model);
+            for (int i = 0; i < fields.length; i++)
+                odds[i] = Double.parseDouble(fields[i].trim());
+        }
+        goodToBad = odds[0] / 100;
+        badToGood = odds[1] / 100;
+        lossInBad = odds[2] / 100;
+        lossInGood = odds[3] / 100;
+    }// constructor
+
+    // returns true if and only if the next packet is lost in a burst
+    // (see socket.gemodel)
+    public synchronized boolean burstLoss()
+    {
+        if (goodToBad == 0 && lossInGood == 0)
+            return false;
+        if (lossRand.nextDouble() < (bad ? badToGood : goodToBad))
+            bad = !bad;
+        return lossRand.nextDouble() < (bad ? lossInBad : lossInGood);
+    }// burstLoss
+
+    // returns true if and only if the next packet is to be sent twice
+    // (see socket.duplicate)
+    public boolean duplicate()
+    {
+        return duplicateOneOutOf > 0
+               && duplicateRand.nextInt(duplicateOneOutOf) == 0;
+    }// duplicate
+
+    /**
+     * Sends the given packet across the path, i.e., right away if it adds
+     * no delay, or else when it is due (the packet can be reused as soon
+     * as this method returns). Returns false if the packet was dropped
+     * because the queue in front of the link is full.
+     */
+    public boolean transmit(DatagramPacket packet) throws IOException
+    {
+        if (latencyNs == 0 && jitterNs == 0 && bitsPerSec == 0
+            && reorderOneOutOf == 0) {
+            link.send(packet);
+            return true;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            long departure = now;
+            if (bitsPerSec > 0) {
+                while (!backlog.isEmpty() && backlog.peekFirst() <= now)
+                    backlog.pollFirst();
+                if (backlog.size() >= queueLimit)
+                    return false;
+                departure = Math.max(now, linkFreeAt)
+                            + (packet.getLength() + HEADERS) * 8_000_000_000L
+                              / bitsPerSec;
+                linkFreeAt = departure;
+                backlog.addLast(departure);
+            }
+            // draws the same # of values for every packet, whatever
+            // the settings
+            double jitter = delayRand.nextDouble() * 2 - 1;
+            int reorderDraw = delayRand.nextInt(Math.max(1, reorderOneOutOf));
+            boolean heldBack = reorderOneOutOf > 0 && reorderDraw == 0;
+            long delay = Math.max(0, latencyNs + (long) (jitter * jitterNs));
+            if (heldBack)
+                delay += reorderNs;
+            Delivery delivery = new Delivery(departure + delay, sent++,
+                                             packet);
+            inFlight.add(delivery);
+            if (deliverer == null) {
+                deliverer = new Thread(this::deliver, "NetEmulator");
+                deliverer.setDaemon(true);
+                deliverer.start();
+            } else if (inFlight.peek() == delivery)
+                LockSupport.unpark(deliverer);
+        }
+        return true;
+    }// transmit
+
+    // stops delivering the packets in flight
+    public void close()
+    {
+        closed = true;
+        Thread thread;
+        synchronized (this) {
+            thread = deliverer;
+        }
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }// close
+
+    // code run by the deliverer: hands every packet in flight to the link
+    // when it is due
+    private void deliver()
+    {
+        while (!closed) {
+            Delivery due = null;
+            long wait = 0;
+            synchronized (this) {
+                Delivery next = inFlight.peek();
+                if (next != null) {
+                    wait = next.time - System.nanoTime();
+                    if (wait <= 0)
+                        due = inFlight.poll();
+                }
+            }
+            if (due != null) {
+                try {
+                    link.send(due.packet);
+                } catch (IOException e) {
+                    if (!closed)
+                        lost.accept(e);
+                }
+            } else if (wait > 0)
+                LockSupport.parkNanos(this, wait);
+            else
+                LockSupport.park(this);
+        }
+    }// deliver
+
+    // returns the duration given in ms by the given system property in ns
+    private static long nanosProperty(String name, double defaultMs)
+    {
+        String value = System.getProperty(name);
+        double ms = value == null ? defaultMs : Double.parseDouble(value);
+        return (long) (ms * 1_000_000);
+    }// nanosProperty
+
+    /***********************************************************************
+     * inner class: Delivery
+     ***********************************************************************/
+
+    /** A copy of a packet in flight, due at a given time. */
+    private static class Delivery implements Comparable<Delivery>
+    {
+        final long time;                 // System.nanoTime() of arrival
+        final long order;                // ties are broken in send order
+        final DatagramPacket packet;
+
+        Delivery(long inTime, long inOrder, DatagramPacket original)
+        {
+            time = inTime;
+            order = inOrder;
+            byte[] data = new byte[original.getLength()];
+            System.arraycopy(original.getData(), original.getOffset(), data,
+                             0, data.length);
+            packet = new DatagramPacket(data, data.length,
+                                        original.getSocketAddress());
+        }// constructor
+
+        @Override
+        public int compareTo(Delivery other)
+        {
+            int c = Long.compare(time, other.time);
+            return c != 0 ? c : Long.compare(order, other.order);
+        }// compareTo
+    }// Delivery
+}// NetEmulator
@@ -0,0 +1,542 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: PacketCodec.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes and decodes RDT packets (see RDT for their layout) in ByteBuffers.
+ *
+ * A data packet is built in place: the message (or a segment of it) is put
+ * in the buffer right behind the room left for the header
+ * (startData/endData), then the header and the integrity field are filled
+ * in around it (sealData). Apart from those two methods, everything works
+ * on absolute positions.
+ *
+ * A tracing codec (see RDTConfig.trace) flags every packet it encodes
+ * with FLAG_TRACE and adds trace fields to it: a data packet carries a
+ * stamp (8) behind its payload, i.e., the System.nanoTime() of its latest
+ * transmission, and the fields of an ACK (standalone or piggybacked) are
+ * followed by the stamp of the data packet that triggered it (echo, 8)
+ * and by the # of nanoseconds the receiver held that packet before
+ * sending the ACK (hold, 8). Any codec decodes packets by their flags,
+ * whether it traces or not.
+ *
+ * A parity packet (see RDTConfig.fecBlock) carries the XOR of some of the
+ * data packets of a block, as computed by Parity, behind the first
+ * sequence number of the block, the block size and the # of packets it
+ * covers, i.e., the first ones of the block.
+ */
+public class PacketCodec
+{
+    // packet types, i.e., the first byte of every packet
+    public static final byte TYPE_DATA = 0;
+    public static final byte TYPE_ACK  = 1;
+    public static final byte TYPE_SEGMENT   = 2; // data packet followed by
+                                                 // more of its message
+    public static final byte TYPE_PROBE     = 3; // path MTU probe
+    public static final byte TYPE_PROBE_ACK = 4; // its acknowledgment
+    public static final byte TYPE_FIN       = 5; // data packet without a
+                                                 // payload: end of stream
+    public static final byte TYPE_PARITY    = 6; // XOR of a block of data
+                                                 // packets (see Parity)
+    public static final byte FLAG_ACK = (byte) 0x80; // in the first byte of a
+                                    // data packet: an ACK rides along (see
+                                    // addAck), not part of its type
+    public static final byte FLAG_ACK_NOW = 0x40; // same: the sender waits
+                                    // for the ACK of this packet
+    public static final byte FLAG_TRACE = 0x20; // in the first byte of any
+                                    // packet: it carries trace fields
+    private static final int TYPE_MASK = 0x1f;
+
+    public static final int HEADER_SIZE     = 9;  // type + session + seq #
+    public static final int ACK_FIELDS_SIZE = 21; // type + session + 2 acks
+                                                  // + SACK bitmap + receive
+                                                  // window
+    private static final int SESSION_OFFSET = 1;
+    private static final int SEQ_OFFSET     = 5;
+    private static final int CUM_ACK_OFFSET = 5;
+    private static final int SEL_ACK_OFFSET = 9;
+    private static final int SACK_OFFSET    = 13;
+    private static final int WINDOW_OFFSET  = 17;
+    private static final int PROBE_SIZE_OFFSET = 5;
+    public static final int PARITY_HEADER_SIZE = 11; // type + session +
+                                    // first seq # + block size + count
+    private static final int BLOCK_SIZE_OFFSET = 9;
+    private static final int COUNT_OFFSET = 10;
+    public static final int ACK_TRAILER_SIZE = 16; // ACK fields piggybacked
+                                    // on a data packet: 2 acks + SACK bitmap
+                                    // + receive window
+    public static final int STAMP_SIZE = 8; // trace fields: stamp of a data
+    public static final int ECHO_SIZE = 16; // packet, echo + hold of an ACK
+    private static final int ECHO_OFFSET = 16; // from the ACK fields
+    private static final int HOLD_OFFSET = 24;
+
+    private final IntegrityCheck check;  // integrity field of the packets
+    private final int checkSize;         // # of bytes of that field
+    private final boolean trace;         // trace fields in every packet
+    private final int stampSize;         // # of bytes of those of a data
+    private final int echoSize;          // packet, and of those of an ACK
+    private final int ackSize;           // # of bytes of an ACK
+    private final int maxPacketSize;     // # of bytes of a full data packet
+                                         // (with an ACK riding along)
+
+    public PacketCodec(IntegrityCheck inCheck)
+    {
+        this(inCheck, false);
+    }// constructor
+
+    // creates a codec that adds trace fields to every packet if trace is
+    // true
+    public PacketCodec(IntegrityCheck inCheck, boolean inTrace)
+    {
+        check = inCheck;
+        checkSize = check.size();
+        trace = inTrace;
+        stampSize = trace ? STAMP_SIZE : 0;
+        echoSize = trace ? ECHO_SIZE : 0;
+        ackSize = ACK_FIELDS_SIZE + echoSize + checkSize;
+        maxPacketSize = HEADER_SIZE + A5.MAX_MSG_SIZE + stampSize
+                        + ACK_TRAILER_SIZE + echoSize + checkSize;
+    }// constructor
+
+    // returns the # of bytes of the integrity field
+    public int checkSize()
+    {
+        return checkSize;
+    }// checkSize
+
+    // returns the # of bytes of an ACK
+    public int ackSize()
+    {
+        return ackSize;
+    }// ackSize
+
+    // returns the # of bytes of a data packet holding a full message
+    public int maxPacketSize()
+    {
+        return maxPacketSize;
+    }// maxPacketSize
+
+    // returns the # of bytes of a data packet without a payload (with an
+    // ACK riding along)
+    public int overhead()
+    {
+        return maxPacketSize - A5.MAX_MSG_SIZE;
+    }// overhead
+
+    // readies the given buffer for a message to be put right behind the
+    // room left for the header
+    public void startData(ByteBuffer packet)
+    {
+        startData(packet, maxPacketSize);
+    }// startData
+
+    // same as above for a packet of at most the given # of bytes, i.e., the
+    // room left for the message (keeping room for an ACK to ride along) is
+    // between the position and the limit
+    public void startData(ByteBuffer packet, int packetSize)
+    {
+        packet.clear().limit(packetSize - overhead() + HEADER_SIZE)
+              .position(HEADER_SIZE);
+    }// startData
+
+    // ends the data packet whose message ends at the position of the given
+    // buffer, which then spans the whole packet
+    public void endData(ByteBuffer packet)
+    {
+        endData(packet, false);
+    }// endData
+
+    // same as above for a segment of a message, followed by more segments
+    // if more is true (TYPE_SEGMENT), the last one otherwise (TYPE_DATA)
+    public void endData(ByteBuffer packet, boolean more)
+    {
+        end(packet, more ? TYPE_SEGMENT : TYPE_DATA);
+    }// endData
+
+    // same as endData for a FIN, i.e., a data packet started with
+    // startData whose payload was left empty
+    public void endFin(ByteBuffer packet)
+    {
+        end(packet, TYPE_FIN);
+    }// endFin
+
+    // sets the type of the data packet whose payload ends at the position
+    // of the given buffer, which then spans the whole packet
+    private void end(ByteBuffer packet, byte type)
+    {
+        packet.put(0, trace ? (byte) (type | FLAG_TRACE) : type);
+        packet.limit(packet.position() + stampSize + checkSize).position(0);
+    }// end
+
+    // fills in the header (but the type, see endData) and the integrity
+    // field of the data packet spanned by the given buffer
+    public void sealData(ByteBuffer packet, int sessionId, int seqNum)
+    {
+        sealData(packet, sessionId, seqNum, false);
+    }// sealData
+
+    // same as above, flagging the packet as one that the receiver should
+    // ACK right away if ackNow is true
+    public void sealData(ByteBuffer packet, int sessionId, int seqNum,
+                         boolean ackNow)
+    {
+        if (ackNow)
+            packet.put(0, (byte) (packet.get(0) | FLAG_ACK_NOW));
+        packet.putInt(SESSION_OFFSET, sessionId);
+        packet.putInt(SEQ_OFFSET, seqNum);
+        check.sign(packet, packet.limit() - checkSize);
+    }// sealData
+
+    /**
+     * Returns true except when:
+     * + the packet is too short to hold a header and an integrity field
+     *   or
+     * + the integrity field computed over the first length bytes of the
+     *   given buffer does not match the one carried in the packet
+     */
+    public boolean verify(ByteBuffer packet, int length)
+    {
+        if (length < HEADER_SIZE + checkSize)
+            return false;
+        return check.verify(packet, length);
+    }// verify
+
+    // returns the type of the given packet
+    public static byte type(ByteBuffer packet)
+    {
+        return (byte) (packet.get(0) & TYPE_MASK);
+    }// type
+
+    // returns true if and only if the given data packet carries an ACK
+    public static boolean hasAck(ByteBuffer packet)
+    {
+        return (packet.get(0) & FLAG_ACK) != 0;
+    }// hasAck
+
+    // returns true if and only if the given data packet asks to be ACKed
+    // right away
+    public static boolean ackNow(ByteBuffer packet)
+    {
+        return (packet.get(0) & FLAG_ACK_NOW) != 0;
+    }// ackNow
+
+    // returns true if and only if the given packet carries trace fields
+    public static boolean traced(ByteBuffer packet)
+    {
+        return (packet.get(0) & FLAG_TRACE) != 0;
+    }// traced
+
+    // returns true if and only if the given type is that of a data packet
+    // (a whole message, a segment of one or the end of the stream)
+    public static boolean isData(byte type)
+    {
+        return type == TYPE_DATA || type == TYPE_SEGMENT || type == TYPE_FIN;
+    }// isData
+
+    // returns the session ID of the given packet
+    public static int sessionId(ByteBuffer packet)
+    {
+        return packet.getInt(SESSION_OFFSET);
+    }// sessionId
+
+    // returns the sequence number of the given data packet
+    public static int seqNum(ByteBuffer packet)
+    {
+        return packet.getInt(SEQ_OFFSET);
+    }// seqNum
+
+    // leaves only the payload of the given data packet, of the given length,
+    // between the position and the limit of its buffer
+    // (its stamp, if any, is then right behind the limit, see
+    // trailingStamp)
+    public void payload(ByteBuffer packet, int length)
+    {
+        int end = length - checkSize;
+        if (hasAck(packet))
+            end -= ackTrailerSize(packet);
+        if (traced(packet))
+            end -= STAMP_SIZE;
+        packet.limit(end).position(HEADER_SIZE);
+    }// payload
+
+    // returns the offset of the end of the payload of the data packet,
+    // sealed or not, spanned by the given buffer
+    public int payloadEnd(ByteBuffer packet)
+    {
+        int end = dataEnd(packet);
+        return traced(packet) ? end - STAMP_SIZE : end;
+    }// payloadEnd
+
+    // fills in the header of a data packet rebuilt from parity (see
+    // Parity.rebuild), whose type is set already
+    public static void header(ByteBuffer packet, int sessionId, int seqNum)
+    {
+        packet.putInt(SESSION_OFFSET, sessionId);
+        packet.putInt(SEQ_OFFSET, seqNum);
+    }// header
+
+    // writes the given stamp in the unsealed data packet (see endData)
+    // spanned by the given buffer
+    public void stamp(ByteBuffer packet, long time)
+    {
+        if (trace)
+            packet.putLong(dataEnd(packet) - STAMP_SIZE, time);
+    }// stamp
+
+    // same as stamp for a sealed data packet, which is signed again
+    public void restamp(ByteBuffer packet, long time)
+    {
+        if (!trace)
+            return;
+        packet.putLong(dataEnd(packet) - STAMP_SIZE, time);
+        check.sign(packet, packet.limit() - checkSize);
+    }// restamp
+
+    // returns the stamp of the data packet, sealed or not, spanned by the
+    // given buffer (0 if it has none)
+    public long stampOf(ByteBuffer packet)
+    {
+        if (!traced(packet))
+            return 0;
+        return packet.getLong(dataEnd(packet) - STAMP_SIZE);
+    }// stampOf
+
+    /**
+     * Returns the 8 bytes right behind the payload of the given data
+     * packet, i.e., its stamp once payload was called, if it is traced.
+     * The receiver of a tracing instance reuses them to time the packet,
+     * whether it is traced or not: they are part of the room that a data
+     * packet leaves for its trace fields and its ACK.
+     */
+    public static long trailingStamp(ByteBuffer packet)
+    {
+        int end = packet.limit();
+        long stamp = packet.limit(end + STAMP_SIZE).getLong(end);
+        packet.limit(end);
+        return stamp;
+    }// trailingStamp
+
+    // overwrites the 8 bytes right behind the payload of the given data
+    // packet (see above)
+    public static void trailingStamp(ByteBuffer packet, long time)
+    {
+        int end = packet.limit();
+        packet.limit(end + STAMP_SIZE).putLong(end, time);
+        packet.limit(end);
+    }// trailingStamp
+
+    /**
+     * Lets the given ACK fields ride along the sealed data packet spanned by
+     * the given buffer: they go between the payload and the integrity field
+     * (replacing those of an earlier transmission, if any), the ACK flag is
+     * set and the packet is signed again
+     */
+    public void addAck(ByteBuffer packet, int cumAck, int seqNum,
+                       int sackBitmap, int window)
+    {
+        addAck(packet, cumAck, seqNum, sackBitmap, window, 0, 0);
+    }// addAck
+
+    // same as above, along with the given trace fields (if tracing)
+    public void addAck(ByteBuffer packet, int cumAck, int seqNum,
+                       int sackBitmap, int window, long echo, long hold)
+    {
+        int at = dataEnd(packet);
+        packet.put(0, (byte) (packet.get(0) | FLAG_ACK));
+        packet.limit(at + ACK_TRAILER_SIZE + echoSize + checkSize);
+        packet.putInt(at, cumAck)
+              .putInt(at + 4, seqNum)
+              .putInt(at + 8, sackBitmap)
+              .putInt(at + 12, window);
+        if (trace)
+            packet.putLong(at + ECHO_OFFSET, echo)
+                  .putLong(at + HOLD_OFFSET, hold);
+        check.sign(packet, at + ACK_TRAILER_SIZE + echoSize);
+    }// addAck
+
+    // removes the ACK fields added to the given sealed data packet, if any
+    public void dropAck(ByteBuffer packet)
+    {
+        if (!hasAck(packet))
+            return;
+        int at = dataEnd(packet);
+        packet.put(0, (byte) (packet.get(0) & ~FLAG_ACK));
+        packet.limit(at + checkSize);
+        check.sign(packet, at);
+    }// dropAck
+
+    // returns the offset of the end of the payload and of its stamp (if
+    // any) of the data packet, sealed or not, spanned by the given buffer
+    private int dataEnd(ByteBuffer packet)
+    {
+        int end = packet.limit() - checkSize;
+        return hasAck(packet) ? end - ackTrailerSize(packet) : end;
+    }// dataEnd
+
+    // returns the # of bytes of the ACK fields that the given data packet
+    // carries, if any
+    private static int ackTrailerSize(ByteBuffer packet)
+    {
+        return traced(packet) ? ACK_TRAILER_SIZE + ECHO_SIZE
+                              : ACK_TRAILER_SIZE;
+    }// ackTrailerSize
+
+    // returns the offset of the ACK fields of the given ACK, or of the ACK
+    // carried by the given data packet, of the given length (see the
+    // accessors below)
+    public int ackFields(ByteBuffer packet, int length)
+    {
+        if (type(packet) == TYPE_ACK)
+            return CUM_ACK_OFFSET;
+        return length - checkSize - ackTrailerSize(packet);
+    }// ackFields
+
+    // encodes the given ACK in the given buffer, which then spans it
+    public void encodeAck(ByteBuffer packet, int sessionId, int cumAck,
+                          int seqNum, int sackBitmap, int window)
+    {
+        encodeAck(packet, sessionId, cumAck, seqNum, sackBitmap, window, 0, 0);
+    }// encodeAck
+
+    // same as above, along with the given trace fields (if tracing)
+    public void encodeAck(ByteBuffer packet, int sessionId, int cumAck,
+                          int seqNum, int sackBitmap, int window, long echo,
+                          long hold)
+    {
+        packet.clear();
+        packet.put(trace ? (byte) (TYPE_ACK | FLAG_TRACE) : TYPE_ACK)
+              .putInt(sessionId)
+              .putInt(cumAck)
+              .putInt(seqNum)
+              .putInt(sackBitmap)
+              .putInt(window);
+        if (trace)
+            packet.putLong(echo)
+                  .putLong(hold);
+        check.sign(packet, ACK_FIELDS_SIZE + echoSize);
+        packet.limit(ackSize).position(0);
+    }// encodeAck
+
+    // returns the cumulative ack of the given ACK
+    public static int cumAck(ByteBuffer packet)
+    {
+        return cumAck(packet, CUM_ACK_OFFSET);
+    }// cumAck
+
+    // same as above for the ACK fields at the given offset
+    public static int cumAck(ByteBuffer packet, int at)
+    {
+        return packet.getInt(at);
+    }// cumAck
+
+    // returns the selective ack of the ACK fields at the given offset
+    public static int selectiveAck(ByteBuffer packet, int at)
+    {
+        return packet.getInt(at + SEL_ACK_OFFSET - CUM_ACK_OFFSET);
+    }// selectiveAck
+
+    // returns the SACK bitmap of the ACK fields at the given offset
+    public static int sackBitmap(ByteBuffer packet, int at)
+    {
+        return packet.getInt(at + SACK_OFFSET - CUM_ACK_OFFSET);
+    }// sackBitmap
+
+    // returns the receive window advertised by the ACK fields at the given
+    // offset
+    public static int window(ByteBuffer packet, int at)
+    {
+        return packet.getInt(at + WINDOW_OFFSET - CUM_ACK_OFFSET);
+    }// window
+
+    // returns the stamp echoed by the ACK fields at the given offset of a
+    // traced packet (0 if the peer had none to echo)
+    public static long echo(ByteBuffer packet, int at)
+    {
+        return packet.getLong(at + ECHO_OFFSET);
+    }// echo
+
+    // returns the # of nanoseconds that the peer held the packet whose
+    // stamp is echoed by the ACK fields at the given offset of a traced
+    // packet
+    public static long hold(ByteBuffer packet, int at)
+    {
+        return packet.getLong(at + HOLD_OFFSET);
+    }// hold
+
+    // encodes in the given buffer, which then spans it, a path MTU probe of
+    // the given # of bytes: type | session | padding | check
+    public void encodeProbe(ByteBuffer packet, int sessionId, int size)
+    {
+        packet.clear();
+        packet.put(0, TYPE_PROBE);
+        packet.putInt(SESSION_OFFSET, sessionId);
+        check.sign(packet, size - checkSize);
+        packet.limit(size).position(0);
+    }// encodeProbe
+
+    // encodes in the given buffer, which then spans it, the acknowledgment
+    // of a probe of the given # of bytes: type | session | size (4) | check
+    public void encodeProbeAck(ByteBuffer packet, int sessionId, int size)
+    {
+        packet.clear();
+        packet.put(TYPE_PROBE_ACK)
+              .putInt(sessionId)
+              .putInt(size);
+        check.sign(packet, HEADER_SIZE);
+        packet.limit(HEADER_SIZE + checkSize).position(0);
+    }// encodeProbeAck
+
+    /**
+     * Encodes in the given buffer, which then spans it, the parity packet
+     * of the given block (by its first sequence number) covering the given
+     * # of its first packets, whose XOR spans the given parity buffer
+     * between its position and its limit (see Parity.sum):
+     * type | session | first seq # (4) | block size (1) | count (1) |
+     * XOR | check
+     */
+    public void encodeParity(ByteBuffer packet, int sessionId, int firstSeqNum,
+                             int blockSize, int count, ByteBuffer parity)
+    {
+        packet.clear();
+        packet.put(TYPE_PARITY)
+              .putInt(sessionId)
+              .putInt(firstSeqNum)
+              .put((byte) blockSize)
+              .put((byte) count)
+              .put(parity);
+        check.sign(packet, packet.position());
+        packet.limit(packet.position() + checkSize).position(0);
+    }// encodeParity
+
+    // returns the block size of the given parity packet (its first
+    // sequence number is its seqNum)
+    public static int blockSize(ByteBuffer packet)
+    {
+        return packet.get(BLOCK_SIZE_OFFSET) & 0xff;
+    }// blockSize
+
+    // returns the # of packets of its block covered by the given parity
+    // packet
+    public static int parityCount(ByteBuffer packet)
+    {
+        return packet.get(COUNT_OFFSET) & 0xff;
+    }// parityCount
+
+    // leaves only the XOR of the given parity packet, of the given length,
+    // between the position and the limit of its buffer
+    public void parity(ByteBuffer packet, int length)
+    {
+        packet.limit(length - checkSize).position(PARITY_HEADER_SIZE);
+    }// parity
+
+    // returns the size of the probe acknowledged by the given probe ACK
+    public static int probeSize(ByteBuffer packet)
+    {
+        return packet.getInt(PROBE_SIZE_OFFSET);
+    }// probeSize
+}// PacketCodec
@@ -0,0 +1,230 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: PacketTrace.java
+ *
+ **************************************************/
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-packet latency tracing of an RDT instance (see RDTConfig.trace), to
+ * find out where the time of a transfer goes, tail latencies included.
+ *
+ * Tracing instances stamp their data packets with the System.nanoTime() of
+ * their transmission, and echo the stamp of the packet that triggered an
+ * ACK in that ACK, along with how long they held that packet before
+ * ACKing it (see PacketCodec). The life of a packet is thus cut into the
+ * following stages, each recorded in a histogram (in microseconds):
+ * + queue: from sendData queueing the packet to its first transmission
+ *   (sender side)
+ * + wire: from a transmission to its receipt by the peer, which is only
+ *   meaningful if both ends read the same clock, e.g., on the same host
+ *   (receiver side)
+ * + delivery: from the receipt of the packet to its delivery to the
+ *   receive buffer, i.e., the time it waited for the packets before it
+ *   (receiver side)
+ * + app: from its delivery to the moment the app took it out of the
+ *   receive buffer (receiver side)
+ * + ack hold: from the receipt of the packet to the ACK that echoed its
+ *   stamp, e.g., a delayed ACK (receiver side)
+ * + network: from a transmission to the receipt of the ACK echoing it,
+ *   minus the ACK hold, i.e., the round trip of the network alone, which
+ *   needs no common clock (sender side)
+ * Since the stamp is that of the latest transmission, retransmitted
+ * packets are timed like the others.
+ *
+ * Every stage is also an event of the timeline of the instance: the
+ * latest capacity events are kept, in a ring, with their time and the
+ * sequence number of their packet, for dump to print once the transfer is
+ * over (events recorded during the dump may show up half-written).
+ * Recording never locks: any # of threads may record at once.
+ */
+public class PacketTrace
+{
+    /** What happened to a packet (see the stages above). */
+    public enum Event
+    {
+        QUEUED,     // sendData queued it
+        SENT,       // first transmission (value: queue stage)
+        RESENT,     // retransmission
+        RECEIVED,   // by the receiver (value: wire stage, if traced)
+        DELIVERED,  // to the receive buffer (value: delivery stage)
+        TAKEN,      // by the app (value: app stage)
+        ACK_SENT,   // ACK echoing its stamp (value: ack hold stage)
+        ACKED       // ACK echoing its stamp received (value: network stage)
+    }// Event
+
+    private static final Event[] EVENTS = Event.values();
+
+    private final long origin = System.nanoTime(); // time 0 of the timeline
+    private final Histogram queueMicros = new Histogram();
+    private final Histogram wireMicros = new Histogram();
+    private final Histogram deliveryMicros = new Histogram();
+    private final Histogram appMicros = new Histogram();
+    private final Histogram ackHoldMicros = new Histogram();
+    private final Histogram networkMicros = new Histogram();
+    private final long[] times;           // timeline, as a ring of events
+    private final long[] values;          // (ns)
+    private final int[] seqNums;
+    private final byte[] events;          // Event ordinals
+    private final AtomicLong recorded =   // # of events recorded so far
+            new AtomicLong();
+
+    // creates a trace whose timeline keeps the latest capacity events
+    public PacketTrace(int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException(
+                "capacity must be at least 1: " + capacity);
+        times = new long[capacity];
+        values = new long[capacity];
+        seqNums = new int[capacity];
+        events = new byte[capacity];
+    }// constructor
+
+    // recording, by RDT (times are System.nanoTime() values and stages
+    // are in ns)
+
+    void queued(int seqNum, long time)
+    {
+        record(Event.QUEUED, seqNum, time, 0);
+    }// queued
+
+    void sent(int seqNum, long time, long queuedAt, boolean resent)
+    {
+        if (resent) {
+            record(Event.RESENT, seqNum, time, 0);
+            return;
+        }
+        queueMicros.record((time - queuedAt) / 1000);
+        record(Event.SENT, seqNum, time, time - queuedAt);
+    }// sent
+
+    // stamp: that of the packet, or 0 if it has none
+    void received(int seqNum, long time, long stamp)
+    {
+        long wire = stamp == 0 ? 0 : time - stamp;
+        if (stamp != 0)
+            wireMicros.record(wire / 1000);
+        record(Event.RECEIVED, seqNum, time, wire);
+    }// received
+
+    void delivered(int seqNum, long time, long receivedAt)
+    {
+        deliveryMicros.record((time - receivedAt) / 1000);
+        record(Event.DELIVERED, seqNum, time, time - receivedAt);
+    }// delivered
+
+    void taken(int seqNum, long time, long deliveredAt)
+    {
+        appMicros.record((time - deliveredAt) / 1000);
+        record(Event.TAKEN, seqNum, time, time - deliveredAt);
+    }// taken
+
+    void ackSent(int seqNum, long time, long hold)
+    {
+        ackHoldMicros.record(hold / 1000);
+        record(Event.ACK_SENT, seqNum, time, hold);
+    }// ackSent
+
+    void acked(int seqNum, long time, long network)
+    {
+        networkMicros.record(network / 1000);
+        record(Event.ACKED, seqNum, time, network);
+    }// acked
+
+    // adds the given event to the timeline
+    private void record(Event event, int seqNum, long time, long value)
+    {
+        int i = (int) (recorded.getAndIncrement() % times.length);
+        times[i] = time;
+        values[i] = value;
+        seqNums[i] = seqNum;
+        events[i] = (byte) event.ordinal();
+    }// record
+
+    // reading
+
+    public Histogram queueMicros()
+    {
+        return queueMicros;
+    }// queueMicros
+
+    public Histogram wireMicros()
+    {
+        return wireMicros;
+    }// wireMicros
+
+    public Histogram deliveryMicros()
+    {
+        return deliveryMicros;
+    }// deliveryMicros
+
+    public Histogram appMicros()
+    {
+        return appMicros;
+    }// appMicros
+
+    public Histogram ackHoldMicros()
+    {
+        return ackHoldMicros;
+    }// ackHoldMicros
+
+    public Histogram networkMicros()
+    {
+        return networkMicros;
+    }// networkMicros
+
+    // returns the # of events recorded so far, including those that the
+    // timeline no longer holds
+    public long events()
+    {
+        return recorded.get();
+    }// events
+
+    /**
+     * Prints the stages (as comments) then the timeline in CSV, i.e., one
+     * line per event, in time order: its time since the trace was created
+     * and its stage value (see Event), both in microseconds, the event
+     * and the sequence number of the packet. The System.nanoTime() of
+     * time 0 is printed too, so that the timelines of instances of the
+     * same host can be merged.
+     */
+    public void dump(PrintStream out)
+    {
+        long n = recorded.get();
+        int kept = (int) Math.min(n, times.length);
+        Integer[] order = new Integer[kept];
+        for (int i = 0; i < kept; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(times[a], times[b]));
+        out.println("# " + this);
+        out.println("# origin=" + origin + " ns, events=" + n + ", kept="
+                    + kept);
+        out.println("time_us,event,seq,value_us");
+        for (int i : order)
+            out.printf("%.1f,%s,%d,%.1f%n", (times[i] - origin) / 1e3,
+                       EVENTS[events[i]], seqNums[i], values[i] / 1e3);
+    }// dump
+
+    @Override
+    public String toString()
+    {
+        return String.format("queue %s | wire %s | delivery %s | app %s"
+                             + " | ack hold %s | network %s (us)",
+                             stage(queueMicros), stage(wireMicros),
+                             stage(deliveryMicros), stage(appMicros),
+                             stage(ackHoldMicros), stage(networkMicros));
+    }// toString
+
+    // returns the percentiles of the given stage as a string
+    private static String stage(Histogram histogram)
+    {
+        return String.format("p50=%d p99=%d max=%d",
+                             histogram.percentile(0.5),
+                             histogram.percentile(0.99), histogram.max());
+    }// stage
+}// PacketTrace
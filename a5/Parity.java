@@ -0,0 +1,126 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Parity.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+
+/**
+ * XOR parity of a block of data packets, for forward error correction
+ * (see RDTConfig.fecBlock): the sender adds every packet of a block to
+ * the parity of that block as it moves it into its window, and sends that
+ * parity behind the packets (see PacketCodec.encodeParity); the receiver
+ * adds every packet of the block that it gets, so that once the parity is
+ * in and a single packet of the block is missing, the XOR of the two
+ * parities is that packet (see rebuild).
+ *
+ * A parity is the XOR of the type (1), the payload length (2) and the
+ * payload of its packets, zero-padded to the longest of them, which is
+ * all that a rebuilt packet needs besides its sequence number: the rest
+ * of a data packet (ACK fields, trace fields, flags) changes from one
+ * transmission to the next. Blocks are made of the packets whose sequence
+ * numbers have the same quotient by the block size, and packet i of a
+ * block is the one whose remainder is i.
+ */
+public class Parity
+{
+    public static final int MAX_BLOCK = 64;  // bits in the set of members
+    public static final int SUM_HEADER = 3;  // type + payload length
+
+    private final ByteBuffer sum =           // XOR of the packets added;
+        ByteBuffer.allocate(SUM_HEADER + A5.MAX_MSG_SIZE); // zero past
+                                             // length
+    private int length;                      // # of bytes of sum in use
+    private int block;                       // # of the block
+    private long members;                    // bit i: packet i was added
+
+    // empties this parity, which becomes that of the given block
+    public void reset(int inBlock)
+    {
+        sum.clear();
+        for (int i = 0; i < length; i++)
+            sum.put(i, (byte) 0);
+        length = 0;
+        members = 0;
+        block = inBlock;
+    }// reset
+
+    // returns the # of the block of this parity
+    public int block()
+    {
+        return block;
+    }// block
+
+    // returns the set of the packets added so far, as a bitmap
+    public long members()
+    {
+        return members;
+    }// members
+
+    // returns true if and only if packet i of the block was added
+    public boolean has(int i)
+    {
+        return (members & (1L << i)) != 0;
+    }// has
+
+    /**
+     * Adds packet i of the block, of the given type, whose payload spans
+     * the given range of the given buffer (which is left as is)
+     */
+    public void add(int i, byte type, ByteBuffer packet, int from, int to)
+    {
+        int payload = to - from;
+        sum.clear();
+        sum.put(0, (byte) (sum.get(0) ^ type));
+        sum.putShort(1, (short) (sum.getShort(1) ^ payload));
+        int at = SUM_HEADER;
+        int end = SUM_HEADER + payload;
+        for (int j = from; at + 8 <= end; j += 8, at += 8)
+            sum.putLong(at, sum.getLong(at) ^ packet.getLong(j));
+        for (int j = from + at - SUM_HEADER; at < end; j++, at++)
+            sum.put(at, (byte) (sum.get(at) ^ packet.get(j)));
+        length = Math.max(length, end);
+        members |= 1L << i;
+    }// add
+
+    // returns the buffer of this parity, which spans it between position 0
+    // and the limit, for the sender to send (see PacketCodec.encodeParity)
+    public ByteBuffer sum()
+    {
+        return sum.limit(length).position(0);
+    }// sum
+
+    /**
+     * Writes in the given packet buffer the XOR of this parity and of the
+     * given one, which spans the bytes between the position and the limit
+     * of the given buffer, i.e., the one packet of the block that only
+     * the latter covers: its type in the first byte and its payload right
+     * behind the header, between the position and the limit of the packet
+     * buffer (as PacketCodec.payload leaves a data packet). Returns false
+     * if the result is no packet (e.g., more than one packet is missing).
+     */
+    public boolean rebuild(ByteBuffer parity, ByteBuffer packet)
+    {
+        sum.clear();
+        int from = parity.position();
+        int other = parity.remaining();
+        if (other < SUM_HEADER)
+            return false;
+        byte type = (byte) (parity.get(from) ^ sum.get(0));
+        int payload = (parity.getShort(from + 1) ^ sum.getShort(1)) & 0xffff;
+        if (!PacketCodec.isData(type) || payload > A5.MAX_MSG_SIZE
+            || SUM_HEADER + payload > Math.max(other, length))
+            return false;
+        packet.clear();
+        packet.put(0, type);
+        int at = PacketCodec.HEADER_SIZE;
+        for (int i = SUM_HEADER; i < SUM_HEADER + payload; i++, at++) {
+            byte b = i < other ? parity.get(from + i) : 0;
+            packet.put(at, (byte) (b ^ sum.get(i)));
+        }
+        packet.limit(at).position(PacketCodec.HEADER_SIZE);
+        return true;
+    }// rebuild
+}// Parity
@@ -0,0 +1,126 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: PathMtu.java
+ *
+ **************************************************/
+
+/**
+ * Packetization-layer path MTU discovery, loosely following DPLPMTUD
+ * (RFC 8899): the sender starts from a datagram size that is assumed to get
+ * through and probes for larger ones with padded packets that carry no data
+ * (see PacketCodec.encodeProbe), which the peer's receiver acknowledges. A
+ * size is confirmed as soon as a probe of that size is acknowledged, and
+ * given up on after MAX_PROBES unacknowledged tries. The first probe of a
+ * search tries the largest useful size (a datagram holding a full message),
+ * the next ones halve the range between the confirmed size and the smallest
+ * size that failed.
+ *
+ * Probing only happens when it is wanted, i.e., when the app sends messages
+ * that have to be segmented. Once a search is over, the next one may only
+ * start RAISE_INTERVAL_NS later (in case the path MTU grew). Since probes
+ * carry no data, losing one is neither retransmitted nor taken as a sign of
+ * congestion.
+ *
+ * Sizes are those of the UDP payload, i.e., of RDT packets. The sender
+ * thread drives the search; the receiver thread reports the ACKs.
+ */
+public class PathMtu
+{
+    // IPv6 + UDP headers, i.e., what the path MTU has room for on top of
+    // an RDT packet (IPv4 needs 20 bytes less)
+    public static final int IP_UDP_OVERHEAD = 48;
+
+    private static final int MAX_PROBES = 3;        // tries per size
+    private static final int SEARCH_DONE = 16;      // stop searching once the
+                                                    // range is that narrow
+    private static final long RAISE_INTERVAL_NS =   // between two searches
+            60_000_000_000L;
+
+    private final int max;             // largest useful size
+    private volatile int size;         // largest size known to get through
+    private int ceiling;               // largest size not known to fail
+    private int probe;                 // size of the probe in flight (0: none)
+    private int tries;                 // # of times it was sent
+    private long deadline;             // when to give up on that probe or,
+                                       // between searches, when to search
+                                       // again (ns)
+    private volatile boolean wanted;   // a larger size would help
+
+    // creates a search from the given base size up to the given max size
+    public PathMtu(int base, int inMax)
+    {
+        max = Math.max(base, inMax);
+        size = base;
+        ceiling = max;
+        deadline = System.nanoTime();
+    }// constructor
+
+    // returns the largest packet size known to get through the path
+    public int size()
+    {
+        return size;
+    }// size
+
+    // called when a message had to be segmented: a search may start
+    public void wanted()
+    {
+        if (!wanted && size < max)
+            wanted = true;
+    }// wanted
+
+    /**
+     * Returns the size of the probe to send now, if any (0 otherwise): a
+     * probe whose previous try went unacknowledged for the given timeout,
+     * or the next size of the search
+     */
+    public synchronized int nextProbe(long now, long timeoutNs)
+    {
+        if (!wanted || now - deadline < 0)
+            return 0;
+        if (probe != 0) {
+            if (++tries < MAX_PROBES) {
+                deadline = now + timeoutNs;
+                return probe;
+            }
+            ceiling = probe - 1;        // that size does not get through
+            probe = 0;
+        } else if (ceiling - size < SEARCH_DONE) {
+            ceiling = max;              // new search after RAISE_INTERVAL_NS
+        }
+        if (ceiling - size < SEARCH_DONE) {
+            wanted = false;             // search over
+            deadline = now + RAISE_INTERVAL_NS;
+            return 0;
+        }
+        probe = ceiling == max ? max : (size + ceiling + 1) / 2;
+        tries = 0;
+        deadline = now + timeoutNs;
+        return probe;
+    }// nextProbe
+
+    /**
+     * Called when a probe of the given size got through; returns true if
+     * and only if the search is to go on, i.e., the sender should be woken
+     * up to send the next probe
+     */
+    public synchronized boolean probeAcked(int ackedSize, long now)
+    {
+        if (ackedSize > size)
+            size = Math.min(ackedSize, max);
+        if (probe == 0 || ackedSize < probe)
+            return false;               // late ACK of an earlier probe
+        probe = 0;
+        deadline = now;
+        return true;
+    }// probeAcked
+
+    // returns the # of nanoseconds until nextProbe has something to do,
+    // or 0 if it never will until the next call to wanted
+    public synchronized long nanosToNextProbe(long now)
+    {
+        if (!wanted)
+            return 0;
+        return Math.max(1, deadline - now);
+    }// nanosToNextProbe
+}// PathMtu
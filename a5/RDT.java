@@ -6,23 +6,40 @@
  * Classes: RDT
  *          Sender (inner class)
  *          Receiver (inner class)
+ *          MessageSubscription (inner class)
+ *          PendingSend (inner class)
  *
  * Danny Moczynski
  *
- * Alex Ceithamer  
+ * Alex Ceithamer
  *
  * Alden Sprackling
- 
+
  *****************************************************************************/
 
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.net.DatagramPacket;
+import java.io.PrintStream;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
 
-/**  
- * Reliable Data Transfer potocol implemented on top of MyDatagramSocket.
+/**
+ * Reliable Data Transfer potocol implemented on top of an unreliable
+ * Transport, i.e., MyDatagramSocket (default) or a DatagramChannel.
  *
  * Important note: this class is NOT aware of (and thus cannot reference) the
  * client/server processes that will be using it. In fact, any client-server
@@ -30,29 +47,195 @@ import java.util.Arrays;
  *
  * The handout explains how an RDT instance's sender thread talks to its
  * peer's receiver thread, and vice-versa.
+ *
+ * Each instance uses a single transport bound to its receiver port: the sender
+ * sends its data packets from it and the receiver reads both the peer's data
+ * packets and the ACKs for our own data from it. Packets are laid out as
+ * follows (all integers are big-endian, see PacketCodec):
+ *
+ *   DATA:      type (1) | session (4) | seq # (4) |
+ *              payload (0..MAX_MSG_SIZE) | [ACK fields (16)] | check (n)
+ *   FIN:       same as DATA, without a payload
+ *   ACK:       type (1) | session (4) | cumulative ack (4) |
+ *              selective ack (4) | SACK bitmap (4) | receive window (4) |
+ *              check (n)
+ *   PROBE:     type (1) | session (4) | padding | check (n)
+ *   PROBE ACK: type (1) | session (4) | size of the probe (4) | check (n)
+ *   PARITY:    type (1) | session (4) | first seq # (4) | block size (1) |
+ *              count (1) | XOR of the packets (3..3 + MAX_MSG_SIZE) |
+ *              check (n)
+ *
+ * where the cumulative ack is the next in-order sequence number expected by
+ * the receiver, the selective ack is the sequence number of the packet that
+ * triggered the ACK, and bit i of the SACK bitmap is set if the packet with
+ * sequence number (cumulative ack + 1 + i) is buffered by the receiver
+ * (selective repeat only). The receive window is the # of free slots in the
+ * receiver's receive buffer: the peer may only send packets whose sequence
+ * number is below cumulative ack + receive window (flow control). Until
+ * its first ACK, the sender knows nothing of the peer's buffer, which may
+ * be smaller than its own: it sends a single packet, which asks to be
+ * ACKed right away. A data packet whose type has the ACK flag set carries
+ * the four fields of an ACK behind its payload (piggybacking, see below).
+ * The check is the integrity field computed over all the bytes before it,
+ * CRC-32C by default (n = 4, see IntegrityCheck). Packets whose type has
+ * the trace flag set also carry the trace fields of PacketCodec: a stamp
+ * behind the payload of a data packet, and an echo and a hold behind the
+ * fields of an ACK (see below).
+ *
+ * If RDTConfig.mtu is set, messages that do not fit in a datagram of the
+ * path MTU are cut into segments, i.e., data packets of their own, all
+ * but the last one of type SEGMENT, which the app thread puts back
+ * together as it takes them out of the receive buffer (segments are
+ * delivered in order like any packet). A lost segment then only costs the
+ * retransmission of that segment instead of the whole message, and no
+ * datagram gets fragmented by IP. The path MTU is probed for with PROBE
+ * packets, which the peer's receiver answers with PROBE ACKs (see
+ * PathMtu).
+ *
+ * With RDTConfig.fecBlock set, the sender adds forward error correction
+ * to its data: behind every block of fecBlock packets (by sequence
+ * number), it sends a PARITY packet holding their XOR (see Parity), and
+ * the receiver rebuilds the one packet of a block that is missing once
+ * the parity is in, then processes it as if it had come in. A single loss
+ * per block thus costs no retransmission, let alone a timeout, for the
+ * price of one extra packet per block. When the app runs out of data in
+ * the middle of a block (e.g., at the end of a file), the packets of that
+ * block sent so far get a parity of their own, once per block. Receivers
+ * need no setting: they start keeping the parities of the peer's blocks
+ * with its first PARITY packet. FEC pays off with selective repeat, whose
+ * fast retransmit leaves a hole to the parity of its block; with
+ * go-back-n, the packets behind a rebuilt one were dropped already.
+ *
+ * In-order packets may be acknowledged in batches (see
+ * RDTConfig.ackFrequency): the receiver then only ACKs every
+ * ackFrequency-th of them, and the sender thread ACKs the others once
+ * they have waited for maxAckDelayMillis, unless it can piggyback that
+ * ACK on a data packet of its own first. Packets that are out of order,
+ * duplicated or that fill a hole are still ACKed right away, so that the
+ * peer's fast retransmit works as before, and so are the packets that
+ * the peer flagged with ACK_NOW because it cannot send anything else
+ * until they are ACKed (full window or empty send buffer).
+ *
+ * With RDTConfig.ioBatch set above 1, packets are moved in bursts: the
+ * sender hands the packets it picked to the transport up to ioBatch at a
+ * time, and the receiver takes up to ioBatch datagrams per wakeup (a
+ * DatagramChannel drained in non-blocking mode, see ChannelTransport).
+ * The in-order packets of a burst get a single ACK once the whole burst
+ * is processed, even those that would be ACKed right away otherwise.
+ *
+ * Packets live in ByteBuffers recycled through two pools, one per direction:
+ * a message is copied once from the app into a pooled buffer, right behind
+ * the room left for the header, which the sender fills in place along with
+ * the integrity field; received packets stay in the buffer they were read into
+ * until the app copies their payload out. Once the pools are warmed up,
+ * sending, receiving and ACKing packets does not allocate anything (except
+ * for the byte[] flavours of sendData and receiveData and whatever
+ * MyDatagramSocket does).
+ *
+ * Besides the blocking sendData and receiveData, the app may send messages
+ * with sendAsync, which never waits and returns a future completed once the
+ * message is ACKed, and may have received messages pushed to a
+ * Flow.Subscriber instead of pulling them (see receivePublisher), so that a
+ * single app thread can drive any # of instances.
+ *
+ * An instance is closed like a TCP connection (see close): it queues a
+ * FIN behind the last message of the app, which is sequenced, sent,
+ * retransmitted and ACKed like any data packet, and reaches the peer's
+ * app as the end of the stream once everything before it was delivered.
+ * Both peers wait for their FIN to be ACKed and for the other's FIN
+ * before the threads stop and the transport is closed.
+ *
+ * Every instance records what it sends, receives and waits for in the
+ * metrics of its configuration (see RDTMetrics and RDTConfig.metrics).
+ * With RDTConfig.trace set, it also stamps its packets and times the
+ * stages of their life, from sendData to the ACK, in a PacketTrace of its
+ * own (see getTrace).
+ *
+ * By default, an instance runs a sender thread and a receiver thread of its
+ * own, which wait for events by parking and by blocking in the transport.
+ * Instances configured with an RDTEngine (see RDTConfig.engine) run no
+ * thread at all: the engine's event loops read their channels and run
+ * their senders step by step, with their timers in a timing wheel.
  */
 
-public class RDT
+public class RDT implements AutoCloseable
 {
+    /** Sliding-window flavours. With a window of one packet, both behave as
+     *  the original stop-and-wait protocol.
+     */
+    public enum Mode { GO_BACK_N, SELECTIVE_REPEAT }
+
+    /** Datagram services an instance can run on (see Transport).
+     */
+    public enum TransportType { SOCKET, CHANNEL }
+
+    private static final int SACK_BITS = 32; // # of packets covered by
+                                             // the SACK bitmap
+    private static final int CLOSE_RETRIES = 2; // # of unanswered timeouts
+                                             // before close gives up
+    private static final int LINGER_RTOS = 4; // silence that ends the
+                                             // lingering of close, in RTOs
+
     private InetAddress peerIpAddress;   // IP address of this instance
     private int rcvPortNum;              // port # of this instance's receiver
     private int peerRcvPortNum;          // port # of peer's receiver
-    private Thread senderThread;         // sender side of this instance
-    private Thread receiverThread;       // receiver side of this instance
-    private byte[] dataToSend;           // buffer for data to be sent
-                                         // AKA the "send buffer"
-    private boolean dataWaitingToBeSent; // flag indicating that there is data
-         // yet to be sent in the send buffer and that the app will have to
-         // wait before being able to send another message
-    private byte[] dataReceived;         // buffer for data received from below
-                                         // AKA the "receive buffer"    
-    private boolean dataWasReceivedFromBelow; // flag indicating that there is
-         // data in the receive buffer that has yet to be grabbed by the app
+    private RDTConfig config;            // mode, window size, etc.
+    private RttEstimator rtt;            // RTT estimates and current RTO
+    private RDTMetrics metrics;          // shared with the instances of the
+                                         // same configuration
+    private PacketTrace trace;           // per-packet tracing (null: off)
+    private PacketCodec codec;           // packet layout
+    private int sessionId;               // ID carried by our packets
+    private SendTransport transport;     // shared by sender & receiver
+    private Sender sender;               // sender side of this instance
+    private Receiver receiver;           // receiver side of this instance
+    private Thread senderThread;         // runs the sender
+    private Thread receiverThread;       // runs the receiver
+    private RDTEngine.Task task;         // drives both instead of the threads
+                                         // (null: no engine)
+    private PathMtu pathMtu;             // max size of our packets (null:
+                                         // no segmentation)
+    private ByteBuffer segment;          // app thread: packet being filled
+                                         // by sendData
+    private RingBuffer<ByteBuffer> sendQueue;    // packets from the app
+         // yet to be moved into the sender's window, AKA the "send buffer"
+    private RingBuffer<ByteBuffer> receiveQueue; // packets received in
+         // order from below yet to be grabbed by the app, AKA the "receive
+         // buffer"
+    private final ConcurrentLinkedQueue<ByteBuffer> overflow = // packets
+         new ConcurrentLinkedQueue<>(); // that sendAsync queued behind a
+         // full send buffer
+    private int queuedPackets;           // app thread: # of packets queued
+                                         // so far, i.e., seq # of the next
+    private final ConcurrentLinkedQueue<PendingSend> pendingSends = // futures
+         new ConcurrentLinkedQueue<>(); // of sendAsync, in message order
+    private volatile MessageSubscription subscription; // pushes the
+                                         // received messages (null: pulled
+                                         // by the app)
+    private RingBuffer<ByteBuffer> sendPool;     // free packet buffers,
+         // released by the sender thread and reused by the app thread
+    private RingBuffer<ByteBuffer> receivePool;  // free packet buffers,
+         // released by the app thread and reused by the receiver thread
+    private volatile Thread flushWaiter; // app thread blocked in flush or
+                                         // close (if any)
+    private boolean closing;             // app thread: our FIN was queued
+    private boolean endOfStream;         // app thread: the end of the
+                                         // stream was reached
+    private volatile boolean peerFinished; // the peer's FIN was delivered
+    private volatile boolean peerFinFirst; // ... and was the first packet
+                                         // that the peer sent
+    private volatile long lastHeard =    // when the last valid packet
+         System.nanoTime();              // came in (ns)
+    private volatile long lastTimeout =  // when a retransmission timer
+         System.nanoTime();              // last went off (ns)
+    private volatile int silentTimeouts; // # of timers in a row that went
+                                         // off up to then without a packet
+                                         // from the peer
+    private volatile boolean terminated; // the threads must stop
     private String tag;                  // only for debugging (see handout)
 
-    private final Object sendLock = new Object();
-    private final Object receiveLock = new Object();
-    
+    private final Object sendLock = new Object(); // guards the sender's window
+
     // Do not modify this constructor
     public RDT(String inPeerIP, 
                int inRcvPortNum, 
@@ -66,166 +249,1458 @@ public class RDT
             peerIpAddress = InetAddress.getLoopbackAddress();
         else
             peerIpAddress = InetAddress.getByName(inPeerIP);
-        dataWaitingToBeSent = false;
-        dataWasReceivedFromBelow = false;
-        senderThread = new Thread(new Sender());
-        receiverThread = new Thread(new Receiver());
-        senderThread.start();
-        receiverThread.start();
+        open(new RDTConfig());
+    }// constructor
+
+    // Creates an instance with the given mode, window size, etc.
+    public RDT(String inPeerIP,
+               int inRcvPortNum,
+               int inPeerRcvPortNum,
+               String inTag,
+               RDTConfig inConfig) throws Exception
+    {
+        rcvPortNum = inRcvPortNum;
+        peerRcvPortNum = inPeerRcvPortNum;
+        tag = inTag;
+        if (inPeerIP == null)
+            peerIpAddress = InetAddress.getLoopbackAddress();
+        else
+            peerIpAddress = InetAddress.getByName(inPeerIP);
+        open(inConfig);
     }// constructor
-      
+
+    /**
+     * Called by the public constructors once the addresses are set: sets up
+     * this instance with the given configuration (a stop-and-wait one with
+     * the defaults of RDTConfig for the 4-argument constructor), opens its
+     * own transport and starts its threads, which stand for the sender and
+     * receiver threads of the original constructor
+     */
+    private void open(RDTConfig inConfig) throws Exception
+    {
+        setUp(inConfig, ThreadLocalRandom.current().nextInt());
+        if (config.engine != null && config.transport != TransportType.CHANNEL)
+            throw new IllegalArgumentException(
+                "an engine requires the channel transport");
+        Transport own;
+        if (config.transport == TransportType.CHANNEL)
+            own = new ChannelTransport(peerIpAddress, rcvPortNum,
+                                       peerRcvPortNum);
+        else
+            own = new SocketTransport(peerIpAddress, rcvPortNum,
+                                      peerRcvPortNum, metrics);
+        transport = own;
+        transport.reserveBuffers(
+            config.socketBufferBytes(codec.maxPacketSize()));
+        start(own);
+    }// open
+
+    /**
+     * Creates an instance for the given session of an RDTServer: it sends
+     * its packets through the given transport, and it gets the packets of
+     * the session from the server (see packetReceived) instead of reading
+     * them itself.
+     */
+    RDT(SendTransport inTransport,
+        int inSessionId,
+        String inTag,
+        RDTConfig inConfig)
+    {
+        tag = inTag;
+        setUp(inConfig, inSessionId);
+        transport = inTransport;
+        start(null);
+    }// constructor
+
+    // sets up everything but the addresses, the transport and the threads
+    private void setUp(RDTConfig inConfig, int inSessionId)
+    {
+        if (inConfig.windowSize < 1)
+            throw new IllegalArgumentException(
+                "window size must be at least 1: " + inConfig.windowSize);
+        if (inConfig.ackFrequency < 1)
+            throw new IllegalArgumentException(
+                "ACK frequency must be at least 1: " + inConfig.ackFrequency);
+        if (inConfig.ioBatch < 1)
+            throw new IllegalArgumentException(
+                "I/O batch must be at least 1: " + inConfig.ioBatch);
+        if (inConfig.fecBlock < 0 || inConfig.fecBlock > Parity.MAX_BLOCK)
+            throw new IllegalArgumentException(
+                "FEC block size must be between 0 and " + Parity.MAX_BLOCK
+                + ": " + inConfig.fecBlock);
+        config = inConfig;
+        metrics = config.metrics;
+        sessionId = inSessionId;
+        rtt = new RttEstimator(config.initialRtoMillis,
+                               config.minRtoMillis, config.maxRtoMillis);
+        codec = new PacketCodec(config.integrityCheck, config.trace);
+        if (config.trace)
+            trace = new PacketTrace(config.traceEvents);
+        if (config.mtu > 0) {
+            int base = config.mtu - PathMtu.IP_UDP_OVERHEAD;
+            if (base <= codec.overhead())
+                throw new IllegalArgumentException(
+                    "MTU too small: " + config.mtu);
+            base = Math.min(base, codec.maxPacketSize());
+            pathMtu = new PathMtu(base, config.probeMtu ? codec.maxPacketSize()
+                                                        : base);
+        }
+        sendQueue = new RingBuffer<>(config.sendQueueCapacity);
+        receiveQueue = new RingBuffer<>(config.receiveQueueCapacity);
+        // room for every buffer that can be in use at once: queued, in the
+        // window and, on the send side, ACKed but not released yet
+        sendPool = new RingBuffer<>(
+            sendQueue.capacity() + 2 * config.windowSize);
+        receivePool = new RingBuffer<>(
+            receiveQueue.capacity() + config.windowSize + config.ioBatch);
+    }// setUp
+
+    // starts the sender thread and, unless the packets are received by an
+    // RDTServer (source is null), the receiver thread, which reads them from
+    // the given transport, or hands both over to the engine
+    private void start(Transport source)
+    {
+        sender = new Sender();
+        receiver = new Receiver(source);
+        if (config.engine != null) {
+            task = config.engine.register(this, (ChannelTransport) source);
+            return;
+        }
+        String session = Integer.toHexString(sessionId);
+        senderThread = new Thread(sender, "rdt-sender-" + session);
+        senderThread.start();
+        if (source != null) {
+            receiverThread = new Thread(receiver, "rdt-receiver-" + session);
+            receiverThread.start();
+        }
+    }// start
+
+    /**
+     * Called by the RDTServer running this session with a packet of the
+     * session that it received and verified. Returns the buffer in which
+     * the server must read its next packet: the given one, unless this
+     * instance kept it.
+     */
+    ByteBuffer packetReceived(ByteBuffer packet, int length)
+    {
+        return receiver.packetReceived(packet, length);
+    }// packetReceived
+
+    // returns the session ID carried by the packets of this instance
+    int sessionId()
+    {
+        return sessionId;
+    }// sessionId
+
+    // returns the # of nanoseconds since a valid packet last came in
+    long idleNanos()
+    {
+        return System.nanoTime() - lastHeard;
+    }// idleNanos
+
+    /**
+     * Stops this instance right away, whatever is in flight, without any
+     * FIN: stops the threads (or the engine task) and closes the transport
+     * (a no-op for the sessions of an RDTServer). The app threads waiting
+     * in sendData or receiveData give up (see RingBuffer.close), the
+     * futures of sendAsync that did not complete yet fail, and the
+     * subscriber (if any) completes once it was pushed what is left in the
+     * receive buffer. The threads are not interrupted, since an interrupt
+     * would close a channel under them. Calling it again has no effect.
+     */
+    void terminate()
+    {
+        synchronized (this) {
+            if (terminated)
+                return;
+            terminated = true;
+        }
+        wakeSender();
+        join(senderThread);
+        if (task != null)
+            task.unbind();
+        try {
+            transport.close();
+        } catch (IOException e) {
+            RDTMetrics.error("closing the transport", e);
+        }
+        join(receiverThread);
+        sendQueue.close();
+        receiveQueue.close();
+        PendingSend pending;
+        while ((pending = pendingSends.poll()) != null)
+            pending.acked.completeExceptionally(
+                new IOException("closed before the message was ACKed"));
+        MessageSubscription pushTo = subscription;
+        if (pushTo != null)
+            pushTo.signal();
+        if (config.traceDump != null)
+            dumpTrace(config.traceDump + "-" + tag + "-"
+                      + Integer.toHexString(sessionId) + ".csv");
+    }// terminate
+
+    // dumps the trace of this instance in the file with the given name
+    private void dumpTrace(String fileName)
+    {
+        try (PrintStream out = new PrintStream(
+                 new FileOutputStream(fileName))) {
+            trace.dump(out);
+        } catch (IOException e) {
+            RDTMetrics.error("dumping the trace to " + fileName, e);
+        }
+    }// dumpTrace
+
+    // waits for the given thread to end, unless it is the calling thread
+    // (or null)
+    private static void join(Thread thread)
+    {
+        if (thread == null || thread == Thread.currentThread())
+            return;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                thread.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }// join
+
+    // returns true if and only if the instance was terminated
+    boolean isTerminated()
+    {
+        return terminated;
+    }// isTerminated
+
+    /**
+     * Called by the engine loop driving this instance: runs one step of the
+     * sender and returns what the sender thread would do next, i.e., -1 to
+     * run another step right away, 0 to wait for an event, or the # of
+     * nanoseconds until the next timer goes off
+     */
+    long runSender()
+    {
+        return sender.step();
+    }// runSender
+
+    /**
+     * Called by the engine loop driving this instance when the given
+     * transport, which is in non-blocking mode, has datagrams waiting:
+     * processes them as the receiver thread would
+     */
+    void receivePackets(ChannelTransport from)
+    {
+        try {
+            receiver.receiveAvailable(from);
+        } catch (IOException e) {
+            if (!terminated) // closed under us otherwise
+                metrics.ioError("receive", e);
+        }
+    }// receivePackets
+
+    // gets the sender to look at its state again (new data, new ACKs,
+    // a window update to send, etc.)
+    private void wakeSender()
+    {
+        if (task != null)
+            task.schedule();
+        else
+            LockSupport.unpark(senderThread);
+    }// wakeSender
+
     /** The application calls this method to send a message to its peer.
-     *  The RDT instance simply "copies" this data into its send buffer, but
-     *  only after waiting for the data currently in that buffer (if any)
-     *  has been sent.
+     *  The RDT instance simply copies this data into its send buffer,
+     *  waiting only if that buffer is full. Messages may hold up to
+     *  A5.MAX_MSG_SIZE bytes, and are segmented as needed to fit in the
+     *  path MTU. Only one app thread at a time may send data. Throws
+     *  IllegalStateException once the instance is closed.
      */
     public void sendData(byte[] data)
     {
-        synchronized (sendLock) {
-            while (dataWaitingToBeSent) {
-                try {
-                    sendLock.wait(); 
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt(); 
-                }
+        sendData(ByteBuffer.wrap(data));
+    }// sendData
+
+    /** Same as above for the bytes between the position and the limit of
+     *  the given buffer, whose position is advanced to its limit. Unlike the
+     *  byte[] flavour, this one does not allocate anything.
+     */
+    public void sendData(ByteBuffer data)
+    {
+        startMessage(data.remaining());
+        append(data, true);
+        queuePacket(segment, false, true);
+    }// sendData
+
+    /** Same as above for the concatenation of the given buffers, e.g., a
+     *  message type followed by a slice of a mapped file, so that the app
+     *  does not have to assemble the message first.
+     */
+    public void sendData(ByteBuffer... data)
+    {
+        int length = 0;
+        for (ByteBuffer part : data)
+            length += part.remaining();
+        startMessage(length);
+        for (ByteBuffer part : data)
+            append(part, true);
+        queuePacket(segment, false, true);
+    }// sendData
+
+    /** Same as sendData(ByteBuffer), except that the calling thread never
+     *  waits: when the send buffer is full, the message is queued behind it
+     *  (without any bound, so the app should cap the # of messages whose
+     *  future has not completed yet). The returned future completes once
+     *  every packet of the message has been ACKed by the peer, in the
+     *  receiver thread: anything slow should be chained with the async
+     *  methods of the future. sendData and sendAsync may be called in any
+     *  order, but by one app thread at a time.
+     */
+    public CompletableFuture<Void> sendAsync(ByteBuffer data)
+    {
+        CompletableFuture<Void> acked = new CompletableFuture<>();
+        startMessage(data.remaining());
+        append(data, false);
+        // registered before the last packet can be sent, let alone ACKed
+        pendingSends.add(new PendingSend(queuedPackets, acked));
+        queuePacket(segment, false, false);
+        return acked;
+    }// sendAsync
+
+    // starts a message of the given length in a free packet buffer
+    // (segment), positioned right behind the room left for the header
+    private void startMessage(int length)
+    {
+        if (closing || terminated)
+            throw new IllegalStateException("RDT instance closed");
+        if (length > A5.MAX_MSG_SIZE)
+            throw new IllegalArgumentException(
+                "message too long: " + length + " bytes");
+        newSegment();
+        if (length > segment.remaining())
+            pathMtu.wanted();
+    }// startMessage
+
+    // takes a free packet buffer for the next segment of the message,
+    // limited to the path MTU
+    private void newSegment()
+    {
+        segment = acquire(sendPool);
+        if (pathMtu == null)
+            codec.startData(segment);
+        else
+            codec.startData(segment, pathMtu.size());
+    }// newSegment
+
+    // appends the bytes between the position and the limit of the given
+    // buffer to the message, queueing its segments as they fill up (see
+    // queuePacket for wait)
+    private void append(ByteBuffer data, boolean wait)
+    {
+        while (data.remaining() > segment.remaining()) {
+            int limit = data.limit();
+            data.limit(data.position() + segment.remaining());
+            segment.put(data);
+            data.limit(limit);
+            queuePacket(segment, true, wait);
+            newSegment();
+        }
+        segment.put(data);
+    }// append
+
+    /**
+     * Places the given packet, whose message (segment) ends at its
+     * position, in the send buffer; more tells whether other segments of
+     * the message follow. If that buffer is full, waits for room if told
+     * to, or queues the packet behind it (overflow) otherwise. Packets also
+     * go to the overflow queue as long as it is not empty, so that they are
+     * sent in order.
+     */
+    private void queuePacket(ByteBuffer packet, boolean more, boolean wait)
+    {
+        codec.endData(packet, more);
+        enqueue(packet, wait);
+    }// queuePacket
+
+    // places the given packet, which is ready to be sealed by the sender,
+    // in the send buffer (see queuePacket)
+    private void enqueue(ByteBuffer packet, boolean wait)
+    {
+        if (trace != null) {
+            long now = System.nanoTime();
+            codec.stamp(packet, now); // until its first transmission
+            trace.queued(queuedPackets, now);
+        }
+        queuedPackets++;
+        if (!overflow.isEmpty())
+            overflow.add(packet);
+        else if (!sendQueue.offer(packet)) {
+            if (wait)
+                waitToQueue(packet);
+            else
+                overflow.add(packet);
+        }
+        metrics.sendQueueDepth(sendQueue.size());
+        wakeSender();
+    }// enqueue
+
+    // places the given packet in the full send buffer once there is room
+    // for it, and records how long the app thread was blocked
+    private void waitToQueue(ByteBuffer packet)
+    {
+        RDTEvents.SendBlocked event = new RDTEvents.SendBlocked();
+        event.begin();
+        long start = System.nanoTime();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                sendQueue.put(packet);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
-            dataToSend = data;
-            dataWaitingToBeSent = true;
-            sendLock.notifyAll(); 
         }
-        
-    }// sendData
+        metrics.sendBlocked(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.session = sessionId;
+            event.commit();
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }// waitToQueue
 
     /** The application calls this method to receive a message from its peer.
-     *  The RDT instance simply returns this data to the app once it appears 
-     *  in its receive buffer.
+     *  The RDT instance simply returns the oldest message in its receive
+     *  buffer, waiting for one to come in if that buffer is empty (or for
+     *  the rest of its segments).
+     *  Returns null at the end of the stream, i.e., once every message
+     *  sent by the peer before it closed was received, or once this
+     *  instance is closed and its receive buffer is empty.
+     *  Only one app thread at a time may receive data.
      */
     public byte[] receiveData()
     {
-        synchronized (receiveLock) {
-            while (!dataWasReceivedFromBelow) {
-                try {
-                    receiveLock.wait(); 
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt(); 
-                }
-            }
-            byte[] data = dataReceived;
-            dataWasReceivedFromBelow = false;
-            receiveLock.notifyAll(); 
-            return data;
+        ByteBuffer packet = takeMessage();
+        if (packet == null)
+            return null;
+        if (PacketCodec.type(packet) == PacketCodec.TYPE_SEGMENT) {
+            ByteBuffer message = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+            copyMessage(packet, message);
+            return Arrays.copyOf(message.array(), message.position());
         }
+        byte[] data = new byte[packet.remaining()];
+        packet.get(data);
+        releasePacket(packet);
+        return data;
+    }// receiveData
+
+    /** Same as above, except that the message is copied into the given
+     *  buffer, which must have room for A5.MAX_MSG_SIZE bytes, and that its
+     *  length is returned (-1 at the end of the stream). Unlike the byte[]
+     *  flavour, this one does not allocate anything.
+     */
+    public int receiveData(ByteBuffer data)
+    {
+        if (data.remaining() < A5.MAX_MSG_SIZE)
+            throw new IllegalArgumentException(
+                "buffer too small: " + data.remaining() + " bytes");
+        ByteBuffer packet = takeMessage();
+        if (packet == null)
+            return -1;
+        int start = data.position();
+        copyMessage(packet, data);
+        return data.position() - start;
     }// receiveData
 
+    // removes the first packet of the next message from the receive
+    // buffer, waiting for one to come in if that buffer is empty, or
+    // returns null at the end of the stream (for good)
+    private ByteBuffer takeMessage()
+    {
+        if (endOfStream)
+            return null;
+        ByteBuffer packet = takePacket();
+        if (packet != null && PacketCodec.type(packet) != PacketCodec.TYPE_FIN)
+            return packet;
+        if (packet != null)
+            releasePacket(packet);
+        endOfStream = true;
+        return null;
+    }// takeMessage
+
+    // copies into the given buffer the message that starts with the given
+    // packet, taking its other segments (if any) out of the receive buffer
+    // as they come in, and releases its packets (the message is cut short
+    // if the instance is closed meanwhile)
+    private void copyMessage(ByteBuffer packet, ByteBuffer data)
+    {
+        while (packet != null) {
+            boolean more = PacketCodec.type(packet) == PacketCodec.TYPE_SEGMENT;
+            data.put(packet);
+            releasePacket(packet);
+            if (!more)
+                return;
+            packet = takePacket();
+        }
+    }// copyMessage
+
+    // removes the oldest packet from the receive buffer, waiting for one
+    // to come in if that buffer is empty, or returns null if the instance
+    // is closed and that buffer is empty
+    private ByteBuffer takePacket()
+    {
+        boolean interrupted = false;
+        ByteBuffer packet;
+        while (true) {
+            try {
+                packet = receiveQueue.take();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return packet;
+    }// takePacket
+
+    // hands the given packet, whose payload was grabbed by the app, back
+    // to the receiver
+    private void releasePacket(ByteBuffer packet)
+    {
+        if (trace != null)
+            trace.taken(PacketCodec.seqNum(packet), System.nanoTime(),
+                        PacketCodec.trailingStamp(packet));
+        receivePool.offer(packet);
+        receiver.windowOpened();
+    }// releasePacket
+
+    /** Returns a publisher of the messages received from the peer, which
+     *  pushes them on the given executor to its subscriber as fast as the
+     *  subscriber requests them. Messages that were not requested yet stay
+     *  in the receive buffer, so that a slow subscriber ends up closing the
+     *  peer's window (flow control). A message is passed to onNext in a
+     *  buffer (between its position and its limit) that is only valid until
+     *  onNext returns. The subscriber completes at the end of the stream
+     *  (see receiveData). An instance accepts a single subscriber, once,
+     *  after which the app must not call receiveData.
+     */
+    public Flow.Publisher<ByteBuffer> receivePublisher(Executor executor)
+    {
+        return subscriber -> subscribe(subscriber, executor);
+    }// receivePublisher
+
+    // same as above, on the common fork-join pool
+    public Flow.Publisher<ByteBuffer> receivePublisher()
+    {
+        return receivePublisher(ForkJoinPool.commonPool());
+    }// receivePublisher
+
+    // hands the received messages over to the given subscriber, unless
+    // there is one already
+    private void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber,
+                           Executor executor)
+    {
+        MessageSubscription newSubscription =
+            new MessageSubscription(subscriber, executor);
+        boolean first;
+        synchronized (this) {
+            first = subscription == null;
+            if (first)
+                subscription = newSubscription;
+        }
+        if (!first)
+            newSubscription.cancel();
+        subscriber.onSubscribe(newSubscription);
+        if (!first)
+            subscriber.onError(new IllegalStateException("already subscribed"));
+    }// subscribe
+
     /**
-     * Computes and returns the checksum (i.e., XORed byte values) over the 
-     * first n bytes of the given array
+     * Completes the futures of the messages sent with sendAsync whose
+     * packets are all below the given sequence number, i.e., ACKed
+     * (receiver thread)
+     */
+    private void completeSends(int ackedSeqNum)
+    {
+        PendingSend pending;
+        while ((pending = pendingSends.peek()) != null &&
+               ackedSeqNum - pending.lastSeqNum > 0) {
+            pendingSends.poll();
+            pending.acked.complete(null);
+        }
+    }// completeSends
+
+    // removes the oldest packet queued by the app, if any (sender thread)
+    private ByteBuffer pollQueued()
+    {
+        ByteBuffer packet = sendQueue.poll();
+        return packet != null ? packet : overflow.poll();
+    }// pollQueued
+
+    // returns true if and only if the app has no packet queued
+    private boolean nothingQueued()
+    {
+        return sendQueue.isEmpty() && overflow.isEmpty();
+    }// nothingQueued
+
+    /** Blocks the calling app thread until every message handed to sendData
+     *  so far has been acknowledged by the peer.
      */
-    private byte checkSum(byte[] array, int n)
+    public void flush()
     {
-        byte sum = 0;
-        for (int i = 0; i < n; i++) {
-            sum ^= array[i]; 
+        flushWaiter = Thread.currentThread();
+        try {
+            while (!sender.allAcked())
+                LockSupport.park(this);
+        } finally {
+            flushWaiter = null;
         }
-        return sum;
-    }// checkSum
+    }// flush
+
+    /** Closes this instance within config.closeTimeoutMillis (see
+     *  close(long)).
+     */
+    @Override
+    public void close()
+    {
+        close(config.closeTimeoutMillis);
+    }// close
+
+    /**
+     * Closes this instance gracefully: queues a FIN behind the messages
+     * sent so far, waits for it to be ACKed (i.e., for every message to be
+     * delivered) and for the FIN of the peer, then lingers until the peer
+     * has been silent for LINGER_RTOS of its RTOs, so that a FIN resent by
+     * the peer because our ACK of it was lost is ACKed again (twice, given
+     * the backoff), and finally terminates the instance. The peer's RTO is
+     * taken to be ours, unless its FIN was the first packet it sent: it
+     * then had no RTT sample, and resends its FIN after its initial RTO
+     * (taken to be ours, config.initialRtoMillis), which is usually far
+     * longer.
+     * Gives up, dropping whatever is left, once the peer has not answered
+     * anything for the given timeout and, if some of our packets are still
+     * unACKed, CLOSE_RETRIES retransmission timers went off meanwhile
+     * (e.g., the peer went away), so that a transfer that is slow or
+     * backing off after losses is not cut short.
+     * Messages received before the peer's FIN can still be taken with
+     * receiveData afterwards; note that the peer's FIN only gets in once
+     * there is room for it in the receive buffer. Returns true if and only
+     * if both FINs were ACKed. Must not be called while an app thread is
+     * sending data; calling it again has no effect.
+     */
+    public boolean close(long timeoutMillis)
+    {
+        if (closing || terminated)
+            return false;
+        closing = true;
+        long start = System.nanoTime();
+        long timeoutNs = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        ByteBuffer fin = acquire(sendPool);
+        codec.startData(fin);
+        codec.endFin(fin);
+        enqueue(fin, false);
+        boolean graceful = await(() -> sender.allAcked() && peerFinished,
+                                 () -> giveUpTime(start, timeoutNs));
+        if (graceful) {
+            long lingerStart = System.nanoTime();
+            long initialRtoNs =
+                TimeUnit.MILLISECONDS.toNanos(config.initialRtoMillis);
+            await(() -> false, () -> {
+                long heard = lastHeard;
+                long peerRtoNs = peerFinFirst
+                                 ? Math.max(initialRtoNs, rtt.rtoNanos())
+                                 : rtt.rtoNanos();
+                return (lingerStart - heard > 0 ? lingerStart : heard) +
+                       LINGER_RTOS * peerRtoNs;
+            });
+        }
+        terminate();
+        return graceful;
+    }// close
+
+    /**
+     * Returns when close may give up on the peer (ns): once it has been
+     * silent for the given timeout, counted from the given start at the
+     * earliest, provided that CLOSE_RETRIES timers went off meanwhile or
+     * that nothing is left to ACK; otherwise, one RTO from now, when this
+     * is checked again
+     */
+    private long giveUpTime(long start, long timeoutNs)
+    {
+        long heard = lastHeard;
+        long silentSince = start - heard > 0 ? start : heard;
+        long giveUp = silentSince + timeoutNs;
+        int retries = lastTimeout - heard > 0 ? silentTimeouts : 0;
+        if (retries >= CLOSE_RETRIES || sender.allAcked())
+            return giveUp;
+        long recheck = System.nanoTime() + rtt.rtoNanos();
+        return recheck - giveUp > 0 ? recheck : giveUp;
+    }// giveUpTime
+
+    // parks the calling app thread until the given condition holds (see
+    // flushWaiter), the given deadline (ns, which may move) passes or the
+    // instance is terminated, and returns true if and only if the
+    // condition holds
+    private boolean await(BooleanSupplier condition, LongSupplier deadline)
+    {
+        flushWaiter = Thread.currentThread();
+        try {
+            while (!condition.getAsBoolean()) {
+                long waitNs = deadline.getAsLong() - System.nanoTime();
+                if (waitNs <= 0 || terminated)
+                    return false;
+                LockSupport.parkNanos(this, waitNs);
+            }
+            return true;
+        } finally {
+            flushWaiter = null;
+        }
+    }// await
+
+    // returns the last RTT measured by the sender in ms (-1 if none yet)
+    public double getRttMillis()
+    {
+        return toMillis(rtt.rttNanos());
+    }// getRttMillis
+
+    // returns the sender's smoothed RTT in ms (-1 if no RTT measured yet)
+    public double getSmoothedRttMillis()
+    {
+        return toMillis(rtt.smoothedRttNanos());
+    }// getSmoothedRttMillis
+
+    // returns the sender's current retransmission timeout in ms
+    public double getRtoMillis()
+    {
+        return toMillis(rtt.rtoNanos());
+    }// getRtoMillis
+
+    // returns the metrics of this instance, which it shares with the other
+    // instances of the same configuration
+    public RDTMetrics getMetrics()
+    {
+        return metrics;
+    }// getMetrics
+
+    // returns the trace of this instance (null unless RDTConfig.trace is
+    // set)
+    public PacketTrace getTrace()
+    {
+        return trace;
+    }// getTrace
+
+    // returns the size in bytes of the largest packets sent, i.e., the path
+    // MTU minus the IP and UDP headers, as known so far
+    public int getMaxPacketSize()
+    {
+        return pathMtu == null ? codec.maxPacketSize() : pathMtu.size();
+    }// getMaxPacketSize
+
+    private static double toMillis(long ns)
+    {
+        return ns < 0 ? -1 : ns / 1e6;
+    }// toMillis
+
+    // returns a packet buffer from the given pool, or a new one if the
+    // pool is empty (i.e., still warming up)
+    private ByteBuffer acquire(RingBuffer<ByteBuffer> pool)
+    {
+        ByteBuffer buffer = pool.poll();
+        return buffer != null ? buffer : transport.allocate(codec.maxPacketSize());
+    }// acquire
+
+    // returns the window slot used by the given sequence number
+    private int slot(int seqNum)
+    {
+        return Math.floorMod(seqNum, config.windowSize);
+    }// slot
 
     /***********************************************************************
      * inner class: Receiver
      ***********************************************************************/
-    
+
     private class Receiver implements Runnable
     {
-        private MyDatagramSocket rcvSocket;   // socket of the receiver
-        private DatagramPacket rcvPacket;     // received packet
-        private byte[] rcvData =              // data in the received packet
-                new byte[A5.MAX_MSG_SIZE + 2];
-        private int expectedSeqNum = 0;       // enough said!
+        private static final int MAX_READS = 64; // engine: # of packets read
+                                              // in a row from a channel
+        private final Transport source;       // where run reads the packets
+                                              // (null: handed over by an
+                                              // RDTServer)
+        private volatile int expectedSeqNum;  // next in-order seq #
+        private ByteBuffer[] outOfOrder =     // selective repeat: packets
+                new ByteBuffer[config.windowSize]; // received ahead of
+                                              // time, indexed by window slot
+        private ByteBuffer ack =              // ACK sent by this thread
+                transport.allocate(codec.ackSize());
+        private ByteBuffer windowUpdate =     // ACK sent by the sender
+                transport.allocate(codec.ackSize()); // thread (see
+                                              // windowOpened and
+                                              // sendDelayedAck)
+        private final Object ackLock =        // guards the next six fields
+                new Object();
+        private int unacked;                  // # of in-order packets owed
+                                              // an ACK
+        private int lastInOrder;              // seq # of the last of them
+        private long ackDeadline;             // when they must be ACKed (ns)
+        private long echo;                    // tracing: stamp of the last
+                                              // data packet received (0:
+                                              // none) and when it came in,
+        private long echoReceivedAt;          // for the next ACK to echo
+        private long echoed;                  // last stamp echoed so far
+        private volatile int advertisedEdge;  // first seq # that the peer
+                                              // was told we have no room for
+        private volatile boolean windowUpdatePending; // windowOpened asked
+                                              // for a window update
+        private volatile boolean zeroWindowAdvertised; // the peer was told
+                                              // that the receive buffer is full
+        private ByteBuffer next;              // engine: buffer in which to
+                                              // read the next packet
+        private int fecBlock;                 // FEC: block size of the peer
+                                              // (0: no parity seen yet)
+        private Parity[] blocks;              // FEC: parities of the latest
+                                              // blocks received, indexed by
+                                              // block # (see parityReceived)
+        private ByteBuffer[] parities;        // FEC: parity packet of each
+                                              // of them (null: none yet)
+        private final ArrayDeque<ByteBuffer> spare = // free buffers
+                new ArrayDeque<>();           // dropped by this thread
+                                              // (see take and recycle)
+        private boolean inBurst;              // in-order packets are
+                                              // ACKed at the end of the
+                                              // burst (see endBurst)
+        private boolean burstAckDue;          // one of them asked for an
+                                              // ACK right away
+
+        Receiver(Transport inSource)
+        {
+            source = inSource;
+        }// constructor
 
         /**
-         * Implements the receiver's FSM for RDT 2.2. More precisely:
-         * 1) create the receiver's socket with the appropriate port number
-         * 2) in an infinite loop: receive data from below and process it 
-         *    adequately according to the FSM, that is:
-         *    + if bad data is received, resend the "other" ACK
-         *    + if good data is received, place it in the receive buffer and
-         *      wait for the app layer to grab it, then send the corresponding
-         *      ACK.
-         *    Make sure to keep the state of the receiver up to date at all 
-         *    times.
+         * Implements the receiver's FSM for Go-Back-N and Selective Repeat
+         * (RDT 2.2 when the window holds a single packet). More precisely,
+         * in an infinite loop: receive a packet from below and
+         *    + if it is corrupted, resend the ACK of the last in-order packet
+         *    + if it is an ACK, hand it over to the sender
+         *    + if it is the expected data packet, place it in the receive
+         *      buffer and wait for the app layer to grab it (followed by any
+         *      packet buffered behind it), then send the corresponding ACK
+         *    + otherwise, buffer it (selective repeat) or drop it (go-back-n)
+         *      and ACK what we have.
+         * Data packets that would not fit in the receive buffer once
+         * delivered are dropped (flow control), and every ACK advertises
+         * the room left in that buffer.
+         * Packets are read into a pooled buffer, which is handed over as is
+         * to the receive buffer (or kept aside, for selective repeat), in
+         * which case the next packet is read into a fresh one.
+         * With batched I/O, packets are received in bursts instead (see
+         * runBursts).
          */
         @Override
         public void run()
         {
-            try {
-                rcvSocket = new MyDatagramSocket(rcvPortNum);
-            } catch (Exception e) {
-                e.printStackTrace();
+            if (config.ioBatch > 1) {
+                runBursts();
                 return;
             }
-        
-            while (true) {
-                DatagramPacket packet = new DatagramPacket(rcvData, rcvData.length);
+            ByteBuffer packet = take();
+            while (!terminated) {
                 try {
-                    rcvSocket.receive(packet);
-                    if (packet.getLength() > 2 && dataOK()) {
-                        synchronized (receiveLock) {
-                            if (packet.getLength() > 1) { 
-                                dataReceived = Arrays.copyOfRange(rcvData, 1, packet.getLength() - 1);
-                            } else {
-                                continue; 
-                            }
-                            dataWasReceivedFromBelow = true;
-                            receiveLock.notifyAll();
-                        }
-                        sendAck(expectedSeqNum);
-                        expectedSeqNum ^= 1;
-                    } else {
-                        sendAck(expectedSeqNum ^ 1); 
-                    }
+                    packet.clear();
+                    int length = source.receive(packet);
+                    packet = anyPacketReceived(packet, length);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    if (!terminated) // closed under us otherwise
+                        metrics.ioError("receive", e);
                 }
             }
         }// run
 
         /**
-         * Returns true except when:
-         * + the checksum of the received packet is not zero
-         *   or
-         * + the received sequence number does not match the expected one
-         * As always, the format of the messages sent to the console is given
-         * in the handout.
+         * Same as run, but takes up to ioBatch packets per receive from the
+         * transport, into as many pooled buffers, and processes them as a
+         * burst
+         */
+        private void runBursts()
+        {
+            ByteBuffer[] packets = new ByteBuffer[config.ioBatch];
+            int[] lengths = new int[config.ioBatch];
+            for (int i = 0; i < packets.length; i++)
+                packets[i] = take();
+            while (!terminated) {
+                try {
+                    for (ByteBuffer packet : packets)
+                        packet.clear();
+                    int n = source.receive(packets, lengths);
+                    inBurst = true;
+                    for (int i = 0; i < n; i++)
+                        packets[i] = anyPacketReceived(packets[i], lengths[i]);
+                    endBurst();
+                } catch (IOException e) {
+                    if (!terminated)
+                        metrics.ioError("receive", e);
+                }
+            }
+        }// runBursts
+
+        /**
+         * Sends the ACK that the in-order packets of the burst that was just
+         * processed asked for, if any, and leaves burst mode
+         */
+        private void endBurst()
+        {
+            inBurst = false;
+            if (!burstAckDue)
+                return;
+            burstAckDue = false;
+            int seqNum;
+            synchronized (ackLock) {
+                if (unacked == 0)
+                    return; // piggybacked meanwhile
+                seqNum = lastInOrder;
+            }
+            sendAck(seqNum);
+        }// endBurst
+
+        /**
+         * Same as run for an engine loop: processes the packets waiting in
+         * the given non-blocking transport, up to MAX_READS of them so that
+         * the other instances of the loop get their turn, in bursts of up
+         * to ioBatch packets
+         */
+        private void receiveAvailable(ChannelTransport from)
+            throws IOException
+        {
+            if (next == null)
+                next = take();
+            try {
+                for (int i = 0; i < MAX_READS; i++) {
+                    if (i % config.ioBatch == 0) {
+                        endBurst();
+                        inBurst = config.ioBatch > 1;
+                    }
+                    next.clear();
+                    int length = from.receiveNow(next);
+                    if (length < 0)
+                        return;
+                    next = anyPacketReceived(next, length);
+                }
+            } finally {
+                endBurst();
+            }
+        }// receiveAvailable
+
+        /**
+         * Returns a free packet buffer: one that this thread dropped, if
+         * any, or one released by the app. The buffers that this thread
+         * drops (parity packets and rebuilt packets) never go back to the
+         * pool, which the app thread is the only one to fill (see
+         * RingBuffer).
+         */
+        private ByteBuffer take()
+        {
+            ByteBuffer buffer = spare.poll();
+            return buffer != null ? buffer : acquire(receivePool);
+        }// take
+
+        // keeps the given buffer, which this thread no longer needs, for
+        // take to hand out again
+        private void recycle(ByteBuffer buffer)
+        {
+            spare.push(buffer);
+        }// recycle
+
+        // processes the given packet, corrupted or not, and returns the
+        // buffer in which to read the next packet (see packetReceived)
+        private ByteBuffer anyPacketReceived(ByteBuffer packet, int length)
+        {
+            if (!codec.verify(packet, length)) {
+                metrics.checksumFailure();
+                if (length > codec.ackSize())
+                    sendAck(expectedSeqNum - 1);
+                return packet;
+            }
+            return packetReceived(packet, length);
+        }// anyPacketReceived
+
+        /**
+         * Processes the given (non-corrupted) packet and returns the buffer
+         * in which to read the next packet: the given one, unless it was
+         * kept, in which case a free one is taken from the pool
+         */
+        private ByteBuffer packetReceived(ByteBuffer packet, int length)
+        {
+            lastHeard = System.nanoTime();
+            byte type = PacketCodec.type(packet);
+            if (type == PacketCodec.TYPE_ACK ||
+                (PacketCodec.isData(type) && PacketCodec.hasAck(packet))) {
+                int at = codec.ackFields(packet, length);
+                metrics.ackReceived();
+                int acked;
+                synchronized (sendLock) {
+                    sender.ackReceived(PacketCodec.cumAck(packet, at),
+                                       PacketCodec.selectiveAck(packet, at),
+                                       PacketCodec.sackBitmap(packet, at),
+                                       PacketCodec.window(packet, at));
+                    if (trace != null && PacketCodec.traced(packet))
+                        sender.echoReceived(PacketCodec.selectiveAck(packet,
+                                                                     at),
+                                            PacketCodec.echo(packet, at),
+                                            PacketCodec.hold(packet, at));
+                    acked = sender.base;
+                }
+                if (!pendingSends.isEmpty())
+                    completeSends(acked);
+            }
+            if (PacketCodec.isData(type)) {
+                if (dataPacketReceived(packet, length))
+                    return take();
+            } else if (type == PacketCodec.TYPE_PARITY) {
+                if (parityReceived(packet, length))
+                    return take();
+            } else if (type == PacketCodec.TYPE_PROBE) {
+                codec.encodeProbeAck(ack, sessionId, length);
+                send(ack);
+            } else if (type == PacketCodec.TYPE_PROBE_ACK && pathMtu != null) {
+                if (pathMtu.probeAcked(PacketCodec.probeSize(packet),
+                                       System.nanoTime()))
+                    wakeSender();
+            }
+            return packet;
+        }// packetReceived
+
+        /**
+         * Processes the given (non-corrupted) data packet and returns true
+         * if and only if its buffer was kept, i.e., the packet was delivered
+         * or buffered out of order
          */
-        private boolean dataOK() 
+        private boolean dataPacketReceived(ByteBuffer packet, int length)
         {
-            byte receivedSeqNum = rcvData[0];
-            byte receivedCheckSum = rcvData[rcvData.length - 1];
-            byte calculatedCheckSum = checkSum(rcvData, rcvData.length - 1);
+            int seqNum = PacketCodec.seqNum(packet);
+            metrics.packetReceived();
+            // leave only the payload between the position and the limit
+            codec.payload(packet, length);
+            if (trace != null)
+                traceReceived(packet, seqNum);
+            // added to its parity before the app can get hold of it
+            ByteBuffer rebuilt = blocks == null ? null
+                                                : addToBlock(packet, seqNum);
+            boolean kept = dataReceived(packet, seqNum,
+                                        PacketCodec.ackNow(packet));
+            if (rebuilt != null)
+                rebuiltReceived(rebuilt);
+            return kept;
+        }// dataPacketReceived
 
-            if (receivedCheckSum == calculatedCheckSum && receivedSeqNum == expectedSeqNum) {
-                expectedSeqNum ^= 1;  
-                return true;
+        /**
+         * Same as dataPacketReceived for the given data packet, whose
+         * payload was isolated already and which asks to be ACKed right
+         * away if ackNow is true
+         */
+        private boolean dataReceived(ByteBuffer packet, int seqNum,
+                                     boolean ackNow)
+        {
+            int distance = seqNum - expectedSeqNum;
+            boolean kept = false;
+            if (distance >= 0 && distance >= freeSlots()) {
+                // beyond the advertised window: a zero-window probe, or
+                // else a packet the sender had no right to send
+                if (distance > 0)
+                    metrics.windowOverrun();
+                sendAck(expectedSeqNum - 1);
+            } else if (distance == 0) {
+                deliver(packet);
+                kept = true;
+                expectedSeqNum++;
+                int slot = slot(expectedSeqNum);
+                while (outOfOrder[slot] != null) {
+                    deliver(outOfOrder[slot]);
+                    outOfOrder[slot] = null;
+                    expectedSeqNum++;
+                    slot = slot(expectedSeqNum);
+                }
+                // no hurry unless a hole was filled or the peer asked
+                ackLater(seqNum, expectedSeqNum != seqNum + 1 || ackNow);
+            } else if (distance > 0 && distance < config.windowSize &&
+                       config.mode == Mode.SELECTIVE_REPEAT) {
+                int slot = slot(seqNum);
+                if (outOfOrder[slot] == null) {
+                    outOfOrder[slot] = packet;
+                    kept = true;
+                } else {
+                    metrics.duplicate();
+                }
+                sendAck(seqNum);
+            } else if (distance < 0) {
+                // duplicate of a packet that was already delivered
+                metrics.duplicate();
+                sendAck(seqNum);
             } else {
-                // If checksum is correct but sequence number is wrong, it might be a duplicate packet,
-                // so ACK with the last expected sequence number to confirm receipt of the last correct packet
+                // go-back-n: out-of-order packets are dropped
+                sendAck(expectedSeqNum - 1);
+            }
+            return kept;
+        }// dataReceived
+
+        /**
+         * FEC: keeps the given parity packet, of the given length, for its
+         * block, unless a parity of that block covering as many packets is
+         * kept already, and processes the packet it rebuilt, if any.
+         * Returns true if and only if its buffer was kept. Parities of
+         * blocks older than those kept are dropped.
+         */
+        private boolean parityReceived(ByteBuffer packet, int length)
+        {
+            int blockSize = PacketCodec.blockSize(packet);
+            int count = PacketCodec.parityCount(packet);
+            if (blockSize == 0)
+                return false;
+            int block = Math.floorDiv(PacketCodec.seqNum(packet), blockSize);
+            if (blocks == null && blockSize <= Parity.MAX_BLOCK)
+                startBlocks(blockSize, block);
+            if (blockSize != fecBlock || count < 1 || count > blockSize)
+                return false;
+            int at = blockSlot(block);
+            if (at < 0)
                 return false;
+            ByteBuffer kept = parities[at];
+            if (kept != null && PacketCodec.parityCount(kept) >= count)
+                return false;
+            if (kept != null)
+                recycle(kept);
+            codec.parity(packet, length);
+            parities[at] = packet;
+            ByteBuffer rebuilt = rebuild(at);
+            if (rebuilt != null)
+                rebuiltReceived(rebuilt);
+            return true;
+        }// parityReceived
+
+        /**
+         * FEC: sets up the parities of the peer's blocks of the given size,
+         * given that of its first parity packet: enough of them for the
+         * packets of a window to span, plus one on either side
+         */
+        private void startBlocks(int blockSize, int block)
+        {
+            fecBlock = blockSize;
+            int n = config.windowSize / blockSize + 2;
+            blocks = new Parity[n];
+            parities = new ByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                blocks[i] = new Parity();
+                // older blocks, for now
+                blocks[i].reset(block - Math.floorMod(block - i, n) - n);
             }
-        }
+        }// startBlocks
+
+        /**
+         * FEC: returns the index of the parity of the given block, which
+         * replaces that of an older block if need be, or -1 if the given
+         * block is older than the one kept in its place
+         */
+        private int blockSlot(int block)
+        {
+            int at = Math.floorMod(block, blocks.length);
+            if (block - blocks[at].block() > 0) {
+                blocks[at].reset(block);
+                if (parities[at] != null)
+                    recycle(parities[at]);
+                parities[at] = null;
+            }
+            return block == blocks[at].block() ? at : -1;
+        }// blockSlot
+
+        /**
+         * FEC: adds the given data packet, whose payload was just isolated,
+         * to the parity of its block, unless it was added already, and
+         * returns the packet it allowed to rebuild, if any
+         */
+        private ByteBuffer addToBlock(ByteBuffer packet, int seqNum)
+        {
+            int block = Math.floorDiv(seqNum, fecBlock);
+            int i = seqNum - block * fecBlock;
+            int at = blockSlot(block);
+            if (at < 0 || blocks[at].has(i))
+                return null;
+            blocks[at].add(i, PacketCodec.type(packet), packet,
+                           packet.position(), packet.limit());
+            return rebuild(at);
+        }// addToBlock
 
         /**
-         * Sends an acknowledgment packet with the given number
+         * FEC: if the parity packet of the block with the given index is in
+         * and every packet that it covers but one was added to the parity
+         * of the block, which holds no other packet, rebuilds the missing
+         * packet in a free buffer, adds it to the block and returns it,
+         * ready for dataReceived; returns null otherwise
          */
-        private void sendAck(int number)
+        private ByteBuffer rebuild(int at)
+        {
+            ByteBuffer parity = parities[at];
+            if (parity == null)
+                return null;
+            Parity block = blocks[at];
+            int count = PacketCodec.parityCount(parity);
+            long covered = count == Parity.MAX_BLOCK ? -1L : (1L << count) - 1;
+            long missing = covered & ~block.members();
+            if ((block.members() & ~covered) != 0 ||
+                Long.bitCount(missing) != 1)
+                return null;
+            int i = Long.numberOfTrailingZeros(missing);
+            ByteBuffer packet = take();
+            if (!block.rebuild(parity, packet)) {
+                recycle(packet);
+                return null;
+            }
+            PacketCodec.header(packet, sessionId,
+                               block.block() * fecBlock + i);
+            block.add(i, PacketCodec.type(packet), packet, packet.position(),
+                      packet.limit());
+            metrics.packetRebuilt();
+            return packet;
+        }// rebuild
+
+        // processes the given data packet, rebuilt from parity, as if it
+        // had just come in
+        private void rebuiltReceived(ByteBuffer packet)
         {
-            byte[] ackPacket = {(byte) number};
-            DatagramPacket packet = new DatagramPacket(ackPacket, ackPacket.length, peerIpAddress, peerRcvPortNum);
+            int seqNum = PacketCodec.seqNum(packet);
+            if (trace != null)
+                traceReceived(packet, seqNum);
+            if (!dataReceived(packet, seqNum, false))
+                recycle(packet);
+        }// rebuiltReceived
+
+        /**
+         * Records the receipt of the given data packet, whose payload was
+         * just isolated, and keeps its stamp for the next ACK to echo. The
+         * time of receipt replaces the stamp until the packet is delivered
+         * (see PacketCodec.trailingStamp).
+         */
+        private void traceReceived(ByteBuffer packet, int seqNum)
+        {
+            long now = System.nanoTime();
+            long stamp = PacketCodec.traced(packet)
+                         ? PacketCodec.trailingStamp(packet) : 0;
+            trace.received(seqNum, now, stamp);
+            if (stamp != 0) {
+                synchronized (ackLock) {
+                    echo = stamp;
+                    echoReceivedAt = now;
+                }
+            }
+            PacketCodec.trailingStamp(packet, now);
+        }// traceReceived
+
+        // places the given packet in the receive buffer (flow control
+        // guarantees that there is room for it)
+        private void deliver(ByteBuffer packet)
+        {
+            if (trace != null) {
+                // time of delivery from now on, until the app takes it
+                long now = System.nanoTime();
+                trace.delivered(PacketCodec.seqNum(packet), now,
+                                PacketCodec.trailingStamp(packet));
+                PacketCodec.trailingStamp(packet, now);
+            }
             try {
-                rcvSocket.send(packet);
-            } catch (IOException e) {
-                e.printStackTrace();
+                receiveQueue.put(packet);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            metrics.receiveQueueDepth(receiveQueue.size());
+            boolean fin = PacketCodec.type(packet) == PacketCodec.TYPE_FIN;
+            if (fin) {
+                peerFinFirst = PacketCodec.seqNum(packet) == 0;
+                peerFinished = true;
+                Thread waiter = flushWaiter;
+                if (waiter != null)
+                    LockSupport.unpark(waiter);
+            }
+            MessageSubscription pushTo = subscription;
+            if (pushTo != null)
+                pushTo.packetDelivered(fin);
+        }// deliver
+
+        /**
+         * Sends an acknowledgment packet for the given sequence number,
+         * along with the cumulative ack of the receiver and the SACK bitmap
+         * of the packets it buffered past that cumulative ack
+         */
+        private void sendAck(int seqNum)
+        {
+            sendAck(ack, seqNum, sackBitmap());
+        }// sendAck
+
+        // sends an acknowledgment packet with the given SACK bitmap, built
+        // in the given buffer
+        private void sendAck(ByteBuffer packet, int seqNum, int sackBitmap)
+        {
+            long stamp;
+            long receivedAt;
+            boolean first;
+            synchronized (ackLock) {
+                unacked = 0; // this ACK covers them
+                stamp = echo;
+                receivedAt = echoReceivedAt;
+                first = stamp != echoed;
+                echoed = stamp;
             }
+            int window = freeSlots();
+            long hold = stamp == 0 ? 0 : System.nanoTime() - receivedAt;
+            codec.encodeAck(packet, sessionId, expectedSeqNum, seqNum,
+                            sackBitmap, window, stamp, hold);
+            zeroWindowAdvertised = window == 0;
+            advertisedEdge = expectedSeqNum + window;
+            send(packet);
+            metrics.ackSent();
+            if (first)
+                trace.ackSent(seqNum, receivedAt + hold, hold);
         }// sendAck
+
+        /**
+         * Acknowledges the given in-order packet right away if asked to, if
+         * it is the ackFrequency-th one owed an ACK, or if the peer is about
+         * to run out of the receive window that it was told about, later
+         * otherwise, i.e., by the sender thread once the first of them has
+         * waited for maxAckDelayMillis (see sendDelayedAck), or on a data
+         * packet (see piggyback), whichever comes first. Within a burst,
+         * right away means at the end of the burst.
+         */
+        private void ackLater(int seqNum, boolean urgent)
+        {
+            boolean now;
+            boolean first;
+            synchronized (ackLock) {
+                lastInOrder = seqNum;
+                now = ++unacked >= config.ackFrequency || urgent ||
+                      advertisedEdge - expectedSeqNum <= config.ackFrequency;
+                first = unacked == 1;
+                if (first)
+                    ackDeadline = System.nanoTime()
+                                  + config.maxAckDelayMillis * 1_000_000;
+            }
+            if (now && inBurst)
+                burstAckDue = true;
+            else if (now)
+                sendAck(seqNum);
+            else if (first)
+                wakeSender();
+        }// ackLater
+
+        /**
+         * Sends the ACK owed to the peer if it is due (sender thread only),
+         * and returns the # of nanoseconds until it is due, or 0 if no ACK
+         * is owed
+         */
+        private long sendDelayedAck(long now)
+        {
+            int seqNum;
+            synchronized (ackLock) {
+                if (unacked == 0)
+                    return 0;
+                if (now - ackDeadline < 0)
+                    return ackDeadline - now;
+                seqNum = lastInOrder;
+            }
+            sendAck(windowUpdate, seqNum, sackBitmap());
+            return 0;
+        }// sendDelayedAck
+
+        /**
+         * Lets the ACK owed to the peer, if any, ride along the given data
+         * packet, which the sender thread is about to send (the ACK is then
+         * no longer owed), or removes the ACK that an earlier transmission
+         * of the packet carried, which may be stale by now
+         */
+        private void piggyback(ByteBuffer packet)
+        {
+            int seqNum;
+            long stamp;
+            long receivedAt;
+            boolean first;
+            synchronized (ackLock) {
+                if (unacked == 0) {
+                    codec.dropAck(packet);
+                    return;
+                }
+                unacked = 0;
+                seqNum = lastInOrder;
+                stamp = echo;
+                receivedAt = echoReceivedAt;
+                first = stamp != echoed;
+                echoed = stamp;
+            }
+            int window = freeSlots();
+            long hold = stamp == 0 ? 0 : System.nanoTime() - receivedAt;
+            codec.addAck(packet, expectedSeqNum, seqNum, sackBitmap(), window,
+                         stamp, hold);
+            zeroWindowAdvertised = window == 0;
+            advertisedEdge = expectedSeqNum + window;
+            if (first)
+                trace.ackSent(seqNum, receivedAt + hold, hold);
+        }// piggyback
+
+        // sends the given packet (ACK or probe ACK)
+        private void send(ByteBuffer packet)
+        {
+            try {
+                transport.send(packet);
+            } catch (IOException e) {
+                if (!terminated)
+                    metrics.ioError("ACK send", e);
+            }
+        }// send
+
+        /**
+         * Called by the app thread after it grabbed a message: if the peer
+         * was told that the receive buffer is full, has the sender thread
+         * tell it that there is room again (window update). The app thread
+         * does not send it itself, since a pending interrupt would make the
+         * channel transport close its channel.
+         */
+        private void windowOpened()
+        {
+            if (zeroWindowAdvertised) {
+                windowUpdatePending = true;
+                wakeSender();
+            }
+        }// windowOpened
+
+        // sends the window update asked for by windowOpened, if any
+        // (sender thread only)
+        private void sendWindowUpdate()
+        {
+            if (windowUpdatePending) {
+                windowUpdatePending = false;
+                sendAck(windowUpdate, expectedSeqNum - 1, 0);
+            }
+        }// sendWindowUpdate
+
+        // returns the # of packets that still fit in the receive buffer
+        private int freeSlots()
+        {
+            return receiveQueue.capacity() - receiveQueue.size();
+        }// freeSlots
+
+        // returns the SACK bitmap of the packets buffered out of order (the
+        // sender thread may get a slightly stale one, which only reports
+        // packets that were received anyway)
+        private int sackBitmap()
+        {
+            if (config.mode != Mode.SELECTIVE_REPEAT)
+                return 0;
+            int bitmap = 0;
+            int n = Math.min(SACK_BITS, config.windowSize - 1);
+            for (int i = 0; i < n; i++)
+                if (outOfOrder[slot(expectedSeqNum + 1 + i)] != null)
+                    bitmap |= 1 << i;
+            return bitmap;
+        }// sackBitmap
     }// Receiver
 
     /***********************************************************************
@@ -234,102 +1709,752 @@ public class RDT
 
     private class Sender implements Runnable
     {
-        private MyDatagramSocket senderSocket;  // socket of the sender
-        private DatagramPacket rcvPacket;       // received packet
-        private byte[] rcvData = new byte[4];   // data in the received packet
-        private int curSeqNum = 0;              // enough said!
-
-        /**
-         * Implements the sender's FSM for RDT 3.0. More precisely:
-         * 1) create the sender's socket with an OS-generated port number
-         * 2) in an infinite loop: send messages from the app to the receiver,
-         *    that is:
-         *    + wait for data from above, then send the packet to the peer
-         *    + start the socket's timer using the call: setSoTimeout(500)
-         *      and wait for the ACK to come in
-         *      - if the ACK comes in okay and in good time, go back to the top
-         *        of the loop
-         *      - if the ACK is not okay, keep waiting for the next ACK
-         *      - if the timer goes off, resend the message and keep waiting
-         *        for the ACK
-         *    Make sure to keep the state of the sender up to date at all 
-         *    times.
+        private ByteBuffer[] window =           // packets in flight, indexed
+                new ByteBuffer[config.windowSize]; // by window slot
+        private boolean[] acked =               // selective repeat: packets
+                new boolean[config.windowSize]; // individually ACKed
+        private long[] deadline =               // selective repeat: one timer
+                new long[config.windowSize];    // per packet in flight (ns)
+        private long[] sentAt =                 // time of the first
+                new long[config.windowSize];    // transmission (ns)
+        private boolean[] retransmitted =       // Karn's rule: no RTT sample
+                new boolean[config.windowSize]; // from resent packets
+        private boolean[] fastRetransmitted =   // packets already resent by
+                new boolean[config.windowSize]; // the current loss recovery
+        private boolean[] resendNow =           // packets to be resent right
+                new boolean[config.windowSize]; // away (fast retransmit)
+        private boolean resendPending;          // some resendNow flag is set
+        private int dupAcks;                    // # of ACKs in a row that did
+                                                // not move the window
+        private boolean inRecovery;             // fast recovery in progress
+        private int recoverSeqNum;              // recovery ends once every
+                                                // packet below it is ACKed
+        private CongestionController cc =       // congestion window (null:
+                config.congestionControl == null// no congestion control)
+                ? null : config.congestionControl.get();
+        private int peerWindowEdge = 1;         // flow control: first seq #
+                                                // the peer has no room for
+        private long timerDeadline;             // go-back-n: timer of base
+        private int[] outbox =                  // seq #s of the packets
+                new int[3 * config.windowSize]; // picked under the send
+        private int outboxSize;                 // lock, sent outside it
+        private ByteBuffer[] burst =            // packets handed to the
+                new ByteBuffer[config.ioBatch]; // transport at once
+        private int base = 0;                   // oldest unacked seq #
+        private int nextSeqNum = 0;             // seq # of next new packet
+        private int releasedSeqNum = 0;         // packets below it are back
+                                                // in the send pool
+        private ByteBuffer probe;               // path MTU probes (allocated
+                                                // with the first one)
+        private long[] queuedAt =               // tracing: when sendData
+                trace == null ? null            // queued the packets in
+                : new long[config.windowSize];  // flight (ns)
+        private long lastEcho =                 // tracing: latest stamp
+                System.nanoTime();              // echoed by an ACK
+        private Parity parity =                 // FEC: parity of the
+                config.fecBlock == 0 ? null     // current block
+                : new Parity();
+        private boolean tailParityQueued;       // FEC: the current block
+                                                // got a parity of its own
+                                                // (see queueTailParity)
+        private ByteBuffer[] parities =         // FEC: parity packets to
+                new ByteBuffer[config.windowSize + 2]; // send behind the
+        private int parityCount;                // packets of this step
+
+        /**
+         * Implements the sender's FSM for Go-Back-N and Selective Repeat
+         * (RDT 3.0 when the window holds a single packet). More precisely,
+         * in an infinite loop:
+         *    + while holding the send lock, release the buffers of the
+         *      packets ACKed since last time, move packets from the send
+         *      buffer into the window as long as there is room in it, then
+         *      pick the packets flagged for fast retransmit by the ACKs and
+         *      the packets whose timer went off: every packet in flight for
+         *      go-back-n, only the expired one for selective repeat
+         *    + send those packets to the peer without holding the lock, so
+         *      that ACKs keep being processed meanwhile, and start their
+         *      timers once they are actually sent, followed by the parity
+         *      packets of the blocks that the new packets completed (FEC)
+         *    + send the window update asked for by the receiver, if any,
+         *      and the next path MTU probe, if it is time for one
+         *    + if there was nothing to send, park until new data comes in,
+         *      an ACK frees some room in the window or the next timer goes
+         *      off (including the probe timer)
+         * ACKs are read by the receiver thread, which calls ackReceived.
+         * Timers use the adaptive RTO computed by the RTT estimator.
+         * Buffers are released by this thread only, so that a packet being
+         * sent outside the lock cannot be overwritten by the app meanwhile.
+         * With an engine, the loop driving the instance runs the steps
+         * instead of this thread.
          */
         @Override
         public void run()
         {
+            while (!terminated) {
+                long waitNs = step();
+                if (waitNs == 0)
+                    LockSupport.park(this);
+                else if (waitNs > 0)
+                    LockSupport.parkNanos(this, waitNs);
+            }
+        }// run
+
+        /**
+         * Runs one iteration of the loop described above, except for the
+         * parking, and returns -1 if it sent something (i.e., run another
+         * one right away), 0 to wait for new data or an ACK, or the # of
+         * nanoseconds to wait for the next timer to go off
+         */
+        private long step()
+        {
+            long waitNs;
+            synchronized (sendLock) {
+                while (releasedSeqNum != base) {
+                    int slot = slot(releasedSeqNum++);
+                    sendPool.offer(window[slot]);
+                    window[slot] = null;
+                }
+                int firstNew = nextSeqNum;
+                ByteBuffer packet;
+                while (canSendNew() &&
+                       (packet = pollQueued()) != null) {
+                    int slot = slot(nextSeqNum);
+                    window[slot] = packet;
+                    if (nextSeqNum - peerWindowEdge >= 0)
+                        metrics.windowProbe(); // see canSendNew
+                    if (trace != null)
+                        queuedAt[slot] = codec.stampOf(packet);
+                    if (parity != null)
+                        addToParity(packet, nextSeqNum);
+                    acked[slot] = false;
+                    retransmitted[slot] = false;
+                    sentAt[slot] = System.nanoTime();
+                    deadline[slot] = sentAt[slot] + rtt.rtoNanos();
+                    if (base == nextSeqNum)
+                        timerDeadline = deadline[slot];
+                    fastRetransmitted[slot] = false;
+                    resendNow[slot] = false;
+                    outbox[outboxSize++] = nextSeqNum++;
+                    // no more packets until ACKs come in: ask for them
+                    codec.sealData(packet, sessionId, nextSeqNum - 1,
+                                   !canSendNew() || nothingQueued());
+                }
+                if (parity != null && nextSeqNum != firstNew &&
+                    nothingQueued())
+                    queueTailParity();
+                if (resendPending)
+                    fastRetransmit();
+                waitNs = checkTimers();
+            }
+            receiver.sendWindowUpdate();
+            boolean probed = false;
+            if (pathMtu != null) {
+                long now = System.nanoTime();
+                probed = sendProbe(pathMtu.nextProbe(now, rtt.rtoNanos()));
+                waitNs = sooner(waitNs, pathMtu.nanosToNextProbe(now));
+            }
+            if (outboxSize == 0) {
+                waitNs = sooner(waitNs,
+                                receiver.sendDelayedAck(System.nanoTime()));
+                return probed ? -1 : waitNs;
+            }
+            for (int i = 0; i < outboxSize; i += burst.length)
+                transmit(i, Math.min(outboxSize, i + burst.length));
+            outboxSize = 0;
+            sendParities();
+            return -1;
+        }// step
+
+        /**
+         * FEC: adds the given packet, with the given sequence number, which
+         * was just moved into the window, to the parity of its block, and
+         * queues that parity once the block is complete.
+         * Must be called while holding the send lock.
+         */
+        private void addToParity(ByteBuffer packet, int seqNum)
+        {
+            int i = Math.floorMod(seqNum, config.fecBlock);
+            if (i == 0) {
+                parity.reset(Math.floorDiv(seqNum, config.fecBlock));
+                tailParityQueued = false;
+            }
+            parity.add(i, PacketCodec.type(packet), packet,
+                       PacketCodec.HEADER_SIZE, codec.payloadEnd(packet));
+            if (i == config.fecBlock - 1)
+                queueParity(config.fecBlock);
+        }// addToParity
+
+        /**
+         * FEC: queues the parity of the packets of the current block moved
+         * into the window so far, now that the app has nothing more queued
+         * (e.g., at the end of a file), so that a loss among the last
+         * packets of a burst does not have to wait for a timeout either.
+         * This is done once per block, which caps the overhead for an app
+         * that sends one message at a time.
+         * Must be called while holding the send lock.
+         */
+        private void queueTailParity()
+        {
+            int count = Math.floorMod(nextSeqNum, config.fecBlock);
+            if (count == 0 || tailParityQueued)
+                return; // the block is complete, its parity queued
+            tailParityQueued = true;
+            queueParity(count);
+        }// queueTailParity
+
+        // FEC: queues the parity packet of the first count packets of the
+        // current block
+        private void queueParity(int count)
+        {
+            if (parities[parityCount] == null)
+                parities[parityCount] =
+                    transport.allocate(codec.maxPacketSize());
+            codec.encodeParity(parities[parityCount++], sessionId,
+                               parity.block() * config.fecBlock,
+                               config.fecBlock, count, parity.sum());
+        }// queueParity
+
+        // FEC: sends the parity packets queued by this step, behind the
+        // packets of their blocks
+        private void sendParities()
+        {
+            if (parityCount == 0)
+                return;
+            for (int i = 0; i < parityCount; i++) {
+                try {
+                    transport.send(parities[i]);
+                } catch (IOException e) {
+                    if (!terminated)
+                        metrics.ioError("parity send", e);
+                }
+            }
+            metrics.paritySent(parityCount);
+            parityCount = 0;
+        }// sendParities
+
+        // returns the sooner of the two given waits in ns, where 0 stands
+        // for no timer at all
+        private long sooner(long waitNs, long otherNs)
+        {
+            if (waitNs == 0 || otherNs == 0)
+                return waitNs + otherNs;
+            return Math.min(waitNs, otherNs);
+        }// sooner
+
+        // sends a path MTU probe of the given size, if not 0, and returns
+        // true if and only if it did
+        private boolean sendProbe(int size)
+        {
+            if (size == 0)
+                return false;
+            if (probe == null)
+                probe = transport.allocate(codec.maxPacketSize());
+            codec.encodeProbe(probe, sessionId, size);
             try {
-                senderSocket = new MyDatagramSocket(); 
-            } catch (Exception e) {
-                e.printStackTrace();
+                transport.send(probe);
+            } catch (IOException e) {
+                if (!terminated) // e.g., EMSGSIZE: as good as lost
+                    metrics.ioError("probe send", e);
+            }
+            return true;
+        }// sendProbe
+
+        /**
+         * Sends the packets of outbox[from..to) (at most ioBatch of them) in
+         * one burst, except those that got ACKed in the meantime, then
+         * (re)starts their timers and, for first transmissions, records the
+         * time at which they were sent. The send lock is taken once before
+         * and once after the burst.
+         */
+        private void transmit(int from, int to)
+        {
+            int n = 0;
+            synchronized (sendLock) {
+                for (int i = from; i < to; i++) {
+                    int seqNum = outbox[i];
+                    int slot = slot(seqNum);
+                    if (seqNum - base < 0 || acked[slot])
+                        continue;
+                    outbox[from + n] = seqNum;
+                    burst[n++] = window[slot];
+                }
+            }
+            if (n == 0)
                 return;
+            long stamp = trace == null ? 0 : System.nanoTime();
+            if (trace != null)
+                for (int i = 0; i < n; i++)
+                    codec.restamp(burst[i], stamp);
+            try {
+                sendPackets(n);
+            } catch (IOException e) {
+                if (!terminated)
+                    metrics.ioError("send", e);
+                return;
+            } finally {
+                Arrays.fill(burst, 0, n, null);
             }
-        
-            while (true) {
-                synchronized (sendLock) {
-                    while (!dataWaitingToBeSent) {
-                        try {
-                            sendLock.wait();
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            return;
-                        }
-                    }
-                    try {
-                        sendPacket();
-                        senderSocket.setSoTimeout(500); 
-                        DatagramPacket ackPacket = new DatagramPacket(rcvData, rcvData.length);
-                        senderSocket.receive(ackPacket); 
-                        if (ackPacketOK()) {
-                            curSeqNum ^= 1; 
-                            dataWaitingToBeSent = false;
-                            sendLock.notifyAll();
-                        } else {
-                        }
-                    } catch (SocketTimeoutException e) {
-                        try {
-                            sendPacket();
-                        } catch (Exception e1) {
-                            e1.printStackTrace();
-                        } 
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    } catch (Exception e) {
-                        e.printStackTrace();
+            synchronized (sendLock) {
+                long now = System.nanoTime();
+                for (int i = from; i < from + n; i++) {
+                    int seqNum = outbox[i];
+                    int slot = slot(seqNum);
+                    if (trace != null)
+                        trace.sent(seqNum, stamp, queuedAt[slot],
+                                   retransmitted[slot]);
+                    if (seqNum - base < 0)
+                        continue;
+                    if (!retransmitted[slot])
+                        sentAt[slot] = now;
+                    deadline[slot] = now + rtt.rtoNanos();
+                    if (seqNum == base)
+                        timerDeadline = deadline[slot];
+                }
+            }
+        }// transmit
+
+        /**
+         * Returns true if and only if a new packet may be sent, that is, if
+         * there are fewer packets in flight than allowed by the window size
+         * and by the congestion window, and the packet fits in the peer's
+         * receive window. When the peer's receive window is closed, a single
+         * packet may be in flight as a probe.
+         * Must be called while holding the send lock.
+         */
+        private boolean canSendNew()
+        {
+            int inFlight = nextSeqNum - base;
+            if (inFlight >= config.windowSize ||
+                (cc != null && inFlight >= Math.max(1, cc.window())))
+                return false;
+            return nextSeqNum - peerWindowEdge < 0 || inFlight == 0;
+        }// canSendNew
+
+        // returns true if and only if the send buffer is empty and every
+        // packet sent so far has been ACKed
+        private boolean allAcked()
+        {
+            synchronized (sendLock) {
+                return nothingQueued() && base == nextSeqNum;
+            }
+        }// allAcked
+
+        /**
+         * Updates the window according to the given ACK, that is, slides
+         * it past every packet below the cumulative ack and, in selective
+         * repeat mode, past every packet that was individually ACKed or
+         * reported in the SACK bitmap.
+         * The packet that triggered the ACK yields an RTT sample unless it
+         * was retransmitted, and any progress undoes the RTO backoff. Newly
+         * ACKed packets are reported to the congestion controller and the
+         * peer's receive window is updated.
+         * Finally, looks for losses to be repaired by a fast retransmit.
+         * Must be called while holding the send lock.
+         */
+        private void ackReceived(int cumAck, int seqNum, int sackBitmap,
+                                 int rcvWindow)
+        {
+            if (cumAck - nextSeqNum > 0)
+                return; // cannot ACK what was never sent
+            long now = System.nanoTime();
+            long rttSample = -1;
+            int newlyAcked = 0;
+            if (seqNum - base >= 0 && seqNum - nextSeqNum < 0) {
+                int slot = slot(seqNum);
+                if (!acked[slot] && !retransmitted[slot]) {
+                    rttSample = now - sentAt[slot];
+                    rtt.sample(rttSample);
+                    metrics.rtt(rttSample);
+                }
+                if (config.mode == Mode.SELECTIVE_REPEAT && !acked[slot]) {
+                    acked[slot] = true;
+                    newlyAcked++;
+                }
+            }
+            if (config.mode == Mode.SELECTIVE_REPEAT) {
+                for (int i = 0; sackBitmap != 0; i++, sackBitmap >>>= 1) {
+                    int seq = cumAck + 1 + i;
+                    if ((sackBitmap & 1) != 0 &&
+                        seq - base >= 0 && seq - nextSeqNum < 0 &&
+                        !acked[slot(seq)]) {
+                        acked[slot(seq)] = true;
+                        newlyAcked++;
                     }
                 }
             }
-        }// run
+            int oldBase = base;
+            while (base != nextSeqNum &&
+                   (base - cumAck < 0 || acked[slot(base)])) {
+                if (!acked[slot(base)])
+                    newlyAcked++;
+                base++; // the sender thread releases the buffer
+            }
+            if (newlyAcked > 0 && cc != null)
+                cc.onAck(newlyAcked, rttSample, now);
+            int oldEdge = peerWindowEdge;
+            if (cumAck + rcvWindow - peerWindowEdge > 0) {
+                peerWindowEdge = cumAck + rcvWindow;
+                wakeSender();
+                if (oldEdge - base <= 0 && base != nextSeqNum) {
+                    // the window reopened: resend the probe right away
+                    resendNow[slot(base)] = true;
+                    resendPending = true;
+                }
+            }
+            if (base != oldBase) {
+                dupAcks = 0;
+                if (inRecovery && base - recoverSeqNum >= 0)
+                    inRecovery = false;
+                rtt.resetBackoff();
+                timerDeadline = now + rtt.rtoNanos();
+                wakeSender();
+                if (base == nextSeqNum) {
+                    Thread waiter = flushWaiter;
+                    if (waiter != null)
+                        LockSupport.unpark(waiter);
+                }
+            } else if (base != nextSeqNum && cumAck == base &&
+                       rcvWindow > 0 && peerWindowEdge == oldEdge) {
+                dupAcks++; // window updates are not duplicate ACKs
+            }
+            detectLosses();
+        }// ackReceived
 
         /**
-         * Returns true except when:
-         * + the checksum of the received packet is not zero
-         *   or
-         * + the received sequence number does not match the expected one
-         * As always, the format of the messages sent to the console is given
-         * in the handout.
+         * Records the network round trip of the data packet with the given
+         * sequence number, given the stamp of the transmission echoed by
+         * an ACK and the # of nanoseconds that the peer held the packet
+         * before ACKing it. Stamps older than the latest one echoed (e.g.,
+         * echoed again by the ACK of a duplicate) are ignored.
+         * Must be called while holding the send lock.
          */
-        private boolean ackPacketOK()
+        private void echoReceived(int seqNum, long echo, long hold)
         {
-            return rcvData[0] == curSeqNum;
+            if (echo - lastEcho <= 0)
+                return; // also covers 0, i.e., nothing echoed
+            lastEcho = echo;
+            long now = System.nanoTime();
+            trace.acked(seqNum, now, now - echo - hold);
+        }// echoReceived
+
+        /**
+         * Flags for fast retransmit the packets deemed lost, if any:
+         * + go-back-n: once dupAckThreshold duplicate ACKs came in, the
+         *   whole window is resent, since the receiver dropped everything
+         *   behind the missing packet
+         * + selective repeat: every hole in the window with at least
+         *   dupAckThreshold packets SACKed above it is resent (once per
+         *   recovery), which also covers partial ACKs during the recovery;
+         *   with FEC, only the packets of later blocks count, since those
+         *   were sent behind the parity that may rebuild the hole
+         * Must be called while holding the send lock.
+         */
+        private void detectLosses()
+        {
+            int threshold = config.dupAckThreshold;
+            if (threshold < 1 || base == nextSeqNum)
+                return;
+            if (config.mode == Mode.GO_BACK_N) {
+                if (dupAcks < threshold || inRecovery)
+                    return;
+                for (int seq = base; seq != nextSeqNum; seq++)
+                    markForResend(seq);
+            } else {
+                int sackedAbove = 0;
+                int sackedPastBlock = 0; // FEC: above the block of seq
+                for (int seq = nextSeqNum - 1; seq - base >= 0; seq--) {
+                    int slot = slot(seq);
+                    if (parity == null ||
+                        Math.floorMod(seq + 1, config.fecBlock) == 0)
+                        sackedPastBlock = sackedAbove; // last of its block
+                    if (acked[slot])
+                        sackedAbove++;
+                    else if (sackedPastBlock >= threshold)
+                        markForResend(seq);
+                }
+            }
+            if (resendPending && !inRecovery) {
+                inRecovery = true;
+                recoverSeqNum = nextSeqNum;
+                if (cc != null)
+                    cc.onLoss(System.nanoTime());
+            }
+        }// detectLosses
 
-            
-        }// ackPacketOK
+        // flags the given packet for fast retransmit unless that was
+        // already done during the current recovery
+        private void markForResend(int seqNum)
+        {
+            int slot = slot(seqNum);
+            if (fastRetransmitted[slot])
+                return;
+            fastRetransmitted[slot] = true;
+            resendNow[slot] = true;
+            resendPending = true;
+            wakeSender();
+        }// markForResend
 
         /**
-         * Sends to the peer's receiver a packet containing the data in the 
-         * send buffer
-         */     
-        private void sendPacket() throws Exception
+         * Picks the packets flagged for fast retransmit and restarts their
+         * timers (without backing off the RTO)
+         * Must be called while holding the send lock.
+         */
+        private void fastRetransmit()
         {
-            byte[] sendDataWithHeader = new byte[dataToSend.length + 2];
-            sendDataWithHeader[0] = (byte) curSeqNum;
-            System.arraycopy(dataToSend, 0, sendDataWithHeader, 1, dataToSend.length);
-            sendDataWithHeader[sendDataWithHeader.length - 1] = checkSum(sendDataWithHeader, sendDataWithHeader.length - 1);
-            DatagramPacket packet = new DatagramPacket(sendDataWithHeader, sendDataWithHeader.length, peerIpAddress, peerRcvPortNum);
-            senderSocket.send(packet);
-        }// sendPacket
+            long now = System.nanoTime();
+            for (int seq = base; seq != nextSeqNum; seq++) {
+                int slot = slot(seq);
+                if (!resendNow[slot])
+                    continue;
+                resendNow[slot] = false;
+                if (acked[slot])
+                    continue;
+                resend(seq, false);
+                deadline[slot] = now + rtt.rtoNanos();
+                if (seq == base)
+                    timerDeadline = deadline[slot];
+            }
+            resendPending = false;
+        }// fastRetransmit
+
+        /**
+         * Picks the packets whose timer went off and returns the number
+         * of nanoseconds until the next timer goes off (0 if there is no
+         * packet in flight, i.e., wait for new data). Only the timer of the
+         * oldest packet in flight backs off the RTO, like TCP's single
+         * retransmission timer would.
+         */
+        private long checkTimers()
+        {
+            if (base == nextSeqNum)
+                return 0;
+            long now = System.nanoTime();
+            if (config.mode == Mode.GO_BACK_N) {
+                if (now - timerDeadline >= 0) {
+                    timedOut(base);
+                    rtt.backoff();
+                    inRecovery = false;
+                    dupAcks = 0;
+                    if (cc != null)
+                        cc.onTimeout(now);
+                    for (int seq = base; seq != nextSeqNum; seq++)
+                        resend(seq, true);
+                    timerDeadline = now + rtt.rtoNanos();
+                }
+                return Math.max(1, timerDeadline - now);
+            }
+            long next = Long.MAX_VALUE;
+            for (int seq = base; seq != nextSeqNum; seq++) {
+                int slot = slot(seq);
+                if (acked[slot])
+                    continue;
+                if (now - deadline[slot] >= 0) {
+                    timedOut(seq);
+                    if (seq == base) {
+                        rtt.backoff();
+                        inRecovery = false;
+                        if (cc != null)
+                            cc.onTimeout(now);
+                    }
+                    resend(seq, true);
+                    deadline[slot] = now + rtt.rtoNanos();
+                }
+                next = Math.min(next, deadline[slot] - now);
+            }
+            return Math.max(1, next);
+        }// checkTimers
+
+        // records that the timer of the packet with the given sequence
+        // number went off (before the RTO backs off)
+        private void timedOut(int seqNum)
+        {
+            silentTimeouts = lastTimeout - lastHeard > 0 ? silentTimeouts + 1
+                                                         : 1;
+            lastTimeout = System.nanoTime();
+            metrics.timeout();
+            RDTEvents.Timeout event = new RDTEvents.Timeout();
+            if (event.shouldCommit()) {
+                event.session = sessionId;
+                event.seqNum = seqNum;
+                event.rto = rtt.rtoNanos();
+                event.commit();
+            }
+        }// timedOut
+
+        // picks for retransmission the packet with the given (in-flight)
+        // sequence number, after a timeout or for a fast retransmit
+        private void resend(int seqNum, boolean timeout)
+        {
+            retransmitted[slot(seqNum)] = true;
+            outbox[outboxSize++] = seqNum;
+            metrics.retransmission();
+            if (seqNum - peerWindowEdge >= 0)
+                metrics.windowProbe();
+            RDTEvents.Retransmit event = new RDTEvents.Retransmit();
+            if (event.shouldCommit()) {
+                event.session = sessionId;
+                event.seqNum = seqNum;
+                event.timeout = timeout;
+                event.commit();
+            }
+        }// resend
+
+        /**
+         * Sends the first n packets of the burst to the peer's receiver, the
+         * first one along with the ACK that our receiver owes the peer, if
+         * any
+         */
+        private void sendPackets(int n) throws IOException
+        {
+            for (int i = 0; i < n; i++) {
+                receiver.piggyback(burst[i]);
+                burst[i].position(0);
+            }
+            if (n == 1)
+                transport.send(burst[0]);
+            else
+                transport.send(burst, n);
+            metrics.packetsSent(n);
+        }// sendPackets
     }// Sender
-}// RDT
 
+    /***********************************************************************
+     * inner class: MessageSubscription
+     ***********************************************************************/
+
+    /** Subscription of the subscriber of receivePublisher: takes the
+     *  packets out of the receive buffer as the subscriber requests
+     *  messages, and puts the segments of each message back together in a
+     *  buffer of its own. The pushing is done by a drain loop that runs on
+     *  the executor whenever there may be something to push (new demand or
+     *  a new packet), one run at a time, so that the subscriber's methods
+     *  are never called concurrently.
+     */
+    private class MessageSubscription implements Flow.Subscription
+    {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final Executor executor;
+        private final AtomicLong demand =     // # of messages requested
+                new AtomicLong();             // but not pushed yet
+        private final AtomicInteger signals = // # of signals the drain loop
+                new AtomicInteger();          // has yet to look at (0: not
+                                              // running)
+        private final ByteBuffer message =    // message being put together
+                ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        private volatile Throwable error;     // to report to the subscriber
+        private volatile boolean cancelled;   // nothing more to push
+
+        MessageSubscription(Flow.Subscriber<? super ByteBuffer> inSubscriber,
+                            Executor inExecutor)
+        {
+            subscriber = inSubscriber;
+            executor = inExecutor;
+        }// constructor
 
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+                error = new IllegalArgumentException(
+                    "non-positive request: " + n);
+            else
+                demand.accumulateAndGet(n, (a, b) -> a + b < 0
+                                                     ? Long.MAX_VALUE
+                                                     : a + b);
+            signal();
+        }// request
+
+        @Override
+        public void cancel()
+        {
+            cancelled = true;
+        }// cancel
+
+        // called by the receiver after it delivered a packet (the peer's FIN
+        // if fin is true, which needs no demand to be pushed)
+        void packetDelivered(boolean fin)
+        {
+            if (fin || demand.get() > 0)
+                signal();
+        }// packetDelivered
+
+        // gets the drain loop to run, unless it is running already (in
+        // which case it will go around once more)
+        private void signal()
+        {
+            if (signals.getAndIncrement() == 0)
+                executor.execute(this::drain);
+        }// signal
+
+        /**
+         * Pushes messages to the subscriber as long as it wants some and
+         * the receive buffer holds them, then looks again until no signal
+         * came in meanwhile. A message whose segments are not all in yet
+         * stays in the message buffer until the next run. The subscriber
+         * completes at the end of the stream, demand or not.
+         */
+        private void drain()
+        {
+            int missed = 1;
+            do {
+                if (error != null && !cancelled) {
+                    cancelled = true;
+                    subscriber.onError(error);
+                }
+                while (!cancelled) {
+                    ByteBuffer packet = receiveQueue.peek();
+                    if (packet == null) {
+                        if (terminated) // nothing more will come in
+                            complete();
+                        break;
+                    }
+                    if (PacketCodec.type(packet) == PacketCodec.TYPE_FIN) {
+                        releasePacket(receiveQueue.poll());
+                        complete();
+                        break;
+                    }
+                    if (demand.get() == 0)
+                        break;
+                    receiveQueue.poll();
+                    boolean more =
+                        PacketCodec.type(packet) == PacketCodec.TYPE_SEGMENT;
+                    message.put(packet);
+                    releasePacket(packet);
+                    if (more)
+                        continue;
+                    if (demand.get() != Long.MAX_VALUE)
+                        demand.decrementAndGet();
+                    subscriber.onNext(message.flip());
+                    message.clear();
+                }
+                missed = signals.addAndGet(-missed);
+            } while (missed != 0);
+        }// drain
+
+        // signals the end of the stream to the subscriber
+        private void complete()
+        {
+            cancelled = true;
+            subscriber.onComplete();
+        }// complete
+    }// MessageSubscription
+
+    /***********************************************************************
+     * inner class: PendingSend
+     ***********************************************************************/
+
+    /** Future of a message sent with sendAsync, completed once the packet
+     *  with the given sequence number (its last one) is ACKed.
+     */
+    private static class PendingSend
+    {
+        final int lastSeqNum;
+        final CompletableFuture<Void> acked;
+
+        PendingSend(int inLastSeqNum, CompletableFuture<Void> inAcked)
+        {
+            lastSeqNum = inLastSeqNum;
+            acked = inAcked;
+        }// constructor
+    }// PendingSend
+}// RDT
@@ -0,0 +1,204 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTConfig.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+import javax.management.JMException;
+
+/**
+ * Tunable parameters of an RDT instance.
+ *
+ * Both peers must agree on the mode, the window size, the integrity
+ * check and tracing; forward error correction is up to each sender, since
+ * receivers learn the block size from the parity packets. The defaults
+ * give the original stop-and-wait protocol (i.e., a window of one
+ * packet).
+ * A configuration must not be modified once it has been handed to an RDT
+ * instance.
+ */
+public class RDTConfig
+{
+    public RDT.Mode mode = RDT.Mode.GO_BACK_N; // sliding-window flavour
+    public int windowSize = 1;                 // max # of unacked packets
+    public int sendQueueCapacity = 32;         // # of packets the app can
+                                               // queue ahead of the window
+    public int receiveQueueCapacity = 32;      // # of in-order packets held
+                                               // for the app to grab
+    public long initialRtoMillis = 500;        // RTO before any RTT sample
+    public long minRtoMillis = 20;             // bounds of the adaptive
+    public long maxRtoMillis = 60_000;         // retransmission timeout
+    public int dupAckThreshold = 3;            // # of duplicate ACKs (or of
+                                               // SACKed packets above a hole)
+                                               // that trigger a fast
+                                               // retransmit; 0 disables it
+    public int ackFrequency = 1;               // # of in-order packets per
+                                               // ACK (1: ACK every packet;
+                                               // more only makes sense with
+                                               // a window of several packets)
+    public long maxAckDelayMillis = 10;        // how long an ACK may be held
+                                               // back (keep it well below
+                                               // the min RTO)
+    public Supplier<CongestionController>      // creates the congestion
+        congestionControl = AimdController::new; // controller of an instance
+                                               // (null: no congestion control)
+    public IntegrityCheck integrityCheck =     // integrity field closing
+        new Crc32cCheck();                     // every packet
+    public RDT.TransportType transport =       // datagram service underneath
+        RDT.TransportType.SOCKET;              // (CHANNEL: zero-copy, but no
+                                               // error injection)
+    public RDTEngine engine = null;            // event loops driving the
+                                               // instance (null: two threads
+                                               // of its own); requires the
+                                               // channel transport
+    public int mtu = 0;                        // path MTU assumed at first,
+                                               // in bytes (0: no segmentation,
+                                               // one datagram per message)
+    public boolean probeMtu = true;            // probe for a larger path MTU
+                                               // (see PathMtu)
+    public int ioBatch = 1;                    // max # of packets moved per
+                                               // transport call, received
+                                               // ones being ACKed together
+                                               // (1: one packet at a time)
+    public int fecBlock = 0;                   // # of data packets per XOR
+                                               // parity packet, up to 64
+                                               // (0: no FEC, see Parity)
+    public int socketBuffer = 0;               // SO_SNDBUF and SO_RCVBUF in
+                                               // bytes (0: room for a window)
+    public RDTMetrics metrics =                // counters and histograms of
+        new RDTMetrics();                      // the instances with this
+                                               // configuration
+    public long closeTimeoutMillis = 5_000;    // how long close waits for a
+                                               // silent peer (see RDT.close)
+    public boolean trace = false;              // stamp the packets and time
+                                               // every stage of their life
+                                               // (see PacketTrace)
+    public int traceEvents = 65_536;           // # of latest events kept in
+                                               // the timeline of an instance
+    public String traceDump = null;            // path prefix of the files in
+                                               // which instances dump their
+                                               // trace when they stop (null:
+                                               // no dump, see RDT.getTrace)
+
+    /**
+     * Returns a configuration built from the "rdt.*" system properties, so
+     * that the client and server can be tuned from the command line, e.g.,
+     *     java -Drdt.mode=SELECTIVE_REPEAT -Drdt.window=16 -Drdt.cc=bdp Server
+     * Properties that are not set keep their default values. The
+     * rdt.engine property gives the # of threads of a new engine, and
+     * implies the channel transport unless rdt.transport says otherwise.
+     * The rdt.mtu property turns segmentation on, e.g., -Drdt.mtu=1500, and
+     * rdt.pmtud=false turns off the probing. Batched I/O is turned on with
+     * rdt.ioBatch, e.g., -Drdt.transport=CHANNEL -Drdt.ioBatch=32.
+     * The rdt.fec property gives the FEC block size, e.g., -Drdt.fec=8.
+     * The rdt.metrics property publishes the metrics through JMX and JFR
+     * under the given name, e.g., -Drdt.metrics=server.
+     * The rdt.closeTimeout property bounds the graceful close in ms.
+     * The rdt.trace property turns on tracing, e.g., -Drdt.trace=true, and
+     * rdt.traceDump=/tmp/rdt has every instance dump its trace in
+     * /tmp/rdt-(tag)-(session ID).csv when it stops (which implies
+     * rdt.trace).
+     */
+    public static RDTConfig fromSystemProperties()
+    {
+        RDTConfig config = new RDTConfig();
+        String mode = System.getProperty("rdt.mode");
+        if (mode != null)
+            config.mode = RDT.Mode.valueOf(mode.trim().toUpperCase());
+        config.windowSize = Integer.getInteger("rdt.window", config.windowSize);
+        config.sendQueueCapacity =
+            Integer.getInteger("rdt.sendQueue", config.sendQueueCapacity);
+        config.receiveQueueCapacity =
+            Integer.getInteger("rdt.receiveQueue", config.receiveQueueCapacity);
+        config.initialRtoMillis =
+            Long.getLong("rdt.initialRto", config.initialRtoMillis);
+        config.minRtoMillis = Long.getLong("rdt.minRto", config.minRtoMillis);
+        config.maxRtoMillis = Long.getLong("rdt.maxRto", config.maxRtoMillis);
+        config.dupAckThreshold =
+            Integer.getInteger("rdt.dupAcks", config.dupAckThreshold);
+        config.ackFrequency =
+            Integer.getInteger("rdt.ackFrequency", config.ackFrequency);
+        config.maxAckDelayMillis =
+            Long.getLong("rdt.ackDelay", config.maxAckDelayMillis);
+        String cc = System.getProperty("rdt.cc");
+        if (cc != null) {
+            switch (cc.trim().toLowerCase()) {
+                case "aimd": config.congestionControl = AimdController::new;
+                             break;
+                case "bdp":  config.congestionControl = BdpController::new;
+                             break;
+                case "none": config.congestionControl = null;
+                             break;
+                default:
+                    throw new IllegalArgumentException(
+                        "unknown congestion control: " + cc);
+            }
+        }
+        String check = System.getProperty("rdt.check");
+        if (check != null) {
+            switch (check.trim().toLowerCase()) {
+                case "crc32c": config.integrityCheck = new Crc32cCheck();
+                               break;
+                case "xor":    config.integrityCheck = new XorCheck();
+                               break;
+                default:
+                    throw new IllegalArgumentException(
+                        "unknown integrity check: " + check);
+            }
+        }
+        Integer engineThreads = Integer.getInteger("rdt.engine");
+        if (engineThreads != null) {
+            try {
+                config.engine = new RDTEngine(engineThreads);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            config.transport = RDT.TransportType.CHANNEL;
+        }
+        config.mtu = Integer.getInteger("rdt.mtu", config.mtu);
+        config.probeMtu = Boolean.parseBoolean(
+            System.getProperty("rdt.pmtud", Boolean.toString(config.probeMtu)));
+        config.ioBatch = Integer.getInteger("rdt.ioBatch", config.ioBatch);
+        config.fecBlock = Integer.getInteger("rdt.fec", config.fecBlock);
+        config.socketBuffer =
+            Integer.getInteger("rdt.socketBuffer", config.socketBuffer);
+        config.closeTimeoutMillis =
+            Long.getLong("rdt.closeTimeout", config.closeTimeoutMillis);
+        config.traceEvents =
+            Integer.getInteger("rdt.traceEvents", config.traceEvents);
+        config.traceDump = System.getProperty("rdt.traceDump");
+        config.trace = Boolean.getBoolean("rdt.trace")
+                       || config.traceDump != null;
+        String metricsName = System.getProperty("rdt.metrics");
+        if (metricsName != null) {
+            try {
+                config.metrics.register(metricsName);
+            } catch (JMException e) {
+                throw new IllegalStateException(
+                    "cannot register metrics " + metricsName, e);
+            }
+            config.metrics.recordToJfr(metricsName);
+        }
+        String transport = System.getProperty("rdt.transport");
+        if (transport != null)
+            config.transport =
+                RDT.TransportType.valueOf(transport.trim().toUpperCase());
+        return config;
+    }// fromSystemProperties
+
+    // returns the size of the socket buffers of a transport carrying
+    // packets of up to the given # of bytes
+    int socketBufferBytes(int maxPacketSize)
+    {
+        if (socketBuffer > 0)
+            return socketBuffer;
+        // a window, its parity packets (given the FEC of this side) and
+        // its ACKs
+        int parities = fecBlock == 0 ? 0 : windowSize / fecBlock + 1;
+        return (windowSize + parities + 1) * maxPacketSize;
+    }// socketBufferBytes
+}// RDTConfig
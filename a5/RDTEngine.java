@@ -0,0 +1,257 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTEngine.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Event loops driving any # of RDT instances, instead of the two threads
+ * each instance starts on its own (see RDTConfig.engine).
+ *
+ * Each loop thread owns a Selector and a timing wheel. An instance is bound
+ * to one loop for its whole life (round robin), which does all of its
+ * sender-side work and, if it has a channel of its own, all of its
+ * receiver-side work too:
+ *    + when its channel is readable, the loop reads every packet waiting
+ *      in it, exactly as the instance's receiver thread would
+ *    + whenever something may have changed for the sender (packets read,
+ *      messages queued by the app, buffers released by the app, ACKs handed
+ *      over by an RDTServer), the loop runs one step of the sender, which
+ *      sends what it can and tells when its next timer goes off
+ *    + that timer lives in the loop's timing wheel, whose next expiry
+ *      bounds the time the loop waits in select
+ * Other threads get a loop to run an instance by queueing it (at most once
+ * at a time) and waking up the selector.
+ *
+ * Loop threads are daemon threads, so that an engine does not keep the
+ * program alive on its own.
+ */
+public class RDTEngine
+{
+    private static final long TICK_NANOS = 1_000_000; // timer granularity
+    private static final int WHEEL_SIZE = 512;        // # of ticks per
+                                                      // revolution
+
+    private final Loop[] loops;             // one per thread
+    private final AtomicInteger nextLoop =  // round robin over the loops
+            new AtomicInteger();
+
+    // creates an engine running the given # of loop threads
+    public RDTEngine(int threads) throws IOException
+    {
+        if (threads < 1)
+            throw new IllegalArgumentException(
+                "an engine needs at least one thread: " + threads);
+        loops = new Loop[threads];
+        for (int i = 0; i < threads; i++) {
+            loops[i] = new Loop();
+            Thread thread = new Thread(loops[i], "rdt-engine-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }// constructor
+
+    /**
+     * Binds the given instance to one of the loops, which reads the given
+     * transport (null: the instance receives its packets from an RDTServer)
+     * and drives its sender. Returns the task through which the instance
+     * asks its loop to run it.
+     */
+    Task register(RDT rdt, ChannelTransport transport)
+    {
+        Loop loop = loops[Math.floorMod(nextLoop.getAndIncrement(),
+                                        loops.length)];
+        Task task = new Task(loop, rdt, transport);
+        task.schedule();
+        return task;
+    }// register
+
+    /***********************************************************************
+     * inner class: Task
+     ***********************************************************************/
+
+    /**
+     * An instance as seen by its loop; it is also the timer of its sender.
+     */
+    static class Task extends TimingWheel.Timer
+    {
+        private final Loop loop;                 // the loop running it
+        private final RDT rdt;
+        private final ChannelTransport transport; // read by the loop, if any
+        private SelectionKey key;                // registration of the
+                                                 // transport
+        private final AtomicBoolean queued =     // waiting in the loop's
+                new AtomicBoolean();             // ready queue
+        private final CountDownLatch unbound =   // the loop let go of the
+                new CountDownLatch(1);           // terminated instance
+
+        private Task(Loop inLoop, RDT inRdt, ChannelTransport inTransport)
+        {
+            loop = inLoop;
+            rdt = inRdt;
+            transport = inTransport;
+        }// constructor
+
+        /**
+         * Gets the loop to run the instance as soon as possible. May be
+         * called by any thread, as often as needed: the instance is queued
+         * once until the loop gets to it. Calls from the loop itself are
+         * ignored, since the loop runs the instance after any event
+         * concerning it anyway.
+         */
+        void schedule()
+        {
+            if (Thread.currentThread() == loop.thread)
+                return;
+            if (queued.compareAndSet(false, true)) {
+                loop.ready.offer(this);
+                loop.selector.wakeup();
+            }
+        }// schedule
+
+        /**
+         * Gets the loop to let go of the instance, which was terminated,
+         * and waits until it did: until then, the transport of the instance
+         * is registered with the loop's selector, which keeps its port
+         * bound even once it is closed. Does not wait if called from the
+         * loop itself.
+         */
+        void unbind()
+        {
+            if (Thread.currentThread() == loop.thread)
+                return;
+            schedule();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    unbound.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }// unbind
+
+        @Override
+        protected void expired()
+        {
+            loop.run(this);
+        }// expired
+    }// Task
+
+    /***********************************************************************
+     * inner class: Loop
+     ***********************************************************************/
+
+    private static class Loop implements Runnable
+    {
+        private final Selector selector;
+        private final TimingWheel wheel =         // timers of the senders
+                new TimingWheel(TICK_NANOS, WHEEL_SIZE);
+        private final ConcurrentLinkedQueue<Task> ready = // instances to be
+                new ConcurrentLinkedQueue<>();    // run (see schedule)
+        private final Consumer<SelectionKey> onReadable = // select action
+                this::readable;
+        private final ArrayDeque<Task> unbinding = // terminated instances
+                new ArrayDeque<>();       // whose key is yet to be
+                                          // deregistered by a select
+        private volatile Thread thread;           // runs the loop
+
+        Loop() throws IOException
+        {
+            selector = Selector.open();
+        }// constructor
+
+        /**
+         * In an infinite loop: wait until a channel is readable, an instance
+         * is queued or the next timer goes off, then run the instances
+         * concerned: read the readable channels, run the queued instances
+         * and expire the timers that are due. Terminated instances are let
+         * go of once the select that follows the cancellation of their key
+         * is over.
+         */
+        @Override
+        public void run()
+        {
+            thread = Thread.currentThread();
+            while (true) {
+                try {
+                    long waitNs = wheel.nanosToNextExpiry(System.nanoTime());
+                    int unbound = unbinding.size();
+                    if (!ready.isEmpty() || unbound > 0)
+                        selector.selectNow(onReadable);
+                    else if (waitNs < 0)
+                        selector.select(onReadable);
+                    else
+                        selector.select(onReadable, Math.max(1,
+                            TimeUnit.NANOSECONDS.toMillis(waitNs)));
+                    for (int i = 0; i < unbound; i++)
+                        unbinding.poll().unbound.countDown();
+                    Task task;
+                    while ((task = ready.poll()) != null) {
+                        task.queued.set(false);
+                        if (task.key == null && task.transport != null &&
+                            !task.rdt.isTerminated())
+                            task.key = task.transport.register(selector,
+                                                               task);
+                        run(task);
+                    }
+                    wheel.advance(System.nanoTime());
+                } catch (IOException e) {
+                    RDTMetrics.error("engine loop", e);
+                } catch (RuntimeException e) {
+                    // a bug in one instance must not stop the others
+                    RDTMetrics.error("engine loop", e);
+                }
+            }
+        }// run
+
+        // reads the packets waiting in the channel of the given key
+        private void readable(SelectionKey key)
+        {
+            Task task = (Task) key.attachment();
+            task.rdt.receivePackets(task.transport);
+            run(task);
+        }// readable
+
+        /**
+         * Runs the sender of the given instance until it has nothing left
+         * to send, then sets its timer, or unbinds the instance if it was
+         * terminated
+         */
+        private void run(Task task)
+        {
+            if (task.rdt.isTerminated()) {
+                wheel.cancel(task);
+                if (task.key == null) {
+                    task.unbound.countDown();
+                } else {
+                    task.key.cancel();
+                    unbinding.add(task);
+                }
+                return;
+            }
+            long waitNs;
+            while ((waitNs = task.rdt.runSender()) < 0)
+                ;
+            if (waitNs == 0)
+                wheel.cancel(task);
+            else
+                wheel.schedule(task, System.nanoTime() + waitNs);
+        }// run
+    }// Loop
+}// RDTEngine
@@ -0,0 +1,142 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTEvents.java
+ *
+ **************************************************/
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of the RDT instances, e.g., for
+ *     java -XX:StartFlightRecording=filename=rdt.jfr ... Server
+ *     jfr print --categories RDT rdt.jfr
+ * Events are only built and written while a recording that enables them is
+ * running; otherwise, emitting one boils down to a field check. None of them
+ * records a stack trace.
+ */
+public class RDTEvents
+{
+    /***********************************************************************
+     * inner class: Retransmit
+     ***********************************************************************/
+
+    /** A data packet picked for retransmission. */
+    @Name("a5.rdt.Retransmit")
+    @Label("RDT Retransmit")
+    @Category("RDT")
+    @StackTrace(false)
+    public static class Retransmit extends Event
+    {
+        @Label("Session")
+        public int session;
+
+        @Label("Sequence Number")
+        public int seqNum;
+
+        @Label("After Timeout")       // false: fast retransmit
+        public boolean timeout;
+    }// Retransmit
+
+    /***********************************************************************
+     * inner class: Timeout
+     ***********************************************************************/
+
+    /** A retransmission timer that went off. */
+    @Name("a5.rdt.Timeout")
+    @Label("RDT Timeout")
+    @Category("RDT")
+    @StackTrace(false)
+    public static class Timeout extends Event
+    {
+        @Label("Session")
+        public int session;
+
+        @Label("Sequence Number")
+        public int seqNum;
+
+        @Label("RTO")
+        @Timespan(Timespan.NANOSECONDS)
+        public long rto;
+    }// Timeout
+
+    /***********************************************************************
+     * inner class: SendBlocked
+     ***********************************************************************/
+
+    /** An app thread waiting in sendData for room in the send buffer (the
+     *  duration of the event is that of the wait).
+     */
+    @Name("a5.rdt.SendBlocked")
+    @Label("RDT Send Blocked")
+    @Category("RDT")
+    @StackTrace(false)
+    public static class SendBlocked extends Event
+    {
+        @Label("Session")
+        public int session;
+    }// SendBlocked
+
+    /***********************************************************************
+     * inner class: Stats
+     ***********************************************************************/
+
+    /** Periodic snapshot of the counters of an RDTMetrics (see
+     *  RDTMetrics.recordToJfr).
+     */
+    @Name("a5.rdt.Stats")
+    @Label("RDT Statistics")
+    @Category("RDT")
+    @StackTrace(false)
+    @Period("1 s")
+    public static class Stats extends Event
+    {
+        @Label("Name")
+        public String name;
+
+        @Label("Packets Sent")
+        public long packetsSent;
+
+        @Label("Packets Received")
+        public long packetsReceived;
+
+        @Label("Retransmissions")
+        public long retransmissions;
+
+        @Label("Timeouts")
+        public long timeouts;
+
+        @Label("Checksum Failures")
+        public long checksumFailures;
+
+        @Label("Duplicates")
+        public long duplicates;
+
+        @Label("Window Probes")
+        public long windowProbes;
+
+        @Label("Window Overruns")
+        public long windowOverruns;
+
+        @Label("Injected Drops")
+        public long injectedDrops;
+
+        @Label("Injected Corruptions")
+        public long injectedCorruptions;
+
+        @Label("I/O Errors")
+        public long ioErrors;
+
+        @Label("RTT p50 (us)")
+        public long rttP50Micros;
+
+        @Label("RTT p99 (us)")
+        public long rttP99Micros;
+    }// Stats
+}// RDTEvents
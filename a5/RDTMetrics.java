@@ -0,0 +1,410 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTMetrics.java
+ *
+ **************************************************/
+
+import java.lang.System.Logger.Level;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Counters and histograms of the RDT instances sharing a configuration
+ * (see RDTConfig.metrics), e.g., every session of an RDTServer.
+ *
+ * Recording is meant for the hot paths of the sender, receiver and app
+ * threads of any # of instances at once: counters are LongAdders and
+ * histograms are made of them (see Histogram), so that no recording thread
+ * ever waits for another. Reading is for monitoring: through the getters,
+ * through JMX once registered (see register), or as a periodic JFR event
+ * during flight recordings (see recordToJfr). The instances also emit JFR
+ * events of their own for retransmissions, timeouts and blocked sends (see
+ * RDTEvents), which cost next to nothing when no recording is running.
+ *
+ * The errors met along the way are counted here too, and their stack
+ * traces go to the "a5.rdt" System.Logger (see ioError and error) rather
+ * than to the console. So do the drops, corruptions and duplicates that
+ * MyDatagramSocket injects on purpose, which it only prints if asked to.
+ */
+public class RDTMetrics implements RDTMetricsMBean
+{
+    private static final System.Logger LOG = System.getLogger("a5.rdt");
+
+    private final LongAdder packetsSent = new LongAdder();
+    private final LongAdder packetsReceived = new LongAdder();
+    private final LongAdder acksSent = new LongAdder();
+    private final LongAdder acksReceived = new LongAdder();
+    private final LongAdder retransmissions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder checksumFailures = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder paritySent = new LongAdder();
+    private final LongAdder rebuilt = new LongAdder();
+    private final LongAdder windowProbes = new LongAdder();
+    private final LongAdder windowOverruns = new LongAdder();
+    private final LongAdder injectedDrops = new LongAdder();
+    private final LongAdder injectedCorruptions = new LongAdder();
+    private final LongAdder injectedDuplicates = new LongAdder();
+    private final LongAdder ioErrors = new LongAdder();
+    private final Histogram rttMicros = new Histogram();
+    private final Histogram sendQueueDepth = new Histogram();
+    private final Histogram receiveQueueDepth = new Histogram();
+    private final Histogram sendBlockedMicros = new Histogram();
+
+    /**
+     * Registers these metrics with the platform MBean server under the
+     * name a5:type=RDT,name=(the given name), e.g., for jconsole
+     */
+    public void register(String name) throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(
+            this, new ObjectName("a5:type=RDT,name=" + ObjectName.quote(name)));
+    }// register
+
+    // has every flight recording emit these metrics, under the given
+    // name, as a periodic RDTEvents.Stats event
+    public void recordToJfr(String name)
+    {
+        FlightRecorder.addPeriodicEvent(RDTEvents.Stats.class, () -> {
+            RDTEvents.Stats event = new RDTEvents.Stats();
+            event.name = name;
+            event.packetsSent = getPacketsSent();
+            event.packetsReceived = getPacketsReceived();
+            event.retransmissions = getRetransmissions();
+            event.timeouts = getTimeouts();
+            event.checksumFailures = getChecksumFailures();
+            event.duplicates = getDuplicates();
+            event.windowProbes = getWindowProbes();
+            event.windowOverruns = getWindowOverruns();
+            event.injectedDrops = getInjectedDrops();
+            event.injectedCorruptions = getInjectedCorruptions();
+            event.ioErrors = getIoErrors();
+            event.rttP50Micros = getRttP50Micros();
+            event.rttP99Micros = getRttP99Micros();
+            event.commit();
+        });
+    }// recordToJfr
+
+    // recording, by RDT and RDTServer
+
+    void packetsSent(int n)
+    {
+        packetsSent.add(n);
+    }// packetsSent
+
+    void packetReceived()
+    {
+        packetsReceived.increment();
+    }// packetReceived
+
+    void ackSent()
+    {
+        acksSent.increment();
+    }// ackSent
+
+    void ackReceived()
+    {
+        acksReceived.increment();
+    }// ackReceived
+
+    void retransmission()
+    {
+        retransmissions.increment();
+    }// retransmission
+
+    void timeout()
+    {
+        timeouts.increment();
+    }// timeout
+
+    void checksumFailure()
+    {
+        checksumFailures.increment();
+    }// checksumFailure
+
+    void duplicate()
+    {
+        duplicates.increment();
+    }// duplicate
+
+    void paritySent(int n)
+    {
+        paritySent.add(n);
+    }// paritySent
+
+    void packetRebuilt()
+    {
+        rebuilt.increment();
+    }// packetRebuilt
+
+    void windowProbe()
+    {
+        windowProbes.increment();
+    }// windowProbe
+
+    void windowOverrun()
+    {
+        windowOverruns.increment();
+    }// windowOverrun
+
+    /**
+     * Counts the given I/O error, met while sending or receiving in the
+     * given context (the packet is as good as lost), and logs it with its
+     * stack trace at DEBUG level, i.e., only if logging is configured for
+     * it (e.g., a5.rdt.level = FINE with java.util.logging)
+     */
+    void ioError(String context, Exception e)
+    {
+        ioErrors.increment();
+        LOG.log(Level.DEBUG, context, e);
+    }// ioError
+
+    void rtt(long ns)
+    {
+        rttMicros.record(ns / 1000);
+    }// rtt
+
+    void sendQueueDepth(int depth)
+    {
+        sendQueueDepth.record(depth);
+    }// sendQueueDepth
+
+    void receiveQueueDepth(int depth)
+    {
+        receiveQueueDepth.record(depth);
+    }// receiveQueueDepth
+
+    void sendBlocked(long ns)
+    {
+        sendBlockedMicros.record(ns / 1000);
+    }// sendBlocked
+
+    // recording, by MyDatagramSocket
+
+    void injectedDrop()
+    {
+        injectedDrops.increment();
+    }// injectedDrop
+
+    void injectedCorruption()
+    {
+        injectedCorruptions.increment();
+    }// injectedCorruption
+
+    void injectedDuplicate()
+    {
+        injectedDuplicates.increment();
+    }// injectedDuplicate
+
+    // logging, by RDT, RDTEngine and RDTServer
+
+    // logs the given error, met in the given context outside the path of
+    // the packets (e.g., while closing), with its stack trace
+    static void error(String context, Throwable e)
+    {
+        LOG.log(Level.WARNING, context, e);
+    }// error
+
+    // reading (see RDTMetricsMBean)
+
+    @Override
+    public long getPacketsSent()
+    {
+        return packetsSent.sum();
+    }// getPacketsSent
+
+    @Override
+    public long getPacketsReceived()
+    {
+        return packetsReceived.sum();
+    }// getPacketsReceived
+
+    @Override
+    public long getAcksSent()
+    {
+        return acksSent.sum();
+    }// getAcksSent
+
+    @Override
+    public long getAcksReceived()
+    {
+        return acksReceived.sum();
+    }// getAcksReceived
+
+    @Override
+    public long getRetransmissions()
+    {
+        return retransmissions.sum();
+    }// getRetransmissions
+
+    @Override
+    public long getTimeouts()
+    {
+        return timeouts.sum();
+    }// getTimeouts
+
+    @Override
+    public long getChecksumFailures()
+    {
+        return checksumFailures.sum();
+    }// getChecksumFailures
+
+    @Override
+    public long getDuplicates()
+    {
+        return duplicates.sum();
+    }// getDuplicates
+
+    @Override
+    public long getParityPacketsSent()
+    {
+        return paritySent.sum();
+    }// getParityPacketsSent
+
+    @Override
+    public long getPacketsRebuilt()
+    {
+        return rebuilt.sum();
+    }// getPacketsRebuilt
+
+    @Override
+    public long getWindowProbes()
+    {
+        return windowProbes.sum();
+    }// getWindowProbes
+
+    @Override
+    public long getWindowOverruns()
+    {
+        return windowOverruns.sum();
+    }// getWindowOverruns
+
+    @Override
+    public long getInjectedDrops()
+    {
+        return injectedDrops.sum();
+    }// getInjectedDrops
+
+    @Override
+    public long getInjectedCorruptions()
+    {
+        return injectedCorruptions.sum();
+    }// getInjectedCorruptions
+
+    @Override
+    public long getInjectedDuplicates()
+    {
+        return injectedDuplicates.sum();
+    }// getInjectedDuplicates
+
+    @Override
+    public long getIoErrors()
+    {
+        return ioErrors.sum();
+    }// getIoErrors
+
+    @Override
+    public double getRttMeanMicros()
+    {
+        return rttMicros.mean();
+    }// getRttMeanMicros
+
+    @Override
+    public long getRttP50Micros()
+    {
+        return rttMicros.percentile(0.5);
+    }// getRttP50Micros
+
+    @Override
+    public long getRttP99Micros()
+    {
+        return rttMicros.percentile(0.99);
+    }// getRttP99Micros
+
+    @Override
+    public long getRttMaxMicros()
+    {
+        return rttMicros.max();
+    }// getRttMaxMicros
+
+    @Override
+    public double getSendQueueDepthMean()
+    {
+        return sendQueueDepth.mean();
+    }// getSendQueueDepthMean
+
+    @Override
+    public long getSendQueueDepthMax()
+    {
+        return sendQueueDepth.max();
+    }// getSendQueueDepthMax
+
+    @Override
+    public double getReceiveQueueDepthMean()
+    {
+        return receiveQueueDepth.mean();
+    }// getReceiveQueueDepthMean
+
+    @Override
+    public long getReceiveQueueDepthMax()
+    {
+        return receiveQueueDepth.max();
+    }// getReceiveQueueDepthMax
+
+    @Override
+    public long getSendBlockedCount()
+    {
+        return sendBlockedMicros.count();
+    }// getSendBlockedCount
+
+    @Override
+    public long getSendBlockedP99Micros()
+    {
+        return sendBlockedMicros.percentile(0.99);
+    }// getSendBlockedP99Micros
+
+    @Override
+    public long getSendBlockedTotalMillis()
+    {
+        return sendBlockedMicros.sum() / 1000;
+    }// getSendBlockedTotalMillis
+
+    @Override
+    public void reset()
+    {
+        for (LongAdder counter : new LongAdder[] {
+                 packetsSent, packetsReceived, acksSent, acksReceived,
+                 retransmissions, timeouts, checksumFailures, duplicates,
+                 paritySent, rebuilt, windowProbes, windowOverruns,
+                 injectedDrops, injectedCorruptions, injectedDuplicates,
+                 ioErrors })
+            counter.reset();
+        for (Histogram histogram : new Histogram[] {
+                 rttMicros, sendQueueDepth, receiveQueueDepth,
+                 sendBlockedMicros })
+            histogram.reset();
+    }// reset
+
+    @Override
+    public String toString()
+    {
+        return String.format(
+            "sent=%d received=%d acks=%d/%d retransmissions=%d timeouts=%d"
+            + " corrupted=%d duplicates=%d parity=%d rebuilt=%d"
+            + " probes=%d overruns=%d"
+            + " injected=%d/%d/%d ioErrors=%d"
+            + " rtt p50=%dus p99=%dus sendBlocked=%dms",
+            getPacketsSent(), getPacketsReceived(), getAcksSent(),
+            getAcksReceived(), getRetransmissions(), getTimeouts(),
+            getChecksumFailures(), getDuplicates(), getParityPacketsSent(),
+            getPacketsRebuilt(), getWindowProbes(), getWindowOverruns(),
+            getInjectedDrops(),
+            getInjectedCorruptions(), getInjectedDuplicates(), getIoErrors(),
+            getRttP50Micros(), getRttP99Micros(),
+            getSendBlockedTotalMillis());
+    }// toString
+}// RDTMetrics
@@ -0,0 +1,49 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTMetricsMBean.java
+ *
+ **************************************************/
+
+/**
+ * Management interface of RDTMetrics, as seen from JMX clients (e.g.,
+ * jconsole). Durations are in microseconds and queue depths in packets.
+ */
+public interface RDTMetricsMBean
+{
+    long getPacketsSent();          // data packets, retransmissions included
+    long getPacketsReceived();      // data packets that passed the check
+    long getAcksSent();
+    long getAcksReceived();         // standalone or piggybacked
+    long getRetransmissions();      // after a timeout or a fast retransmit
+    long getTimeouts();             // expired retransmission timers
+    long getChecksumFailures();     // corrupted packets dropped
+    long getDuplicates();           // data packets received twice
+    long getParityPacketsSent();    // FEC (see RDTConfig.fecBlock)
+    long getPacketsRebuilt();       // data packets rebuilt from parity
+    long getWindowProbes();         // data packets sent into the peer's
+                                    // closed receive window
+    long getWindowOverruns();       // data packets received beyond our
+                                    // receive window, probes excepted
+    long getInjectedDrops();        // by MyDatagramSocket, on purpose
+    long getInjectedCorruptions();  // by MyDatagramSocket, on purpose
+    long getInjectedDuplicates();   // by MyDatagramSocket, on purpose
+    long getIoErrors();             // failed sends and receives
+
+    double getRttMeanMicros();
+    long getRttP50Micros();
+    long getRttP99Micros();
+    long getRttMaxMicros();
+
+    double getSendQueueDepthMean(); // sampled as the app queues a packet
+    long getSendQueueDepthMax();
+    double getReceiveQueueDepthMean(); // sampled as a packet is delivered
+    long getReceiveQueueDepthMax();
+
+    long getSendBlockedCount();     // sendData calls that had to wait
+    long getSendBlockedP99Micros();
+    long getSendBlockedTotalMillis();
+
+    // sets every counter and histogram back to 0
+    void reset();
+}// RDTMetricsMBean
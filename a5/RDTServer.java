@@ -0,0 +1,263 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTServer.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server side of RDT for many clients at once, on a single port.
+ *
+ * Every client opens its own session, identified by the session ID that its
+ * RDT instance puts in every packet. The server reads the packets that come
+ * in on its port, verifies them and hands each one over to the RDT instance
+ * of its session, which is created (along with a call to the session
+ * handler) when the first data packet of an unknown session comes in. Each
+ * session has its own sliding windows, timers and RTT estimates; its packets
+ * go out through the server's port.
+ *
+ * Packets are read by one receiver thread per transport. With the channel
+ * transport, the port is shared by as many transports as requested
+ * (SO_REUSEPORT), and the OS spreads the clients over them, so that the
+ * receiving work scales with the # of cores. A session only accepts packets
+ * from the address that opened it, read by the receiver thread that opened
+ * it. Handlers run on a thread pool, one session per thread at a time.
+ * The sender of each session runs on a thread of its own, unless the
+ * configuration has an engine (see RDTEngine) to drive them all.
+ *
+ * Once its handler returns, a session that was not closed (see RDT.close)
+ * lingers for a while, so that late retransmissions from its client get
+ * ACKed instead of opening a new session, then it is terminated; a closed
+ * session is removed right away, since both FINs were exchanged. Sessions
+ * that the server has not heard from for idleMillis are terminated, e.g.,
+ * those of clients that went away without closing.
+ */
+public class RDTServer implements AutoCloseable
+{
+    /** The application-level protocol of a session, run by a pool thread
+     *  with the RDT instance of the session (see RDT for how to use it).
+     */
+    public interface SessionHandler
+    {
+        void handle(RDT session) throws Exception;
+    }// SessionHandler
+
+    private final RDTConfig config;         // configuration of the sessions
+    private final SessionHandler handler;   // run for every new session
+    private final ExecutorService workers;  // run the handlers
+    private final ScheduledExecutorService reaper; // terminates the sessions
+    private final long lingerMillis;        // life of a session after its
+                                            // handler returned
+    private final long idleMillis;          // silence after which a session
+                                            // is terminated (0: never)
+    private final Transport[] transports;   // all bound to the server port
+    private final Thread[] receivers;       // one per transport
+    private volatile boolean closed;        // the server was closed
+    private final ConcurrentHashMap<Integer, Session> sessions =
+            new ConcurrentHashMap<>();      // live sessions by ID
+
+    /**
+     * Creates a server on the given port, with the given # of receiver
+     * threads (more than one requires the channel transport), whose
+     * sessions use the given configuration and are run by the given handler
+     * on a pool of the given # of threads, and are terminated after the
+     * given # of ms without a packet from their client (0: never)
+     */
+    public RDTServer(int rcvPortNum,
+                     RDTConfig inConfig,
+                     SessionHandler inHandler,
+                     int receivers,
+                     int workerThreads,
+                     long inLingerMillis,
+                     long inIdleMillis) throws IOException
+    {
+        if (receivers > 1 && (inConfig.transport != RDT.TransportType.CHANNEL
+                              || !ChannelTransport.reusePortSupported()))
+            throw new IllegalArgumentException(
+                "several receivers require the channel transport and"
+                + " SO_REUSEPORT");
+        config = inConfig;
+        handler = inHandler;
+        lingerMillis = inLingerMillis;
+        idleMillis = inIdleMillis;
+        transports = new Transport[receivers];
+        this.receivers = new Thread[receivers];
+        int bufferBytes = config.socketBufferBytes(
+            new PacketCodec(config.integrityCheck, config.trace)
+                .maxPacketSize());
+        for (int i = 0; i < receivers; i++) {
+            if (config.transport == RDT.TransportType.CHANNEL)
+                transports[i] = new ChannelTransport(rcvPortNum,
+                                                     receivers > 1);
+            else
+                transports[i] = new SocketTransport(rcvPortNum,
+                                                    config.metrics);
+            transports[i].reserveBuffers(bufferBytes);
+        }
+        workers = Executors.newFixedThreadPool(workerThreads);
+        reaper = Executors.newSingleThreadScheduledExecutor();
+    }// constructor
+
+    // starts the receiver threads and the reaping of idle sessions
+    public void start()
+    {
+        for (int i = 0; i < transports.length; i++) {
+            Transport transport = transports[i];
+            receivers[i] = new Thread(() -> receive(transport));
+            receivers[i].start();
+        }
+        if (idleMillis > 0) {
+            long period = Math.max(1, idleMillis / 2);
+            reaper.scheduleWithFixedDelay(this::reapIdle, period, period,
+                                          TimeUnit.MILLISECONDS);
+        }
+    }// start
+
+    /**
+     * Stops the server: stops the receiver threads, closes the transports,
+     * terminates every session without any FIN (the handlers still running
+     * see their session closed under them, see RDT.terminate) and shuts the
+     * thread pools down
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        for (Transport transport : transports) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                RDTMetrics.error("closing the server", e);
+            }
+        }
+        for (Thread receiver : receivers) {
+            if (receiver == null)
+                continue;
+            try {
+                receiver.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        sessions.forEach(this::close);
+        reaper.shutdownNow();
+        workers.shutdown();
+    }// close
+
+    // returns the # of live sessions (including lingering ones)
+    public int sessionCount()
+    {
+        return sessions.size();
+    }// sessionCount
+
+    /**
+     * Implements a receiver thread: in an infinite loop, reads a packet from
+     * the given transport and, unless it is corrupted, hands it over to its
+     * session, opening that session first if the packet is the first data
+     * packet of a new one. Corrupted packets cannot be routed, so they are
+     * dropped (the peer's timers take care of them). Stops once the server
+     * is closed.
+     */
+    private void receive(Transport transport)
+    {
+        PacketCodec codec = new PacketCodec(config.integrityCheck,
+                                            config.trace);
+        ByteBuffer packet = transport.allocate(codec.maxPacketSize());
+        while (!closed) {
+            try {
+                packet.clear();
+                SocketAddress from = transport.receiveFrom(packet);
+                int length = packet.position();
+                if (!codec.verify(packet, length)) {
+                    config.metrics.checksumFailure();
+                    continue;
+                }
+                int id = PacketCodec.sessionId(packet);
+                Session session = sessions.get(id);
+                if (session == null) {
+                    byte type = PacketCodec.type(packet);
+                    if (!PacketCodec.isData(type) ||
+                        type == PacketCodec.TYPE_FIN)
+                        continue; // e.g., a late ACK for a closed session
+                    session = open(id, from, transport);
+                } else if (session.transport != transport ||
+                           !session.client.equals(from)) {
+                    continue;
+                }
+                packet = session.rdt.packetReceived(packet, length);
+            } catch (IOException e) {
+                if (!closed) // closed under us otherwise
+                    config.metrics.ioError("server receive", e);
+            }
+        }
+    }// receive
+
+    // creates the session with the given ID for the given client and hands
+    // it over to the handler
+    private Session open(int id, SocketAddress client, Transport transport)
+    {
+        RDT rdt = new RDT(new SessionTransport(transport, client), id,
+                          "S", config);
+        Session session = new Session(rdt, client, transport);
+        sessions.put(id, session);
+        workers.execute(() -> {
+            try {
+                handler.handle(rdt);
+            } catch (Exception e) {
+                System.err.println("session " + id + " failed: " + e);
+            } finally {
+                if (rdt.isTerminated())
+                    close(id, session);
+                else if (!closed)
+                    reaper.schedule(() -> close(id, session),
+                                    lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+        return session;
+    }// open
+
+    // removes the given session and stops its threads
+    private void close(int id, Session session)
+    {
+        sessions.remove(id, session);
+        session.rdt.terminate();
+    }// close
+
+    // terminates the sessions that have been silent for idleMillis
+    private void reapIdle()
+    {
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+        sessions.forEach((id, session) -> {
+            if (session.rdt.idleNanos() > idleNanos)
+                close(id, session);
+        });
+    }// reapIdle
+
+    /***********************************************************************
+     * inner class: Session
+     ***********************************************************************/
+
+    private static class Session
+    {
+        final RDT rdt;                // state machines of the session
+        final SocketAddress client;   // address that opened the session
+        final Transport transport;    // transport that reads its packets
+
+        Session(RDT inRdt, SocketAddress inClient, Transport inTransport)
+        {
+            rdt = inRdt;
+            client = inClient;
+            transport = inTransport;
+        }// constructor
+    }// Session
+}// RDTServer
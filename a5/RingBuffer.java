@@ -0,0 +1,176 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RingBuffer.java
+ *
+ **************************************************/
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded, lock-free, single-producer single-consumer queue.
+ *
+ * Exactly one thread may add elements (offer/put) and exactly one thread may
+ * remove them (poll/take) at any given time. The non-blocking methods never
+ * lock; the blocking ones park the calling thread until the other side makes
+ * progress, or until the queue is closed.
+ */
+public class RingBuffer<E>
+{
+    private final Object[] slots;         // capacity is a power of two
+    private final int mask;               // slots.length - 1
+    private final AtomicLong head =       // # of elements removed so far
+            new AtomicLong();
+    private final AtomicLong tail =       // # of elements added so far
+            new AtomicLong();
+    private volatile Thread waitingProducer; // parked in put (if any)
+    private volatile Thread waitingConsumer; // parked in take (if any)
+    private volatile boolean closed;      // no more waiting (see close)
+
+    // creates a queue that can hold at least the given number of elements
+    public RingBuffer(int capacity)
+    {
+        if (capacity < 1)
+            throw new IllegalArgumentException(
+                "capacity must be at least 1: " + capacity);
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        slots = new Object[size];
+        mask = size - 1;
+    }// constructor
+
+    // returns the maximum number of elements the queue can hold
+    public int capacity()
+    {
+        return slots.length;
+    }// capacity
+
+    // returns the number of elements currently in the queue
+    public int size()
+    {
+        return (int) (tail.get() - head.get());
+    }// size
+
+    // returns true if and only if the queue holds no element
+    public boolean isEmpty()
+    {
+        return tail.get() == head.get();
+    }// isEmpty
+
+    /**
+     * Producer side: adds the given element and returns true, or returns
+     * false right away if the queue is full
+     */
+    public boolean offer(E element)
+    {
+        long t = tail.get();
+        if (t - head.get() == slots.length)
+            return false;
+        slots[(int) t & mask] = element;
+        tail.set(t + 1);
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+        return true;
+    }// offer
+
+    /**
+     * Consumer side: removes and returns the oldest element, or returns null
+     * right away if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll()
+    {
+        long h = head.get();
+        if (h == tail.get())
+            return null;
+        int index = (int) h & mask;
+        E element = (E) slots[index];
+        slots[index] = null;
+        head.set(h + 1);
+        Thread producer = waitingProducer;
+        if (producer != null)
+            LockSupport.unpark(producer);
+        return element;
+    }// poll
+
+    /**
+     * Consumer side: returns the oldest element without removing it, or
+     * null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E peek()
+    {
+        long h = head.get();
+        if (h == tail.get())
+            return null;
+        return (E) slots[(int) h & mask];
+    }// peek
+
+    /**
+     * Producer side: adds the given element, waiting for room in the queue
+     * if it is full. Throws IllegalStateException instead of waiting once
+     * the queue is closed.
+     */
+    public void put(E element) throws InterruptedException
+    {
+        if (offer(element))
+            return;
+        waitingProducer = Thread.currentThread();
+        try {
+            while (!offer(element)) {
+                if (closed)
+                    throw new IllegalStateException("queue closed");
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        } finally {
+            waitingProducer = null;
+        }
+    }// put
+
+    /**
+     * Consumer side: removes and returns the oldest element, waiting for
+     * one to be added if the queue is empty. Returns null instead of
+     * waiting once the queue is closed.
+     */
+    public E take() throws InterruptedException
+    {
+        E element = poll();
+        if (element != null)
+            return element;
+        waitingConsumer = Thread.currentThread();
+        try {
+            while ((element = poll()) == null) {
+                if (closed)
+                    return null;
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return element;
+        } finally {
+            waitingConsumer = null;
+        }
+    }// take
+
+    /**
+     * Wakes up the threads waiting in put or take, and has every call that
+     * would wait from now on give up instead (see put and take). Elements
+     * may still be added while there is room, and taken while there are
+     * some.
+     */
+    public void close()
+    {
+        closed = true;
+        Thread producer = waitingProducer;
+        if (producer != null)
+            LockSupport.unpark(producer);
+        Thread consumer = waitingConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }// close
+}// RingBuffer
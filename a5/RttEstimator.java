@@ -0,0 +1,108 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RttEstimator.java
+ *
+ **************************************************/
+
+/**
+ * Round-trip time estimator and retransmission timeout (RTO) calculator
+ * following Jacobson/Karels (as in RFC 6298):
+ *
+ *   first sample R:   SRTT = R, RTTVAR = R/2
+ *   next samples R:   RTTVAR = 3/4 RTTVAR + 1/4 |SRTT - R|
+ *                     SRTT   = 7/8 SRTT   + 1/8 R
+ *   RTO = SRTT + max(G, 4 RTTVAR), clamped to [min RTO, max RTO]
+ *
+ * Every timeout doubles the RTO (exponential backoff). The backoff is undone
+ * by the next valid sample or, as Linux does, as soon as an ACK for new data
+ * shows that the path works again. Per Karn's rule, the caller must not feed
+ * samples taken from retransmitted packets.
+ *
+ * Only one thread may update the estimator; any thread may read it.
+ */
+public class RttEstimator
+{
+    private static final long GRANULARITY_NS = 1_000_000; // G = 1 ms
+
+    private final long minRtoNs;           // lower bound of the RTO
+    private final long maxRtoNs;           // upper bound of the RTO
+    private volatile long rttNs = -1;      // last sample (-1: none yet)
+    private volatile long srttNs = -1;     // smoothed RTT (-1: none yet)
+    private volatile long rttvarNs;        // RTT variation
+    private volatile long baseRtoNs;       // RTO computed from the samples
+    private volatile int backoffs;         // # of doublings of the base RTO
+
+    // creates an estimator with the given initial RTO and RTO bounds
+    public RttEstimator(long initialRtoMs, long minRtoMs, long maxRtoMs)
+    {
+        if (minRtoMs < 1 || maxRtoMs < minRtoMs)
+            throw new IllegalArgumentException(
+                "invalid RTO bounds: [" + minRtoMs + ", " + maxRtoMs + "]");
+        minRtoNs = minRtoMs * 1_000_000;
+        maxRtoNs = maxRtoMs * 1_000_000;
+        baseRtoNs = clamp(initialRtoMs * 1_000_000);
+    }// constructor
+
+    // updates the estimates with the given RTT sample
+    public void sample(long sampleNs)
+    {
+        if (sampleNs < 0)
+            return;
+        rttNs = sampleNs;
+        if (srttNs < 0) {
+            srttNs = sampleNs;
+            rttvarNs = sampleNs / 2;
+        } else {
+            rttvarNs = (3 * rttvarNs + Math.abs(srttNs - sampleNs)) / 4;
+            srttNs = (7 * srttNs + sampleNs) / 8;
+        }
+        baseRtoNs = clamp(srttNs + Math.max(GRANULARITY_NS, 4 * rttvarNs));
+        backoffs = 0;
+    }// sample
+
+    // doubles the RTO after a timeout
+    public void backoff()
+    {
+        if (rtoNanos() < maxRtoNs)
+            backoffs++;
+    }// backoff
+
+    // undoes the backoff, e.g., when new data gets ACKed
+    public void resetBackoff()
+    {
+        backoffs = 0;
+    }// resetBackoff
+
+    // returns the current RTO in nanoseconds
+    public long rtoNanos()
+    {
+        long rto = baseRtoNs;
+        for (int i = backoffs; i > 0 && rto < maxRtoNs; i--)
+            rto *= 2;
+        return clamp(rto);
+    }// rtoNanos
+
+    // returns the last RTT sample in nanoseconds (-1 if none yet)
+    public long rttNanos()
+    {
+        return rttNs;
+    }// rttNanos
+
+    // returns the smoothed RTT in nanoseconds (-1 if none yet)
+    public long smoothedRttNanos()
+    {
+        return srttNs;
+    }// smoothedRttNanos
+
+    // returns the RTT variation in nanoseconds
+    public long rttVariationNanos()
+    {
+        return rttvarNs;
+    }// rttVariationNanos
+
+    private long clamp(long ns)
+    {
+        return Math.max(minRtoNs, Math.min(maxRtoNs, ns));
+    }// clamp
+}// RttEstimator
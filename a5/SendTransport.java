@@ -0,0 +1,63 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: SendTransport.java
+ *
+ **************************************************/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Sending side of an unreliable datagram service, i.e., all that an RDT
+ * instance needs when its packets are received on its behalf, as for the
+ * sessions of an RDTServer (see SessionTransport). Transport adds the
+ * receiving side.
+ *
+ * Packets are passed around in ByteBuffers so that implementations can
+ * move them without copying; each transport says which kind of buffer
+ * suits it best (see allocate). Packets may also be sent in bursts (see
+ * the array flavour of send), so that an implementation can hand several
+ * datagrams to the OS per call; by default, a burst is sent one packet at
+ * a time.
+ *
+ * Any thread may send.
+ */
+public interface SendTransport extends Closeable
+{
+    // returns a new buffer of the given capacity suited to this transport
+    ByteBuffer allocate(int capacity);
+
+    /**
+     * Sends the bytes between the position and the limit of the given
+     * buffer to the peer as one datagram, and advances the position of the
+     * buffer to its limit. A datagram that cannot be delivered is simply
+     * lost.
+     */
+    void send(ByteBuffer packet) throws IOException;
+
+    /**
+     * Sends the first count packets of the given array as with send, in
+     * that order. A datagram that cannot be delivered does not prevent the
+     * next ones from being sent.
+     */
+    default void send(ByteBuffer[] packets, int count) throws IOException
+    {
+        for (int i = 0; i < count; i++)
+            send(packets[i]);
+    }// send
+
+    // same as send, but to the given address (unconnected transports only)
+    void sendTo(ByteBuffer packet, SocketAddress address) throws IOException;
+
+    /**
+     * Asks the OS for send and receive buffers (SO_SNDBUF and SO_RCVBUF) of
+     * at least the given # of bytes, so that a full window of packets sent
+     * back to back is not dropped before anyone reads it. Buffers that are
+     * larger already are left alone, and the OS may grant less than asked
+     * (e.g., net.core.rmem_max on Linux).
+     */
+    void reserveBuffers(int bytes) throws IOException;
+}// SendTransport
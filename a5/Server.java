@@ -7,57 +7,213 @@
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.zip.Deflater;
 
 /**
  * The server program for the application-level protocol
  */
 public class Server
 {
-    private RDT rdt;     // the server-side rdt instance
+    private RDT rdt;          // the server-side rdt instance (null when
+                              // serving sessions)
+    private boolean mapFiles; // stream files through a memory mapping
+    private int rcvPortNum;   // port of the session server
+    private String tag = "";  // session ID in the console messages
+    private RDT[] streams;    // rdt, followed by the other instances of a
+                              // parallel transfer, if any
+    private FileCatalog catalog; // image files (session server only)
+    private ContentCache cache;  // popular files (session server only, if
+                                 // enabled)
+    private boolean clientInflates; // the client accepts deflated chunks
     
 
     /**
      * Constructor: creates the rdt instance with its IP address and the port
      *              number of its receiver, as well as the port number of its
      *              peer's receiver; then the thread sleeps of 0.1 second.
+     *              The rdt mode and window size are read from the rdt.*
+     *              system properties (see RDTConfig), and the image file
+     *              is memory-mapped if the server.mmap property is true.
+     *              If the server.sessions property is true, no rdt
+     *              instance is created here: run serves any # of clients,
+     *              each in its own session (see runSessions). Otherwise,
+     *              the server.streams property gives the # of rdt
+     *              instances over which the file is sent in parallel
+     *              (default: 1, see Streams).
+     *              Chunks are deflated for the clients that accept it unless
+     *              the server.compress property is false, at the level given
+     *              by the server.deflateLevel property (default: 1, i.e.,
+     *              fastest; see Compression).
      */
     public Server(String ipAddress, 
                   int rcvPortNum, 
                   int peerRcvPortNum) throws Exception
     {
-        rdt = new RDT(ipAddress, rcvPortNum, peerRcvPortNum, "S");
+        mapFiles = Boolean.getBoolean("server.mmap");
+        this.rcvPortNum = rcvPortNum;
+        if (!Boolean.getBoolean("server.sessions")) {
+            RDTConfig config = RDTConfig.fromSystemProperties();
+            rdt = new RDT(ipAddress, rcvPortNum, peerRcvPortNum, "S",
+                          config);
+            streams = Streams.open(rdt,
+                                   Integer.getInteger("server.streams", 1),
+                                   ipAddress, rcvPortNum, peerRcvPortNum,
+                                   "S", config);
+        }
         Thread.sleep(100); 
     }// constructor
 
+    // creates a server for the given session of a session server
+    private Server(RDT session, boolean inMapFiles, FileCatalog inCatalog,
+                   ContentCache inCache)
+    {
+        rdt = session;
+        streams = new RDT[]{session};
+        mapFiles = inMapFiles;
+        catalog = inCatalog;
+        cache = inCache;
+        tag = "#" + Integer.toHexString(session.sessionId()) + " ";
+    }// constructor
+
     /**
      * Implements the server-side of the application-level protocol as 
      * described in the handout. The messages to be sent to the console are
      * also specified in the traces given in the handout, namely, the lines
      * starting with the string "SERVER ".
      *
-     * When the server is done, make the thread wait for two seconds before
-     * terminating the program.
+     * When the server is done, close the rdt instances, which gets every
+     * queued message across and waits for the client to close its own
+     * (see RDT.close), so that the program ends with their threads. Session
+     * servers never terminate.
      */
     public void run() throws Exception
     {
-        getRequest(); 
+        if (rdt == null) {
+            runSessions();
+            return;
+        }
+        try {
+            serve();
+        } finally {
+            Streams.close(streams);
+        }
+    }// run
+
+    /**
+     * Serves clients until the program is killed: each client gets its own
+     * session of an RDTServer on the server port, served by serve on a pool
+     * thread. The server.receivers property gives the # of threads reading
+     * the port (default: 1, or one per core with the channel transport if
+     * the OS supports SO_REUSEPORT), the server.workers property the # of
+     * sessions served at once (default: 4 per core), the server.linger
+     * property how long, in ms, a session that was not closed is kept once
+     * it has been served (default: 10000) and the server.idle property
+     * after how many ms without a packet from its client a session is
+     * terminated (default: 60000, 0: never).
+     * Files are picked from a catalog of the image folder, which is kept up
+     * to date as files come and go, and are served from a cache of their
+     * content holding up to server.cacheBytes bytes (default: 64 MB, 0
+     * disables the cache).
+     */
+    private void runSessions() throws IOException
+    {
+        RDTConfig config = RDTConfig.fromSystemProperties();
+        int cores = Runtime.getRuntime().availableProcessors();
+        int receivers = 1;
+        if (config.transport == RDT.TransportType.CHANNEL &&
+            ChannelTransport.reusePortSupported())
+            receivers = cores;
+        receivers = Integer.getInteger("server.receivers", receivers);
+        boolean map = mapFiles;
+        long cacheBytes = Long.getLong("server.cacheBytes", 64 << 20);
+        ContentCache files = cacheBytes > 0 ? new ContentCache(cacheBytes)
+                                            : null;
+        FileCatalog images = new FileCatalog(new File(A5.IMG_SUBFOLDER),
+            name -> {
+                if (files != null)
+                    files.invalidate(new File(A5.IMG_SUBFOLDER + name));
+            });
+        RDTServer server = new RDTServer(
+            rcvPortNum, config,
+            session -> {
+                try {
+                    new Server(session, map, images, files).serve();
+                } finally {
+                    session.close();
+                }
+            },
+            receivers,
+            Integer.getInteger("server.workers", 4 * cores),
+            Long.getLong("server.linger", 10_000),
+            Long.getLong("server.idle", 60_000));
+        server.start();
+        A5.print("S", "SERVER serving sessions on port " + rcvPortNum);
+    }// runSessions
+
+    // serves one client over rdt: waits for its request, then sends it a
+    // random image file, or the missing chunks of the file it asked to
+    // resume (or tells it that there is no such file), followed by a
+    // MSG_FILE_DONE on every stream that carried the file
+    private void serve() throws Exception
+    {
+        byte[] request = getRequest(); 
+        boolean resume = request[0] == Messages.MSG_RESUME_FILE;
+        clientInflates = request.length > 1 &&
+                         (request[1] & Compression.DEFLATE) != 0 &&
+                         !"false".equals(System.getProperty("server.compress"));
     
-        String fileName = getRandomImageFile();
+        String fileName;
+        if (resume)
+            fileName = getResumedFile(request);
+        else if (catalog != null)
+            fileName = catalog.randomFile();
+        else
+            fileName = getRandomImageFile();
         if (fileName == null) {
             rdt.sendData(new byte[]{A5.MSG_NO_IMG_FILE_AVAILABLE});
-            Thread.sleep(2000); 
-            System.exit(0);
+            return;
+        }
+        sendFileName(fileName);
+        int carriers = 1;  // # of streams that carried the file
+        File file = new File(A5.IMG_SUBFOLDER + fileName);
+        ContentCache.Entry entry = cache == null ? null : cache.get(file);
+        if (entry != null) {
+            sendCachedFile(entry, fileName, resume);
         } else {
-            sendFileName(fileName);
-            FileInputStream fileStream = new FileInputStream(new File(A5.IMG_SUBFOLDER + fileName));
-            sendFile(fileStream);
-            fileStream.close();
-            rdt.sendData(new byte[]{A5.MSG_FILE_DONE});
-            A5.print("S", "SERVER sent file done message"); 
-            Thread.sleep(2000); 
-            System.exit(0);
+            sendFileSize(file.length());
+            if (resume) {
+                sendMissingChunks(file, sendManifest(file), fileName);
+            } else if (streams.length > 1) {
+                sendFileRanges(file);
+                carriers = streams.length;
+            } else if (mapFiles) {
+                sendMappedFile(file);
+            } else {
+                try (FileInputStream fileStream = new FileInputStream(file)) {
+                    sendFile(fileStream, fileName);
+                }
+            }
         }
-    }// run
+        sendFileDone(carriers);
+    }// serve
+
+    // sends a MSG_FILE_DONE over each of the first n streams, behind the
+    // chunks that each of them carried
+    private void sendFileDone(int n)
+    {
+        for (int i = 0; i < n; i++) {
+            streams[i].sendData(new byte[]{A5.MSG_FILE_DONE});
+            if (n == 1)
+                A5.print("S", "SERVER " + tag + "sent file done message");
+            else
+                A5.print("S", "SERVER " + tag + "sent file done message on stream " + i);
+        }
+    }// sendFileDone
 
     // Do not modify this method
     private String getRandomImageFile()
@@ -112,37 +268,375 @@ public class Server
         rdt.sendData(msg);
     }// sendFileName
 
-    // sends to the client the chunk(s) of the file to be read from the given
-    // input stream
-    private void sendFile(FileInputStream in) throws Exception
+    // sends to the client that resumes a transfer the manifest of the given
+    // file, which it checks its partial copy against, and returns it (the
+    // file is read and hashed for resumed transfers only)
+    private Manifest sendManifest(File file) throws Exception
+    {
+        try (FileChannel channel = open(file)) {
+            Manifest manifest = Manifest.of(channel);
+            manifest.send(rdt);
+            return manifest;
+        }
+    }// sendManifest
+
+    // sends to the client the size of the file to come, so that it can
+    // preallocate it (clients that do not know this message skip it)
+    private void sendFileSize(long size)
     {
-        byte[] buffer = new byte[A5.MAX_DATA_SIZE];
+        ByteBuffer msg = ByteBuffer.allocate(9);
+        msg.put(Messages.MSG_FILE_SIZE).putLong(size).flip();
+        rdt.sendData(msg);
+    }// sendFileSize
+
+    // sends to the client the chunk(s) of the file with the given name to be
+    // read from the given input stream; chunks are queued in the rdt send
+    // buffer, so the file is read ahead while earlier chunks are still in
+    // flight. Each chunk is read right behind the message type in a single
+    // reused message buffer, which rdt copies into one of its packets
+    // (unless the chunk is deflated, see sendDeflated)
+    private void sendFile(FileInputStream in, String fileName) throws Exception
+    {
+        byte[] msg = new byte[A5.MAX_MSG_SIZE];
+        ByteBuffer msgBuffer = ByteBuffer.wrap(msg);
+        ByteBuffer chunk = ByteBuffer.wrap(msg);
+        ByteBuffer packed = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        packed.put(0, Messages.MSG_FILE_DATA_DEFLATED);
+        Compression.ChunkDeflater deflater = null;
+        msg[0] = A5.MSG_FILE_DATA;
         int bytesRead;
         int chunkNo = 0;  
-        while ((bytesRead = in.read(buffer)) != -1) {
+        while ((bytesRead = in.read(msg, 1, A5.MAX_DATA_SIZE)) != -1) {
             chunkNo++;
-            byte[] msg = new byte[bytesRead + 1];
-            msg[0] = A5.MSG_FILE_DATA;
-            System.arraycopy(buffer, 0, msg, 1, bytesRead);
-            rdt.sendData(msg);
-            A5.print("S", "SERVER sent file chunk #" + chunkNo + " [" + bytesRead + " bytes]");
+            chunk.limit(bytesRead + 1).position(1);
+            if (chunkNo == 1 && deflates(fileName, chunk))
+                deflater = newDeflater();
+            if (!sendDeflated(rdt, deflater, chunk, packed, 1, chunkNo, "")) {
+                msgBuffer.clear().limit(bytesRead + 1);
+                rdt.sendData(msgBuffer);
+                A5.print("S", "SERVER " + tag + "sent file chunk #" + chunkNo + " [" + bytesRead + " bytes]");
+            }
             Thread.yield();  
         }
-        rdt.sendData(new byte[]{A5.MSG_FILE_DONE});
-        A5.print("S", "SERVER sent file done message");
+        if (deflater != null)
+            deflater.end();
     }// sendFile
 
-    // waits for the file request from the client.
+    // same as sendFile, except that the file is memory-mapped and each chunk
+    // is a window onto the mapping, which rdt copies straight into one of
+    // its packets behind the message type: the file data is copied once
+    // (from the page cache) instead of once by the read and once by rdt
+    private void sendMappedFile(File file) throws Exception
+    {
+        try (FileChannel channel = open(file)) {
+            sendContent(new Content(channel), file.getName());
+        }
+    }// sendMappedFile
+
+    /**
+     * Sends the file with the given name held by the given cache entry: its
+     * size, then either all of it (see sendContent) or, for a resumed
+     * transfer, its manifest and the chunks that the client is missing. The
+     * content is sent straight from the cache, without touching the disk.
+     */
+    private void sendCachedFile(ContentCache.Entry entry, String fileName,
+                                boolean resume)
+        throws Exception
+    {
+        Content content = new Content(entry.content());
+        sendFileSize(content.size());
+        if (resume) {
+            entry.manifest().send(rdt);
+            sendMissingChunks(content, entry.manifest(), fileName);
+        } else {
+            sendContent(content, fileName);
+        }
+    }// sendCachedFile
+
+    // sends the whole given content of the file with the given name, in
+    // chunks that are windows onto the content behind the message type
+    // (unless they are deflated, see sendDeflated)
+    private void sendContent(Content content, String fileName)
+        throws IOException
+    {
+        long size = content.size();
+        ByteBuffer type = ByteBuffer.wrap(new byte[]{A5.MSG_FILE_DATA});
+        ByteBuffer[] msg = {type, null};
+        ByteBuffer packed = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        packed.put(0, Messages.MSG_FILE_DATA_DEFLATED);
+        Compression.ChunkDeflater deflater = null;
+        int chunkNo = 0;
+        for (long offset = 0; offset < size; offset += A5.MAX_DATA_SIZE) {
+            chunkNo++;
+            int bytesRead = (int) Math.min(A5.MAX_DATA_SIZE, size - offset);
+            type.clear();
+            ByteBuffer chunk = msg[1] = content.get(offset, bytesRead);
+            if (chunkNo == 1 && deflates(fileName, chunk))
+                deflater = newDeflater();
+            if (!sendDeflated(rdt, deflater, chunk, packed, 1, chunkNo, "")) {
+                rdt.sendData(msg);
+                A5.print("S", "SERVER " + tag + "sent file chunk #" + chunkNo + " [" + bytesRead + " bytes]");
+            }
+            Thread.yield();
+        }
+        if (deflater != null)
+            deflater.end();
+    }// sendContent
+
+    // returns true if and only if the chunks of the file with the given
+    // name, whose first chunk is between the position and the limit of the
+    // given buffer, are to be deflated: the client inflates and the file is
+    // worth it
+    private boolean deflates(String fileName, ByteBuffer first)
+    {
+        if (!clientInflates || !Compression.worthCompressing(fileName, first))
+            return false;
+        A5.print("S", "SERVER " + tag + "deflating " + fileName);
+        return true;
+    }// deflates
+
+    // same as above for the file with the given name and content
+    private boolean deflates(String fileName, Content content)
+        throws IOException
+    {
+        int first = (int) Math.min(A5.MAX_DATA_SIZE, content.size());
+        return first > 0 && deflates(fileName, content.get(0, first));
+    }// deflates
+
+    // returns a new deflater for the chunks of a file, at the level given by
+    // the server.deflateLevel property
+    private static Compression.ChunkDeflater newDeflater()
+    {
+        return new Compression.ChunkDeflater(
+            Integer.getInteger("server.deflateLevel", Deflater.BEST_SPEED));
+    }// newDeflater
+
+    // sends over the given stream the given chunk deflated into the given
+    // message buffer, behind the header already there (the given # of
+    // bytes), and returns true if there is a deflater and the chunk
+    // shrinks; returns false otherwise (nothing is sent). The console
+    // message ends with the given text
+    private boolean sendDeflated(RDT out, Compression.ChunkDeflater deflater,
+                                 ByteBuffer chunk, ByteBuffer packed,
+                                 int header, int chunkNo, String where)
+    {
+        if (deflater == null)
+            return false;
+        packed.clear().position(header);
+        if (!deflater.deflate(chunk, packed))
+            return false;
+        packed.flip();
+        out.sendData(packed);
+        A5.print("S", "SERVER " + tag + "sent file chunk #" + chunkNo + " [" + chunk.remaining() + " bytes deflated to " + (packed.limit() - header) + "]" + where);
+        return true;
+    }// sendDeflated
+
+    // opens the given file for reading
+    private static FileChannel open(File file) throws IOException
+    {
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }// open
+
+    /**
+     * Sends the given file over all the streams at once: stream i carries
+     * the i-th of as many contiguous ranges of the file, in chunks tagged
+     * with their offset (MSG_FILE_RANGE) that the client writes in place
+     * (serve then closes every stream with a MSG_FILE_DONE). The file is
+     * memory-mapped, and each stream sends windows onto the mapping (or
+     * deflates them, see sendRange).
+     */
+    private void sendFileRanges(File file) throws Exception
+    {
+        try (FileChannel channel = open(file)) {
+            long size = channel.size();
+            long chunks = (size + Messages.RANGE_DATA_SIZE - 1)
+                          / Messages.RANGE_DATA_SIZE;
+            boolean deflate = deflates(file.getName(), new Content(channel));
+            Streams.forEach(streams.length, i -> {
+                long from = chunks * i / streams.length
+                            * Messages.RANGE_DATA_SIZE;
+                long to = chunks * (i + 1) / streams.length
+                          * Messages.RANGE_DATA_SIZE;
+                sendRange(i, new Content(channel), from, Math.min(size, to),
+                          deflate);
+            });
+        }
+    }// sendFileRanges
+
+    // sends the bytes of the given content from offset from (included) to
+    // offset to (excluded) over the given stream, as MSG_FILE_RANGE
+    // messages whose chunks are windows onto the content, or, if they are
+    // to be deflated, as MSG_FILE_RANGE_DEFLATED messages whenever that
+    // makes them smaller (see sendDeflated)
+    private void sendRange(int stream, Content content, long from, long to,
+                           boolean deflate)
+        throws IOException
+    {
+        RDT out = streams[stream];
+        ByteBuffer header = ByteBuffer.allocate(9);
+        ByteBuffer[] msg = {header, null};
+        ByteBuffer packed = null;
+        Compression.ChunkDeflater deflater = null;
+        if (deflate) {
+            packed = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+            packed.put(0, Messages.MSG_FILE_RANGE_DEFLATED);
+            deflater = newDeflater();
+        }
+        String where = " on stream " + stream;
+        int chunkNo = 0;
+        try {
+            for (long offset = from; offset < to;
+                 offset += Messages.RANGE_DATA_SIZE) {
+                chunkNo++;
+                int length = (int) Math.min(Messages.RANGE_DATA_SIZE,
+                                            to - offset);
+                ByteBuffer chunk = msg[1] = content.get(offset, length);
+                if (packed != null)
+                    packed.putLong(1, offset);
+                if (!sendDeflated(out, deflater, chunk, packed, 9, chunkNo,
+                                  where)) {
+                    header.clear();
+                    header.put(Messages.MSG_FILE_RANGE).putLong(offset).flip();
+                    out.sendData(msg);
+                    A5.print("S", "SERVER " + tag + "sent file chunk #" + chunkNo + " [" + length + " bytes]" + where);
+                }
+                Thread.yield();
+            }
+        } finally {
+            if (deflater != null)
+                deflater.end();
+        }
+    }// sendRange
+
+    // same as below for the given file, which is memory-mapped
+    private void sendMissingChunks(File file, Manifest manifest,
+                                   String fileName)
+        throws Exception
+    {
+        try (FileChannel channel = open(file)) {
+            sendMissingChunks(new Content(channel), manifest, fileName);
+        }
+    }// sendMissingChunks
+
+    /**
+     * Waits for the list of the chunks of the file with the given content,
+     * manifest and name that the client already has, then sends it the
+     * other ones (runs of consecutive chunks at a time, see sendRange)
+     */
+    private void sendMissingChunks(Content content, Manifest manifest,
+                                   String fileName)
+        throws Exception
+    {
+        BitSet have = manifest.receiveChunkSet(rdt);
+        A5.print("S", "SERVER " + tag + "client has " + have.cardinality() + " of " + manifest.chunkCount() + " chunks");
+        boolean deflate = deflates(fileName, content);
+        int count = manifest.chunkCount();
+        for (int from = have.nextClearBit(0); from < count;
+             from = have.nextClearBit(from)) {
+            int next = have.nextSetBit(from);
+            int to = next < 0 ? count : Math.min(count, next);
+            sendRange(0, content, manifest.offset(from),
+                      Math.min(manifest.size(), manifest.offset(to)),
+                      deflate);
+            from = to;
+        }
+    }// sendMissingChunks
+
+    // returns the name of the file that the client asked to resume in the
+    // given request, or null if there is no such image file
+    private String getResumedFile(byte[] request)
+    {
+        if (request.length < 2)
+            return null;
+        String name = new String(request, 2, request.length - 2);
+        File file = new File(A5.IMG_SUBFOLDER + name);
+        // the client's file name must not escape the image folder, and
+        // only the files that a new request could get are served
+        if (!new File(name).getName().equals(name) ||
+            !FileCatalog.isImage(name) || !file.isFile())
+            return null;
+        A5.print("S", "SERVER " + tag + "resuming " + name);
+        return name;
+    }// getResumedFile
+
+    // waits for the file request from the client and returns it.
     // As explained in the handout, uses a flag-based loop that causes the
-    // thread to yield until a MSG_REQUEST_IMG_FILE sent by the client is
-    // received
-    private void getRequest()
+    // thread to yield until a MSG_REQUEST_IMG_FILE (or MSG_RESUME_FILE)
+    // sent by the client is received; throws an IOException if the client
+    // goes away first
+    private byte[] getRequest() throws IOException
     {
-        byte[] request = rdt.receiveData();
-        while (request[0] != A5.MSG_REQUEST_IMG_FILE) {
+        byte[] request = Messages.receive(rdt, "file request");
+        while (request[0] != A5.MSG_REQUEST_IMG_FILE &&
+               request[0] != Messages.MSG_RESUME_FILE) {
             Thread.yield();
+            request = Messages.receive(rdt, "file request");
         }
-        A5.print("S", "SERVER got request for image file");
+        A5.print("S", "SERVER " + tag + "got request for image file");
+        return request;
     }// getRequest
 
+    /***********************************************************************
+     * inner class: Content
+     ***********************************************************************/
+
+    /**
+     * Read-only content of a file, handed out in chunks that are windows
+     * onto either the bytes in memory or a memory mapping of the file. A
+     * single mapping cannot exceed 2 GB, so the file is mapped one window
+     * of at most WINDOW_SIZE bytes at a time, the next one being mapped
+     * when a chunk falls outside of the current one. Each thread sending
+     * the same file needs its own instance (single thread).
+     */
+    private static class Content
+    {
+        static final long WINDOW_SIZE = 1L << 30;
+
+        private final FileChannel channel; // null if the content is in
+                                           // memory
+        private final long size;           // of the content
+        private ByteBuffer window;         // the bytes from windowStart on
+        private long windowStart;          // offset of window in the file
+
+        // creates the content of the given buffer, from its position, 0, to
+        // its limit
+        Content(ByteBuffer content)
+        {
+            channel = null;
+            size = content.limit();
+            window = content.duplicate();
+        }// constructor
+
+        // creates the content of the file open on the given channel, which
+        // must stay open while chunks are being read
+        Content(FileChannel inChannel) throws IOException
+        {
+            channel = inChannel;
+            size = inChannel.size();
+        }// constructor
+
+        long size()
+        {
+            return size;
+        }// size
+
+        /**
+         * Returns a buffer whose bytes between the position and the limit
+         * are the given # of bytes of the content from the given offset on.
+         * The buffer is only valid until the next call.
+         */
+        ByteBuffer get(long offset, int length) throws IOException
+        {
+            if (window == null || offset < windowStart ||
+                offset + length > windowStart + window.capacity()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                                     Math.min(WINDOW_SIZE, size - offset));
+            }
+            int start = (int) (offset - windowStart);
+            window.limit(start + length).position(start);
+            return window;
+        }// get
+    }// Content
+
 }// Server
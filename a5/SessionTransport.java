@@ -0,0 +1,59 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: SessionTransport.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport of one session of an RDTServer: sends the packets of the session
+ * to its client through the server's (unconnected) transport, which it
+ * shares with the other sessions. Packets are received by the server, which
+ * hands them over to the session, so this transport only sends.
+ */
+public class SessionTransport implements SendTransport
+{
+    private final SendTransport shared;   // the server's transport
+    private final SocketAddress client;   // where the client receives
+
+    public SessionTransport(SendTransport inShared, SocketAddress inClient)
+    {
+        shared = inShared;
+        client = inClient;
+    }// constructor
+
+    @Override
+    public ByteBuffer allocate(int capacity)
+    {
+        return shared.allocate(capacity);
+    }// allocate
+
+    @Override
+    public void send(ByteBuffer packet) throws IOException
+    {
+        shared.sendTo(packet, client);
+    }// send
+
+    @Override
+    public void sendTo(ByteBuffer packet, SocketAddress address)
+        throws IOException
+    {
+        shared.sendTo(packet, address);
+    }// sendTo
+
+    @Override
+    public void reserveBuffers(int bytes)
+    {
+        // sized by the server for all of its sessions
+    }// reserveBuffers
+
+    @Override
+    public void close()
+    {
+        // the shared transport belongs to the server
+    }// close
+}// SessionTransport
@@ -0,0 +1,120 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: SocketTransport.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport built on MyDatagramSocket, so that packets can be dropped and
+ * corrupted on purpose. It works on heap buffers, whose backing arrays are
+ * handed to the socket as is.
+ */
+public class SocketTransport implements Transport
+{
+    private final MyDatagramSocket socket;    // bound to our receiver port
+    private final SocketAddress peer;         // where the peer receives
+                                              // (null: unconnected)
+    private final DatagramPacket rcvPacket =  // reused by every receive
+            new DatagramPacket(new byte[0], 0);
+
+    // the errors injected by the socket are counted in the given metrics
+    public SocketTransport(InetAddress inPeerIpAddress,
+                           int inRcvPortNum,
+                           int inPeerRcvPortNum,
+                           RDTMetrics metrics) throws SocketException
+    {
+        socket = new MyDatagramSocket(inRcvPortNum);
+        socket.setMetrics(metrics);
+        peer = new InetSocketAddress(inPeerIpAddress, inPeerRcvPortNum);
+    }// constructor
+
+    // creates an unconnected transport bound to the given port
+    public SocketTransport(int inRcvPortNum, RDTMetrics metrics)
+        throws SocketException
+    {
+        socket = new MyDatagramSocket(inRcvPortNum);
+        socket.setMetrics(metrics);
+        peer = null;
+    }// constructor
+
+    @Override
+    public ByteBuffer allocate(int capacity)
+    {
+        return ByteBuffer.allocate(capacity);
+    }// allocate
+
+    @Override
+    public void send(ByteBuffer packet) throws IOException
+    {
+        if (peer == null)
+            throw new IllegalStateException("unconnected transport");
+        sendTo(packet, peer);
+    }// send
+
+    /**
+     * Sends the packet straight from the array backing the buffer. The
+     * bytes are copied first only when the packet does not start at index 0
+     * of an array, since MyDatagramSocket assumes that it does when it
+     * corrupts a packet.
+     */
+    @Override
+    public void sendTo(ByteBuffer packet, SocketAddress address)
+        throws IOException
+    {
+        int length = packet.remaining();
+        byte[] data;
+        if (packet.hasArray() && packet.arrayOffset() + packet.position() == 0)
+            data = packet.array();
+        else {
+            data = new byte[length];
+            packet.duplicate().get(data);
+        }
+        socket.send(new DatagramPacket(data, 0, length, address));
+        packet.position(packet.limit());
+    }// sendTo
+
+    @Override
+    public SocketAddress receiveFrom(ByteBuffer packet) throws IOException
+    {
+        receive(packet);
+        return rcvPacket.getSocketAddress();
+    }// receiveFrom
+
+    @Override
+    public int receive(ByteBuffer packet) throws IOException
+    {
+        if (!packet.hasArray())
+            throw new IllegalArgumentException("heap buffer expected");
+        rcvPacket.setData(packet.array(),
+                          packet.arrayOffset() + packet.position(),
+                          packet.remaining());
+        socket.receive(rcvPacket);
+        int length = rcvPacket.getLength();
+        packet.position(packet.position() + length);
+        return length;
+    }// receive
+
+    @Override
+    public void reserveBuffers(int bytes) throws SocketException
+    {
+        if (socket.getReceiveBufferSize() < bytes)
+            socket.setReceiveBufferSize(bytes);
+        if (socket.getSendBufferSize() < bytes)
+            socket.setSendBufferSize(bytes);
+    }// reserveBuffers
+
+    @Override
+    public void close()
+    {
+        socket.close();
+    }// close
+}// SocketTransport
@@ -0,0 +1,89 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Streams.java
+ *
+ **************************************************/
+
+/**
+ * Helpers for parallel transfers, in which the client and the server talk
+ * over several rdt instances (streams) at once: stream 0 is the usual one,
+ * and stream i uses the receiver ports of stream 0 plus i on both sides.
+ * Both sides must agree on the # of streams (see the server.streams and
+ * client.streams properties).
+ */
+public class Streams
+{
+    /** Work done on one stream of a parallel transfer.
+     */
+    public interface StreamTask
+    {
+        void run(int stream) throws Exception;
+    }// StreamTask
+
+    /**
+     * Returns the given # of streams: the given instance, followed by new
+     * instances with the given peer IP address, tag and configuration, on
+     * the ports following the given ones
+     */
+    public static RDT[] open(RDT first,
+                             int count,
+                             String peerIP,
+                             int rcvPortNum,
+                             int peerRcvPortNum,
+                             String tag,
+                             RDTConfig config) throws Exception
+    {
+        if (count > 1 && (rcvPortNum == 0 || peerRcvPortNum == 0))
+            throw new IllegalArgumentException(
+                "parallel streams require fixed port numbers");
+        RDT[] streams = new RDT[Math.max(1, count)];
+        streams[0] = first;
+        for (int i = 1; i < streams.length; i++)
+            streams[i] = new RDT(peerIP, rcvPortNum + i, peerRcvPortNum + i,
+                                 tag, config);
+        return streams;
+    }// open
+
+    /**
+     * Runs the given task for each of the given # of streams at once, the
+     * task of stream 0 on the calling thread, and returns once they are all
+     * done. Throws the exception thrown by the first task that failed, if
+     * any.
+     */
+    public static void forEach(int count, StreamTask task) throws Exception
+    {
+        Thread[] threads = new Thread[count];
+        Exception[] failures = new Exception[count];
+        for (int i = 1; i < count; i++) {
+            int stream = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    task.run(stream);
+                } catch (Exception e) {
+                    failures[stream] = e;
+                }
+            });
+            threads[i].start();
+        }
+        try {
+            task.run(0);
+        } catch (Exception e) {
+            failures[0] = e;
+        }
+        for (int i = 1; i < count; i++)
+            threads[i].join();
+        for (Exception failure : failures)
+            if (failure != null)
+                throw failure;
+    }// forEach
+
+    /**
+     * Closes the given streams at once (see RDT.close), so that closing
+     * takes as long as the slowest stream rather than all of them
+     */
+    public static void close(RDT[] streams) throws Exception
+    {
+        forEach(streams.length, stream -> streams[stream].close());
+    }// close
+}// Streams
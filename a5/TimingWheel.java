@@ -0,0 +1,154 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: TimingWheel.java
+ *
+ **************************************************/
+
+/**
+ * Hashed timing wheel: a circular array of buckets, one per tick, in which
+ * each timer is linked into the bucket of the tick at which it expires
+ * (modulo the # of buckets). Scheduling and cancelling a timer take constant
+ * time whatever the # of timers, and expiring them takes time proportional
+ * to the # of ticks elapsed plus the # of timers in the buckets visited.
+ * Timers set more than one revolution ahead stay in their bucket until the
+ * revolution in which they are due.
+ *
+ * Timers are intrusive list nodes, so that a timer can be rescheduled over
+ * and over without allocating anything. Timers expire at most one tick late
+ * and never early.
+ *
+ * A wheel and its timers must be used by a single thread.
+ */
+public class TimingWheel
+{
+    /** A timer, linked into at most one bucket at a time.
+     */
+    public abstract static class Timer
+    {
+        private long deadlineTick;   // tick at which the timer expires
+        private Timer prev;          // neighbours in the bucket
+        private Timer next;
+        private boolean scheduled;   // linked into a bucket
+
+        // called by advance when the timer expires (no longer scheduled)
+        protected abstract void expired();
+
+        // returns true if and only if the timer is waiting to expire
+        public boolean isScheduled()
+        {
+            return scheduled;
+        }// isScheduled
+    }// Timer
+
+    private final long tickNanos;    // duration of a tick
+    private final long startNanos;   // time of tick 0
+    private final Timer[] buckets;   // heads of the lists; length is a
+    private final int mask;          // power of two, mask its length - 1
+    private long currentTick;        // last tick processed by advance
+    private int size;                // # of scheduled timers
+
+    // creates a wheel of at least the given # of buckets of the given
+    // duration, starting now
+    public TimingWheel(long inTickNanos, int bucketCount)
+    {
+        if (inTickNanos < 1 || bucketCount < 1)
+            throw new IllegalArgumentException(
+                "invalid wheel: " + bucketCount + " x " + inTickNanos + " ns");
+        int length = Integer.highestOneBit(bucketCount);
+        if (length < bucketCount)
+            length <<= 1;
+        tickNanos = inTickNanos;
+        startNanos = System.nanoTime();
+        buckets = new Timer[length];
+        mask = length - 1;
+    }// constructor
+
+    // returns the # of scheduled timers
+    public int size()
+    {
+        return size;
+    }// size
+
+    /**
+     * (Re)schedules the given timer to expire at the given time (as given
+     * by System.nanoTime), cancelling it first if it was already scheduled.
+     * A timer due in the current tick or earlier expires on the next tick.
+     */
+    public void schedule(Timer timer, long deadlineNanos)
+    {
+        cancel(timer);
+        long tick = Math.floorDiv(deadlineNanos - startNanos + tickNanos - 1,
+                                  tickNanos);
+        timer.deadlineTick = Math.max(tick, currentTick + 1);
+        int index = (int) timer.deadlineTick & mask;
+        timer.next = buckets[index];
+        if (timer.next != null)
+            timer.next.prev = timer;
+        buckets[index] = timer;
+        timer.scheduled = true;
+        size++;
+    }// schedule
+
+    // cancels the given timer if it is scheduled
+    public void cancel(Timer timer)
+    {
+        if (!timer.scheduled)
+            return;
+        if (timer.prev != null)
+            timer.prev.next = timer.next;
+        else
+            buckets[(int) timer.deadlineTick & mask] = timer.next;
+        if (timer.next != null)
+            timer.next.prev = timer.prev;
+        timer.prev = timer.next = null;
+        timer.scheduled = false;
+        size--;
+    }// cancel
+
+    /**
+     * Expires every timer due at or before the given time (as given by
+     * System.nanoTime), calling their expired method. An expired timer may
+     * be rescheduled from that method.
+     */
+    public void advance(long nowNanos)
+    {
+        long nowTick = Math.floorDiv(nowNanos - startNanos, tickNanos);
+        // after a long pause, visiting every bucket once is enough
+        long tick = Math.max(currentTick + 1, nowTick - mask);
+        for (; tick <= nowTick; tick++) {
+            Timer timer = buckets[(int) tick & mask];
+            while (timer != null) {
+                Timer next = timer.next;
+                if (timer.scheduled && timer.deadlineTick <= nowTick) {
+                    cancel(timer);
+                    timer.expired();
+                }
+                timer = next;
+            }
+        }
+        currentTick = Math.max(currentTick, nowTick);
+    }// advance
+
+    /**
+     * Returns the # of nanoseconds until the next tick in which some timer
+     * is due, or -1 if no timer is scheduled. Only looks one revolution
+     * ahead: a timer due later than that gets this method to return the
+     * time left in the current revolution.
+     */
+    public long nanosToNextExpiry(long nowNanos)
+    {
+        if (size == 0)
+            return -1;
+        long tick = currentTick + 1;
+        for (int i = 0; i <= mask; i++, tick++) {
+            for (Timer timer = buckets[(int) tick & mask]; timer != null;
+                 timer = timer.next) {
+                if (timer.deadlineTick <= tick)
+                    return Math.max(0, startNanos + tick * tickNanos
+                                       - nowNanos);
+            }
+        }
+        return Math.max(0, startNanos + tick * tickNanos - nowNanos);
+    }// nanosToNextExpiry
+}// TimingWheel
@@ -0,0 +1,56 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Transport.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Unreliable datagram service underneath an RDT instance: the sending side
+ * (see SendTransport), plus the receiving side.
+ *
+ * A transport is bound to the receiver port of its instance and sends every
+ * packet to the receiver port of the peer. An unconnected transport (see the
+ * constructors of the implementations) has no peer: it is shared by the
+ * sessions of an RDTServer, and packets are sent to and received from any
+ * address with sendTo and receiveFrom.
+ *
+ * Packets may also be received in bursts (see the array flavour of
+ * receive), so that an implementation can take several datagrams from the
+ * OS per call or per wakeup; by default, a burst is received one packet at
+ * a time.
+ *
+ * Any thread may send, but only one thread at a time may receive.
+ */
+public interface Transport extends SendTransport
+{
+    /**
+     * Waits for the next datagram from the peer, stores it in the given
+     * buffer starting at its position (truncating it if there is not enough
+     * room), advances the position past it and returns its length.
+     */
+    int receive(ByteBuffer packet) throws IOException;
+
+    /**
+     * Waits for the next datagram from the peer like receive, then takes
+     * the ones that are already waiting behind it without waiting any
+     * longer, up to one per buffer of the given array (connected transports
+     * only). Each datagram is stored in the next buffer as with receive and
+     * its length in the same index of the given lengths. Returns the # of
+     * datagrams received, which is only ever 1 by default.
+     */
+    default int receive(ByteBuffer[] packets, int[] lengths)
+        throws IOException
+    {
+        lengths[0] = receive(packets[0]);
+        return 1;
+    }// receive
+
+    // same as receive, but returns the address the datagram came from
+    // instead of its length
+    SocketAddress receiveFrom(ByteBuffer packet) throws IOException;
+}// Transport
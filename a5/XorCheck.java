@@ -0,0 +1,46 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: XorCheck.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+
+/**
+ * Legacy integrity field: the XORed byte values of the packet (1 byte).
+ *
+ * It is cheap on the wire but misses any even number of flips of the same
+ * bit position, and it is computed one byte at a time.
+ */
+public class XorCheck implements IntegrityCheck
+{
+    @Override
+    public int size()
+    {
+        return 1;
+    }// size
+
+    @Override
+    public void sign(ByteBuffer packet, int length)
+    {
+        packet.put(length, xor(packet, length));
+    }// sign
+
+    @Override
+    public boolean verify(ByteBuffer packet, int length)
+    {
+        return length >= 1 &&
+               packet.get(length - 1) == xor(packet, length - 1);
+    }// verify
+
+    // returns the XORed values of the first n bytes of the given buffer
+    private static byte xor(ByteBuffer buffer, int n)
+    {
+        byte sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum ^= buffer.get(i);
+        }
+        return sum;
+    }// xor
+}// XorCheck
@@ -0,0 +1,58 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Bench.java
+ *
+ **************************************************/
+
+import java.util.Arrays;
+
+/**
+ * Statistics shared by the benchmarks in this folder. The per-operation
+ * benchmarks and a transfer benchmark are JMH benchmarks (package jmh),
+ * which drive the fixtures of ChecksumBench, CodecBench and TransferBench;
+ * LoadTest and FecBench, which run scripted profiles, and the main of
+ * TransferBench, which reports the CPU time per MB, are programs of their
+ * own.
+ *
+ * Build with Maven from the root of the project, and run from the a5
+ * folder (where ./images is), e.g.:
+ *
+ *   mvn -B package -DskipTests
+ *   cd a5
+ *   java -jar bench/target/benchmarks.jar ChecksumBenchmark
+ *   java -jar bench/target/benchmarks.jar CodecBenchmark -p check=crc32c
+ *   java -jar bench/target/benchmarks.jar TransferBenchmark -p drop=20
+ *   java -cp bench/target/benchmarks.jar LoadTest
+ *   java -cp bench/target/benchmarks.jar FecBench
+ *   java -cp bench/target/benchmarks.jar -Drdt.ioBatch=32 TransferBench
+ */
+public class Bench
+{
+    // returns the percentiles of the first n given latencies (ns), which
+    // get sorted, as a string in microseconds
+    public static String latencies(long[] samples, int n)
+    {
+        Arrays.sort(samples, 0, n);
+        return String.format("p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f us",
+                             percentile(samples, n, 50) / 1e3,
+                             percentile(samples, n, 90) / 1e3,
+                             percentile(samples, n, 99) / 1e3,
+                             percentile(samples, n, 99.9) / 1e3,
+                             samples[n - 1] / 1e3);
+    }// latencies
+
+    // returns the given percentile of the first n (sorted) samples
+    public static long percentile(long[] sorted, int n, double p)
+    {
+        int index = (int) Math.ceil(p / 100 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))];
+    }// percentile
+
+    // returns the throughput of the given # of bytes processed in the given
+    // # of nanoseconds (MB/s)
+    public static double mbPerSec(double bytes, double ns)
+    {
+        return bytes / ns * 1e3;
+    }// mbPerSec
+}// Bench
@@ -0,0 +1,48 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: BenchFixtures.java
+ *
+ **************************************************/
+
+import java.util.function.IntSupplier;
+
+import jmh.Fixtures;
+
+/**
+ * The fixtures of this folder as seen from the JMH benchmarks, which cannot
+ * import them from the default package (see jmh.Fixtures): registered with
+ * the ServiceLoader in META-INF/services/jmh.Fixtures.
+ */
+public class BenchFixtures implements Fixtures
+{
+    @Override
+    public IntSupplier checksum(String check, boolean direct)
+    {
+        return ChecksumBench.op(check, direct);
+    }// checksum
+
+    @Override
+    public int checksumLength()
+    {
+        return ChecksumBench.PACKET_SIZE;
+    }// checksumLength
+
+    @Override
+    public IntSupplier codec(String kind, String check, boolean direct)
+    {
+        return CodecBench.op(kind, check, direct);
+    }// codec
+
+    @Override
+    public int codecLength(String kind, String check)
+    {
+        return CodecBench.bytes(kind, check);
+    }// codecLength
+
+    @Override
+    public Fixtures.Transfer transfer(String file) throws Exception
+    {
+        return TransferBench.open(file);
+    }// transfer
+}// BenchFixtures
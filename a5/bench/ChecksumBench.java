@@ -0,0 +1,56 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ChecksumBench.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * Per-packet cost of the integrity checks: signing and verifying a full data
+ * packet, in heap buffers (SocketTransport) and direct buffers
+ * (ChannelTransport). This is the fixture of jmh.ChecksumBenchmark, which
+ * measures it; see Bench for how to run it.
+ */
+public class ChecksumBench
+{
+    public static final int PACKET_SIZE =   // bytes covered by the check
+        PacketCodec.HEADER_SIZE + A5.MAX_MSG_SIZE;
+
+    /**
+     * Returns one operation of the benchmark of the given check ("xor" or
+     * "crc32c", as rdt.check): signing a full packet of random bytes in a
+     * heap or direct buffer, then verifying it (returns 1 if it verifies)
+     */
+    public static IntSupplier op(String checkName, boolean direct)
+    {
+        IntegrityCheck check = check(checkName);
+        int length = PACKET_SIZE;
+        ByteBuffer packet = direct
+            ? ByteBuffer.allocateDirect(length + check.size())
+            : ByteBuffer.allocate(length + check.size());
+        byte[] bytes = new byte[length];
+        new Random(391).nextBytes(bytes);
+        packet.put(bytes).clear();
+        return () -> {
+            check.sign(packet, length);
+            return check.verify(packet, length + check.size()) ? 1 : 0;
+        };
+    }// op
+
+    // returns the integrity check of the given name (as rdt.check)
+    static IntegrityCheck check(String name)
+    {
+        switch (name) {
+            case "xor":
+                return new XorCheck();
+            case "crc32c":
+                return new Crc32cCheck();
+            default:
+                throw new IllegalArgumentException("unknown check: " + name);
+        }
+    }// check
+}// ChecksumBench
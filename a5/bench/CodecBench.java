@@ -0,0 +1,83 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: CodecBench.java
+ *
+ **************************************************/
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * Per-packet cost of encoding and decoding full data packets, as done by
+ * RDT: encoding copies the message behind the header room and seals the
+ * packet; decoding verifies the packet, reads its sequence number and
+ * trims it down to its payload. ACKs are measured as well. This is the
+ * fixture of jmh.CodecBenchmark, which measures it; see Bench for how to
+ * run it.
+ */
+public class CodecBench
+{
+    /**
+     * Returns one operation of the benchmark of the given kind ("encode",
+     * "decode" or "ack") with the given check ("xor" or "crc32c"), on a
+     * full data packet (or an ACK) in a heap or direct buffer; the
+     * operation returns anything computed from its result
+     */
+    public static IntSupplier op(String kind, String checkName,
+                                 boolean direct)
+    {
+        byte[] bytes = new byte[A5.MAX_MSG_SIZE];
+        new Random(391).nextBytes(bytes);
+        PacketCodec codec = new PacketCodec(ChecksumBench.check(checkName));
+        ByteBuffer message = ByteBuffer.wrap(bytes);
+        ByteBuffer packet = allocate(codec.maxPacketSize(), direct);
+        ByteBuffer ack = allocate(codec.ackSize(), direct);
+        int[] seqNum = {0};
+        IntSupplier encode = () -> {
+            message.clear();
+            codec.startData(packet);
+            packet.put(message);
+            codec.endData(packet);
+            codec.sealData(packet, 1, seqNum[0]++);
+            return packet.limit();
+        };
+        switch (kind) {
+            case "encode":
+                return encode;
+            case "decode":
+                int length = encode.getAsInt();
+                return () -> {
+                    packet.clear();
+                    if (!codec.verify(packet, length))
+                        throw new IllegalStateException("corrupted");
+                    codec.payload(packet, length);
+                    return PacketCodec.seqNum(packet) + packet.remaining();
+                };
+            case "ack":
+                return () -> {
+                    codec.encodeAck(ack, 1, seqNum[0], seqNum[0]++, 0, 32);
+                    return codec.verify(ack, ack.limit())
+                           ? PacketCodec.cumAck(ack) : 0;
+                };
+            default:
+                throw new IllegalArgumentException("unknown op: " + kind);
+        }
+    }// op
+
+    // returns the # of bytes of the packet handled by one operation of the
+    // given kind with the given check
+    public static int bytes(String kind, String checkName)
+    {
+        if (kind.equals("ack"))
+            return new PacketCodec(ChecksumBench.check(checkName)).ackSize();
+        return op("encode", checkName, false).getAsInt();
+    }// bytes
+
+    private static ByteBuffer allocate(int capacity, boolean direct)
+    {
+        return direct ? ByteBuffer.allocateDirect(capacity)
+                      : ByteBuffer.allocate(capacity);
+    }// allocate
+}// CodecBench
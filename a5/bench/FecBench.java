@@ -0,0 +1,56 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: FecBench.java
+ *
+ **************************************************/
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Forward error correction (see RDTConfig.fecBlock) across loss rates: runs
+ * the LoadTest profile of every pair of a drop rate of MyDatagramSocket
+ * (socket.drop, i.e., 1 out of N packets, in either direction) and of an
+ * FEC block size (0: no FEC), so that the goodput, the latencies and the
+ * retransmissions saved by the parity packets can be read side by side.
+ * The rates and sizes are given by the fec.drops and fec.blocks system
+ * properties (default: 0,100,50,20,10 and 0,16,8,4).
+ *
+ * The profiles run selective repeat with a window of 32 packets over a
+ * path with 10 ms of latency each way, and with TCP's 200 ms floor for
+ * the retransmission timeout, so that a loss costs what it would on a
+ * real path rather than a loopback round trip; any of these can be
+ * overridden on the command line, e.g.:
+ *
+ *   java -cp bench/target/benchmarks.jar FecBench
+ *   java -cp bench/target/benchmarks.jar -Dfec.drops=20 -Dfec.blocks=0,8
+ *        -Drdt.minRto=20 FecBench
+ */
+public class FecBench
+{
+    public static final String SETTINGS =
+        "set rdt.mode=SELECTIVE_REPEAT rdt.window=32 rdt.minRto=200"
+        + " socket.latency=10";
+
+    public static void main(String[] args) throws Exception
+    {
+        List<String> script = new ArrayList<>();
+        script.add(SETTINGS);
+        for (String drop : System.getProperty("fec.drops", "0,100,50,20,10")
+                                 .split(",")) {
+            int oneOutOf = Integer.parseInt(drop.trim());
+            String loss = oneOutOf == 0 ? "0"
+                : String.format("%.3g", 100.0 / oneOutOf)
+                        .replaceAll("\\.?0+$", "");
+            for (String block : System.getProperty("fec.blocks", "0,16,8,4")
+                                      .split(",")) {
+                int size = Integer.parseInt(block.trim());
+                script.add(String.format("%s%%/%s socket.drop=%d rdt.fec=%d",
+                                         loss, size == 0 ? "off" : "k=" + size,
+                                         oneOutOf, size));
+            }
+        }
+        LoadTest.runScript(script);
+    }// main
+}// FecBench
@@ -0,0 +1,177 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: LoadTest.java
+ *
+ **************************************************/
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Load test of RDT across emulated network paths: runs a script of
+ * profiles, each made of socket.* system properties (see MyDatagramSocket
+ * and NetEmulator) and rdt.* ones (see RDTConfig), and reports for each
+ * the goodput and the message latencies of transfers between two RDT
+ * instances over the loopback interface (as in TransferBench).
+ *
+ * The script, given on the command line (default: DEFAULT_SCRIPT), has one
+ * profile per line: a name followed by property=value pairs, e.g.,
+ *
+ *   wan   socket.latency=20 socket.jitter=2 socket.bandwidth=50000
+ *
+ * A line named "set" gives properties for all the profiles after it,
+ * unless they were set on the command line; those of a profile line only
+ * hold for that profile. Blank lines and lines starting with # are
+ * skipped. Every profile sends load.bytes (default 1 MB) of random data
+ * in 8 KB messages load.warmup times, then load.transfers times (default:
+ * 1 and 3). The goodput is that of the median measured transfer, the
+ * latency of a message runs from the call to sendData until receiveData
+ * returns it, and the rebuilt packets are those that FEC saved from a
+ * retransmission (see RDTConfig.fecBlock). With rdt.trace=true, the
+ * stages of the packets of both instances are printed too (see
+ * PacketTrace). Since every random choice of the emulator is seeded (see
+ * socket.seed), a profile meets the same impairments from run to run,
+ * e.g.:
+ *
+ *   java -cp bench/target/benchmarks.jar LoadTest
+ *   java -cp bench/target/benchmarks.jar -Drdt.cc=bdp LoadTest profiles.txt
+ */
+public class LoadTest
+{
+    public static final String[] DEFAULT_SCRIPT = {
+        "set     rdt.mode=SELECTIVE_REPEAT rdt.window=32",
+        "clean",
+        "lan     socket.latency=0.5 socket.jitter=0.1 socket.bandwidth=1000000",
+        "wan     socket.latency=20 socket.jitter=2 socket.bandwidth=50000",
+        "lossy   socket.latency=20 socket.drop=50",
+        "bursty  socket.latency=20 socket.gemodel=1,25",
+        "reorder socket.latency=5 socket.jitter=1 socket.reorder=20"
+        + " socket.duplicate=50",
+        "thin    socket.latency=50 socket.bandwidth=5000 socket.queue=20",
+    };
+
+    public static void main(String[] args) throws Exception
+    {
+        runScript(args.length > 0 ? Files.readAllLines(Paths.get(args[0]))
+                                  : Arrays.asList(DEFAULT_SCRIPT));
+    }// main
+
+    // runs the given script (see above) and prints the results of its
+    // profiles
+    static void runScript(List<String> script) throws Exception
+    {
+        int bytes = Integer.getInteger("load.bytes", 1 << 20);
+        int warmup = Integer.getInteger("load.warmup", 1);
+        int transfers = Integer.getInteger("load.transfers", 3);
+        int port = Integer.getInteger("bench.port", 20000);
+        byte[] content = new byte[bytes];
+        new Random(391).nextBytes(content);
+        int messages = (bytes + A5.MAX_DATA_SIZE - 1) / A5.MAX_DATA_SIZE;
+        Map<String, String> given = new HashMap<>();
+        for (String name : System.getProperties().stringPropertyNames())
+            given.put(name, System.getProperty(name));
+
+        System.out.printf("%d bytes in %d messages, %d transfers per profile%n",
+                          bytes, messages, transfers);
+        System.out.printf("%-10s %12s %30s %8s %8s %8s%n", "profile",
+                          "goodput", "latency (ms)", "retrans", "timeouts",
+                          "rebuilt");
+        for (String line : script) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] words = line.split("\\s+");
+            Map<String, String> settings = settings(words);
+            if (words[0].equals("set")) {
+                settings.forEach((name, value) -> {
+                    if (!given.containsKey(name))
+                        System.setProperty(name, value);
+                });
+                continue;
+            }
+            Map<String, String> saved = new HashMap<>();
+            settings.forEach((name, value) ->
+                saved.put(name, System.setProperty(name, value)));
+            try {
+                run(words[0], content, messages, warmup, transfers, port);
+            } finally {
+                saved.forEach((name, value) -> {
+                    if (value == null)
+                        System.clearProperty(name);
+                    else
+                        System.setProperty(name, value);
+                });
+            }
+            port += 2;
+        }
+    }// runScript
+
+    // returns the property=value pairs following the name of a line of
+    // the script
+    private static Map<String, String> settings(String[] words)
+    {
+        Map<String, String> settings = new HashMap<>();
+        for (int i = 1; i < words.length; i++) {
+            int equals = words[i].indexOf('=');
+            if (equals < 1)
+                throw new IllegalArgumentException(
+                    words[0] + ": property=value expected: " + words[i]);
+            settings.put(words[i].substring(0, equals),
+                         words[i].substring(equals + 1));
+        }
+        return settings;
+    }// settings
+
+    /**
+     * Runs the given profile, as set in the system properties, with a new
+     * pair of RDT instances on the given port and the next one, and prints
+     * its results
+     */
+    private static void run(String profile, byte[] content, int messages,
+                            int warmup, int transfers, int port)
+        throws Exception
+    {
+        RDTConfig config = RDTConfig.fromSystemProperties();
+        RDT sender = new RDT(null, port, port + 1, "S", config);
+        RDT receiver = new RDT(null, port + 1, port, "", config);
+        long[] ns = new long[transfers];
+        long[] latencies = new long[transfers * messages];
+        try {
+            for (int i = 0; i < warmup + transfers; i++) {
+                if (i == warmup)
+                    config.metrics.reset();
+                long elapsed = TransferBench.transfer(
+                    sender, receiver, content, messages,
+                    i < warmup ? null : latencies, (i - warmup) * messages);
+                if (i >= warmup)
+                    ns[i - warmup] = elapsed;
+            }
+        } finally {
+            Streams.close(new RDT[]{sender, receiver});
+        }
+        Arrays.sort(ns);
+        Arrays.sort(latencies);
+        int n = latencies.length;
+        System.out.printf("%-10s %7.2f Mbit/s   p50=%7.2f p99=%7.2f max=%7.2f"
+                          + " %8d %8d %8d%n",
+                          profile,
+                          content.length * 8 / (ns[transfers / 2] / 1e3),
+                          Bench.percentile(latencies, n, 50) / 1e6,
+                          Bench.percentile(latencies, n, 99) / 1e6,
+                          latencies[n - 1] / 1e6,
+                          config.metrics.getRetransmissions(),
+                          config.metrics.getTimeouts(),
+                          config.metrics.getPacketsRebuilt());
+        if (config.trace) {
+            System.out.println("  sender:   " + sender.getTrace());
+            System.out.println("  receiver: " + receiver.getTrace());
+        }
+    }// run
+}// LoadTest
@@ -0,0 +1,217 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: TransferBench.java
+ *
+ **************************************************/
+
+import com.sun.management.OperatingSystemMXBean;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import jmh.Fixtures;
+
+/**
+ * End-to-end transfer of files between two RDT instances over the loopback
+ * interface, as the server and the client would do it (8 KB messages), for
+ * every file given on the command line (default: every file in ./images/).
+ *
+ * The RDT instances are configured from the rdt.* system properties and
+ * errors are injected by MyDatagramSocket as set by the socket.* ones (see
+ * RDTConfig and MyDatagramSocket). Each file is sent bench.warmup times,
+ * then bench.transfers times (default: 2 and 5); the throughput is the
+ * median of the measured transfers and the latency of a message runs from
+ * the call to sendData until receiveData returns it. The CPU time is that
+ * of the whole process (both instances) per MB sent, over the measured
+ * transfers. See LoadTest for transfers across emulated network paths.
+ * A Fixture runs the same transfers one at a time, for
+ * jmh.TransferBenchmark to measure.
+ *
+ * Batched I/O is compared with the per-packet path by running the same
+ * transfers with and without rdt.ioBatch, e.g.:
+ *
+ *   java -Drdt.transport=CHANNEL -Drdt.window=32 -Drdt.mode=SELECTIVE_REPEAT
+ *        -Drdt.ioBatch=1 TransferBench
+ *   java -Drdt.transport=CHANNEL -Drdt.window=32 -Drdt.mode=SELECTIVE_REPEAT
+ *        -Drdt.ioBatch=32 TransferBench
+ */
+public class TransferBench
+{
+    private static final OperatingSystemMXBean OS =
+        (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    public static void main(String[] args) throws Exception
+    {
+        int warmup = Integer.getInteger("bench.warmup", 2);
+        int transfers = Integer.getInteger("bench.transfers", 5);
+        File[] files;
+        if (args.length > 0) {
+            files = new File[args.length];
+            for (int i = 0; i < args.length; i++)
+                files[i] = new File(args[i]);
+        } else {
+            files = new File(A5.IMG_SUBFOLDER).listFiles(File::isFile);
+            Arrays.sort(files);
+        }
+
+        RDTConfig config = RDTConfig.fromSystemProperties();
+        int port = Integer.getInteger("bench.port", 20000);
+        RDT sender = new RDT(null, port, port + 1, "S", config);
+        RDT receiver = new RDT(null, port + 1, port, "", config);
+        System.out.printf("mode=%s window=%d transport=%s ioBatch=%d check=%s drop=1/%s corrupt=1/%s%n",
+                          config.mode, config.windowSize, config.transport,
+                          config.ioBatch,
+                          config.integrityCheck.getClass().getSimpleName(),
+                          System.getProperty("socket.drop", "0"),
+                          System.getProperty("socket.corrupt", "0"));
+
+        for (File file : files) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int messages = (content.length + A5.MAX_DATA_SIZE - 1)
+                           / A5.MAX_DATA_SIZE;
+            long[] ns = new long[transfers];
+            long[] latencies = new long[transfers * messages];
+            long cpuNs = 0;
+            for (int i = 0; i < warmup + transfers; i++) {
+                long[] sample = i < warmup ? null : latencies;
+                int offset = i < warmup ? 0 : (i - warmup) * messages;
+                long cpuStart = OS.getProcessCpuTime();
+                long elapsed = transfer(sender, receiver, content, messages,
+                                        sample, offset);
+                if (i >= warmup) {
+                    ns[i - warmup] = elapsed;
+                    cpuNs += OS.getProcessCpuTime() - cpuStart;
+                }
+            }
+            Arrays.sort(ns);
+            System.out.printf("%-12s %8d bytes %9.2f MB/s %7.1f cpu ms/MB  %s%n",
+                              file.getName(), content.length,
+                              Bench.mbPerSec(content.length,
+                                             ns[transfers / 2]),
+                              cpuNs / 1e6 / ((double) content.length
+                                             * transfers / 1e6),
+                              Bench.latencies(latencies, latencies.length));
+        }
+        Streams.close(new RDT[]{sender, receiver});
+    }// main
+
+    /**
+     * Sends the given content from one instance to the other in the given
+     * # of messages, checks that it arrived intact, stores the latency of
+     * every message in latencies[offset..] (unless null) and returns the
+     * duration of the transfer (ns)
+     */
+    static long transfer(RDT sender, RDT receiver, byte[] content,
+                                 int messages, long[] latencies, int offset)
+        throws Exception
+    {
+        AtomicLongArray sentAt = new AtomicLongArray(messages);
+        Thread app = new Thread(() -> {
+            ByteBuffer message = ByteBuffer.wrap(content);
+            for (int i = 0; i < messages; i++) {
+                int start = i * A5.MAX_DATA_SIZE;
+                message.limit(Math.min(content.length,
+                                       start + A5.MAX_DATA_SIZE))
+                       .position(start);
+                sentAt.set(i, System.nanoTime());
+                sender.sendData(message);
+            }
+        });
+        byte[] received = new byte[content.length];
+        ByteBuffer message = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+        long start = System.nanoTime();
+        app.start();
+        for (int i = 0; i < messages; i++) {
+            message.clear();
+            int length = receiver.receiveData(message);
+            if (length < 0)
+                throw new IllegalStateException(
+                    "stream ended after " + i + " messages");
+            long now = System.nanoTime();
+            if (latencies != null)
+                latencies[offset + i] = now - sentAt.get(i);
+            message.flip().get(received, i * A5.MAX_DATA_SIZE, length);
+        }
+        long elapsed = System.nanoTime() - start;
+        app.join();
+        if (!Arrays.equals(received, content))
+            throw new IllegalStateException("transfer corrupted");
+        return elapsed;
+    }// transfer
+
+    // opens a Fixture on the given file (see Fixture)
+    public static Fixture open(String fileName) throws Exception
+    {
+        return new Fixture(new File(fileName));
+    }// open
+
+    /*** inner class: Fixture ***/
+
+    /**
+     * A pair of RDT instances set up as in main (from the rdt.* and socket.*
+     * system properties, on bench.port), which transfers the given file
+     * from one to the other every time getAsInt is called and returns its
+     * size. The latency of every message transferred is recorded (ns), and
+     * toString prints its percentiles.
+     */
+    public static class Fixture implements Fixtures.Transfer
+    {
+        private final byte[] content;
+        private final int messages;
+        private final long[] latencies;     // of the last transfer
+        private final Histogram histogram = new Histogram(); // all of them
+        private final RDT sender;
+        private final RDT receiver;
+
+        Fixture(File file) throws Exception
+        {
+            content = Files.readAllBytes(file.toPath());
+            messages = (content.length + A5.MAX_DATA_SIZE - 1)
+                       / A5.MAX_DATA_SIZE;
+            latencies = new long[messages];
+            RDTConfig config = RDTConfig.fromSystemProperties();
+            int port = Integer.getInteger("bench.port", 20000);
+            sender = new RDT(null, port, port + 1, "S", config);
+            receiver = new RDT(null, port + 1, port, "", config);
+        }// constructor
+
+        @Override
+        public int getAsInt()
+        {
+            try {
+                transfer(sender, receiver, content, messages, latencies, 0);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            for (long latency : latencies)
+                histogram.record(latency);
+            return content.length;
+        }// getAsInt
+
+        @Override
+        public void close()
+        {
+            try {
+                Streams.close(new RDT[]{sender, receiver});
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }// close
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d messages: p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f us",
+                                 histogram.count(),
+                                 histogram.percentile(0.5) / 1e3,
+                                 histogram.percentile(0.9) / 1e3,
+                                 histogram.percentile(0.99) / 1e3,
+                                 histogram.percentile(0.999) / 1e3,
+                                 histogram.max() / 1e3);
+        }// toString
+    }// Fixture
+}// TransferBench
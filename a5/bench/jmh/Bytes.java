@@ -0,0 +1,33 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Bytes.java
+ *
+ **************************************************/
+
+package jmh;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Bytes processed by a benchmark, which adds the size of what each
+ * operation handles: JMH reports it as a secondary result, in bytes per
+ * unit of output time, i.e., in MB/s for a benchmark that reports in
+ * microseconds and in kB/s for one that reports in milliseconds.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Bytes
+{
+    public long bytes;                      // reported by JMH
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+        bytes = 0;
+    }// reset
+}// Bytes
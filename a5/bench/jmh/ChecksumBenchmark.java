@@ -0,0 +1,60 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ChecksumBenchmark.java
+ *
+ **************************************************/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * XOR checksum against CRC-32C (rdt.check): signing and verifying a full
+ * data packet, in heap buffers (SocketTransport) and direct buffers
+ * (ChannelTransport), in packets/us with the MB/s as bytes and, in
+ * sample time mode, the latency percentiles (see ChecksumBench).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChecksumBenchmark
+{
+    @Param({"xor", "crc32c"})
+    public String check;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private IntSupplier op;
+    private int length;                     // bytes covered by the check
+
+    @Setup
+    public void setup()
+    {
+        op = Fixtures.INSTANCE.checksum(check, direct);
+        length = Fixtures.INSTANCE.checksumLength();
+    }// setup
+
+    @Benchmark
+    public int signAndVerify(Bytes bytes)
+    {
+        bytes.bytes += length;
+        return op.getAsInt();
+    }// signAndVerify
+}// ChecksumBenchmark
@@ -0,0 +1,85 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: CodecBenchmark.java
+ *
+ **************************************************/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding full data packets, and ACK round trips, with
+ * either check, in heap and direct buffers, in packets/us with the MB/s
+ * as bytes and, in sample time mode, the latency percentiles (see
+ * CodecBench).
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark
+{
+    @Param({"xor", "crc32c"})
+    public String check;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private IntSupplier encode;
+    private IntSupplier decode;
+    private IntSupplier ack;
+    private int packetSize;                 // bytes of a full data packet
+    private int ackSize;                    // bytes of an ACK
+
+    @Setup
+    public void setup()
+    {
+        encode = op("encode");
+        decode = op("decode");
+        ack = op("ack");
+        packetSize = Fixtures.INSTANCE.codecLength("encode", check);
+        ackSize = Fixtures.INSTANCE.codecLength("ack", check);
+    }// setup
+
+    private IntSupplier op(String kind)
+    {
+        return Fixtures.INSTANCE.codec(kind, check, direct);
+    }// op
+
+    @Benchmark
+    public int encode(Bytes bytes)
+    {
+        bytes.bytes += packetSize;
+        return encode.getAsInt();
+    }// encode
+
+    @Benchmark
+    public int decode(Bytes bytes)
+    {
+        bytes.bytes += packetSize;
+        return decode.getAsInt();
+    }// decode
+
+    @Benchmark
+    public int ack(Bytes bytes)
+    {
+        bytes.bytes += ackSize;
+        return ack.getAsInt();
+    }// ack
+}// CodecBenchmark
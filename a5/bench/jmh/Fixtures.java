@@ -0,0 +1,52 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Fixtures.java
+ *
+ **************************************************/
+
+package jmh;
+
+import java.util.ServiceLoader;
+import java.util.function.IntSupplier;
+
+/**
+ * The fixtures of the default package (see package-info), as the
+ * benchmarks see them. They are implemented in the default package by
+ * BenchFixtures, which the ServiceLoader finds through
+ * META-INF/services/jmh.Fixtures, so that the compiler checks every call
+ * on both sides. Only used at setup and teardown, never while measuring.
+ */
+public interface Fixtures
+{
+    /** The implementation, loaded with this interface. */
+    Fixtures INSTANCE = load();
+
+    /** A transfer set up once and run every time getAsInt is called. */
+    interface Transfer extends IntSupplier, AutoCloseable
+    {
+    }// Transfer
+
+    // see ChecksumBench.op
+    IntSupplier checksum(String check, boolean direct);
+
+    // see ChecksumBench.PACKET_SIZE
+    int checksumLength();
+
+    // see CodecBench.op
+    IntSupplier codec(String kind, String check, boolean direct);
+
+    // see CodecBench.bytes
+    int codecLength(String kind, String check);
+
+    // see TransferBench.open
+    Transfer transfer(String file) throws Exception;
+
+    // returns the implementation registered with the ServiceLoader
+    private static Fixtures load()
+    {
+        return ServiceLoader.load(Fixtures.class).findFirst()
+            .orElseThrow(() -> new IllegalStateException(
+                "no implementation of jmh.Fixtures on the class path"));
+    }// load
+}// Fixtures
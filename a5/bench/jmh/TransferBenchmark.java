@@ -0,0 +1,80 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: TransferBenchmark.java
+ *
+ **************************************************/
+
+package jmh;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End-to-end transfer of a file between two RDT instances over the
+ * loopback interface, with errors injected by MyDatagramSocket (1 out of
+ * drop packets dropped, 1 out of corrupt corrupted, 0: none), in
+ * transfers/ms with the kB/s as bytes and, in sample time mode, the
+ * percentiles of the transfer times; those of the message latencies are
+ * printed at teardown (see TransferBench.Fixture). Runs from the a5
+ * folder, where the files are, and RDT is configured from the rdt.*
+ * system properties, which can be passed with -jvmArgs, e.g.:
+ *
+ *   java -jar bench/target/benchmarks.jar TransferBenchmark
+ *        -jvmArgs "-Drdt.transport=CHANNEL -Drdt.ioBatch=32"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark
+{
+    @Param({"images/image1.png"})
+    public String file;
+
+    @Param({"0", "20"})
+    public int drop;
+
+    @Param({"0"})
+    public int corrupt;
+
+    private Fixtures.Transfer fixture;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        // read by MyDatagramSocket when the RDT instances open theirs
+        System.setProperty("socket.drop", Integer.toString(drop));
+        System.setProperty("socket.corrupt", Integer.toString(corrupt));
+        fixture = Fixtures.INSTANCE.transfer(file);
+    }// setup
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        System.out.println();
+        System.out.println(fixture);
+        fixture.close();
+    }// tearDown
+
+    @Benchmark
+    public int transfer(Bytes bytes)
+    {
+        int length = fixture.getAsInt();
+        bytes.bytes += length;
+        return length;
+    }// transfer
+}// TransferBenchmark
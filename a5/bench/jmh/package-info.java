@@ -0,0 +1,17 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: package-info.java
+ *
+ **************************************************/
+
+/**
+ * JMH benchmarks of the rdt stack. JMH does not accept benchmarks in the
+ * default package, where the rest of the assignment lives, and a named
+ * package cannot import from it: each benchmark gets the operation that it
+ * measures from a fixture of the default package (e.g., ChecksumBench.op)
+ * through the Fixtures interface, which the default package implements,
+ * at setup time, and then calls it directly. See Bench for how to build
+ * and run them.
+ */
+package jmh;
@@ -0,0 +1,190 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ClientServerTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * A Server and a Client over the loopback interface, each in its own
+ * thread with its own rdt instances, the client saving the file to a
+ * folder: the file comes out byte-identical, and the chunks of an
+ * uncompressed bitmap (test/fixtures/gradient.bmp) cross the wire deflated.
+ * The same goes for files sent over several streams at once (see Streams),
+ * whether on lossy sockets or on the channel transport.
+ * What they print to the console tells how the chunks went.
+ */
+class ClientServerTest
+{
+    private static final Path BITMAP = Path.of("test", "fixtures",
+                                               "gradient.bmp");
+    private static final String IMG_SUBFOLDER = A5.IMG_SUBFOLDER;
+
+    @TempDir
+    Path dir;
+    private Path images;    // the server's image folder
+    private Path saved;     // the client's save folder
+
+    @BeforeEach
+    void folders() throws Exception
+    {
+        images = Files.createDirectory(dir.resolve("images"));
+        saved = Files.createDirectory(dir.resolve("saved"));
+        A5.IMG_SUBFOLDER = images + File.separator;
+        System.setProperty("client.saveTo", saved.toString());
+        System.setProperty("client.display", "false");
+    }// folders
+
+    @AfterEach
+    void restore()
+    {
+        A5.IMG_SUBFOLDER = IMG_SUBFOLDER;
+        System.clearProperty("client.saveTo");
+        System.clearProperty("client.display");
+        System.clearProperty("server.streams");
+        System.clearProperty("client.streams");
+        System.clearProperty("rdt.transport");
+        System.clearProperty("rdt.mode");
+        System.clearProperty("rdt.window");
+        System.clearProperty("socket.drop");
+    }// restore
+
+    @Test
+    @Timeout(60)
+    void resumesABitmapWithDeflatedChunks() throws Exception
+    {
+        byte[] content = Files.readAllBytes(BITMAP);
+        Files.write(images.resolve("gradient.bmp"), content);
+        // the first chunk made it, the others did not
+        Files.write(saved.resolve("gradient.bmp.part"),
+                    Arrays.copyOf(content, Manifest.CHUNK_SIZE + 100));
+        String console = transfer();
+        assertArrayEquals(content,
+                          Files.readAllBytes(saved.resolve("gradient.bmp")));
+        assertTrue(console.contains("client has 1 of 4 chunks"), console);
+        assertTrue(console.contains("bytes deflated to"), console);
+        assertTrue(console.contains("deflated) at offset"), console);
+        assertFalse(Files.exists(saved.resolve("gradient.bmp.part")));
+    }// resumesABitmapWithDeflatedChunks
+
+    @Test
+    @Timeout(60)
+    void resumesABitmapAsItIsForClientsThatDoNotInflate() throws Exception
+    {
+        byte[] content = Files.readAllBytes(BITMAP);
+        Files.write(images.resolve("gradient.bmp"), content);
+        Files.write(saved.resolve("gradient.bmp.part"), new byte[0]);
+        System.setProperty("client.compress", "false");
+        try {
+            String console = transfer();
+            assertArrayEquals(content, Files.readAllBytes(
+                                           saved.resolve("gradient.bmp")));
+            assertFalse(console.contains("deflated"), console);
+        } finally {
+            System.clearProperty("client.compress");
+        }
+    }// resumesABitmapAsItIsForClientsThatDoNotInflate
+
+    @Test
+    @Timeout(60)
+    void sendsAFreshImage() throws Exception
+    {
+        byte[] content = Files.readAllBytes(Path.of("images", "image1.png"));
+        Files.write(images.resolve("image1.png"), content);
+        String console = transfer();
+        assertArrayEquals(content,
+                          Files.readAllBytes(saved.resolve("image1.png")));
+        // PNG is compressed already
+        assertFalse(console.contains("deflated"), console);
+    }// sendsAFreshImage
+
+    @Test
+    @Timeout(60)
+    void sendsAnImageOverSeveralLossyStreams() throws Exception
+    {
+        byte[] content = Files.readAllBytes(Path.of("images", "image1.png"));
+        Files.write(images.resolve("image1.png"), content);
+        System.setProperty("rdt.mode", "SELECTIVE_REPEAT");
+        System.setProperty("rdt.window", "16");
+        System.setProperty("socket.drop", "20");
+        String console = transfer(4);
+        assertArrayEquals(content,
+                          Files.readAllBytes(saved.resolve("image1.png")));
+        for (int stream = 0; stream < 4; stream++)
+            assertTrue(console.contains("] on stream " + stream), console);
+    }// sendsAnImageOverSeveralLossyStreams
+
+    @Test
+    @Timeout(60)
+    void sendsAnImageOverSeveralChannels() throws Exception
+    {
+        byte[] content = Files.readAllBytes(Path.of("images", "image2.png"));
+        Files.write(images.resolve("image2.png"), content);
+        System.setProperty("rdt.transport", "CHANNEL");
+        System.setProperty("rdt.mode", "SELECTIVE_REPEAT");
+        System.setProperty("rdt.window", "16");
+        String console = transfer(3);
+        assertArrayEquals(content,
+                          Files.readAllBytes(saved.resolve("image2.png")));
+        for (int stream = 0; stream < 3; stream++)
+            assertTrue(console.contains("] on stream " + stream), console);
+    }// sendsAnImageOverSeveralChannels
+
+    // same as below over a single stream
+    private static String transfer() throws Exception
+    {
+        return transfer(1);
+    }// transfer
+
+    /**
+     * Runs a server and a client, talking over the given # of streams on
+     * free ports (see Ports), until the client is done, and returns what
+     * they printed to the console
+     */
+    private static String transfer(int streams) throws Exception
+    {
+        System.setProperty("server.streams", Integer.toString(streams));
+        System.setProperty("client.streams", Integer.toString(streams));
+        // the server's receiver ports, then the client's
+        int port = Ports.free(2 * streams);
+        PrintStream stdout = System.out;
+        ByteArrayOutputStream console = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(console, true));
+        try {
+            Server server = new Server(null, port, port + streams);
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    server.run();
+                } catch (Exception e) {
+                    failure.set(e);
+                }
+            });
+            thread.start();
+            new Client(null, port + streams, port).run();
+            thread.join();
+            assertNull(failure.get());
+        } finally {
+            System.setOut(stdout);
+        }
+        return console.toString();
+    }// transfer
+}// ClientServerTest
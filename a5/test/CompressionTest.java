@@ -0,0 +1,128 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: CompressionTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compression, on test/fixtures/gradient.bmp (an uncompressed 96 x 96
+ * bitmap) as the server sends files: chunk by chunk, in MAX_DATA_SIZE
+ * chunks behind a message type. Compressed formats and random bytes are
+ * left alone.
+ */
+class CompressionTest
+{
+    private static final Path FIXTURE = Path.of("test", "fixtures",
+                                                "gradient.bmp");
+
+    private final Compression.ChunkDeflater deflater =
+        new Compression.ChunkDeflater(Deflater.BEST_SPEED);
+    private final Compression.ChunkInflater inflater =
+        new Compression.ChunkInflater();
+
+    @AfterEach
+    void end()
+    {
+        deflater.end();
+        inflater.end();
+    }// end
+
+    @Test
+    void deflatesABitmapChunkByChunk() throws Exception
+    {
+        byte[] content = Files.readAllBytes(FIXTURE);
+        int chunks = (content.length + A5.MAX_DATA_SIZE - 1)
+                     / A5.MAX_DATA_SIZE;
+        assertTrue(chunks > 1);
+        assertTrue(Compression.worthCompressing("gradient.bmp",
+                                                chunk(content, 0)));
+
+        ByteBuffer[] deflated = new ByteBuffer[chunks];
+        for (int i = 0; i < chunks; i++) {
+            ByteBuffer chunk = chunk(content, i);
+            // room for the message type, as in Server.sendDeflated
+            ByteBuffer packed = ByteBuffer.allocate(A5.MAX_MSG_SIZE - 1);
+            assertTrue(deflater.deflate(chunk, packed), "chunk " + i);
+            assertTrue(packed.position() < chunk.remaining(), "chunk " + i);
+            assertEquals(i * A5.MAX_DATA_SIZE, chunk.position());
+            deflated[i] = packed.flip();
+        }
+        // every chunk inflates on its own, in any order
+        for (int i = chunks - 1; i >= 0; i--) {
+            ByteBuffer out = ByteBuffer.allocate(A5.MAX_DATA_SIZE);
+            int length = inflater.inflate(deflated[i], out);
+            assertEquals(chunk(content, i).remaining(), length);
+            assertEquals(chunk(content, i), out.flip(), "chunk " + i);
+        }
+    }// deflatesABitmapChunkByChunk
+
+    @Test
+    void leavesCompressedFormatsAlone() throws Exception
+    {
+        ByteBuffer bitmap = chunk(Files.readAllBytes(FIXTURE), 0);
+        assertFalse(Compression.worthCompressing("gradient.PNG", bitmap));
+        assertFalse(Compression.worthCompressing("gradient.jpeg", bitmap));
+        assertFalse(Compression.worthCompressing("gradient.bmp.gz", bitmap));
+    }// leavesCompressedFormatsAlone
+
+    @Test
+    void leavesRandomBytesAlone()
+    {
+        byte[] noise = new byte[A5.MAX_DATA_SIZE];
+        new Random(391).nextBytes(noise);
+        ByteBuffer chunk = ByteBuffer.wrap(noise);
+        assertTrue(Compression.entropy(chunk) > 7.9);
+        assertFalse(Compression.worthCompressing("noise.bin", chunk));
+        // and would not shrink anyway
+        assertFalse(deflater.deflate(chunk,
+                                     ByteBuffer.allocate(A5.MAX_MSG_SIZE)));
+    }// leavesRandomBytesAlone
+
+    @Test
+    void measuresTheEntropy()
+    {
+        assertEquals(0, Compression.entropy(ByteBuffer.allocate(0)));
+        assertEquals(0, Compression.entropy(ByteBuffer.allocate(100)));
+        byte[] all = new byte[512];
+        for (int i = 0; i < all.length; i++)
+            all[i] = (byte) i;
+        assertEquals(8, Compression.entropy(ByteBuffer.wrap(all)), 1e-9);
+        assertEquals(1, Compression.entropy(ByteBuffer.wrap(all, 0, 2)),
+                     1e-9);
+    }// measuresTheEntropy
+
+    @Test
+    void rejectsABadDeflatedChunk()
+    {
+        ByteBuffer garbage = ByteBuffer.wrap(new byte[]{(byte) 0xff, 1, 2});
+        assertThrows(DataFormatException.class,
+                     () -> inflater.inflate(garbage,
+                                            ByteBuffer.allocate(100)));
+    }// rejectsABadDeflatedChunk
+
+    // returns chunk i of the given content, between the position and the
+    // limit of a buffer over the whole content
+    private static ByteBuffer chunk(byte[] content, int i)
+    {
+        int start = i * A5.MAX_DATA_SIZE;
+        return ByteBuffer.wrap(content).limit(Math.min(content.length,
+                                                       start
+                                                       + A5.MAX_DATA_SIZE))
+                         .position(start);
+    }// chunk
+}// CompressionTest
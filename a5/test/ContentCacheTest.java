@@ -0,0 +1,108 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ContentCacheTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * ContentCache: hits and misses, least-recently-used eviction within the
+ * capacity, reloads of changed files and files too large to cache.
+ */
+class ContentCacheTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void servesTheSecondRequestFromMemory() throws Exception
+    {
+        ContentCache cache = new ContentCache(1000);
+        File file = file("a.png", 100, 1);
+        ContentCache.Entry entry = cache.get(file);
+        assertEquals(ByteBuffer.wrap(content(100, 1)), entry.content());
+        assertSame(entry, cache.get(file));
+        assertEquals(1, cache.misses());
+        assertEquals(1, cache.hits());
+        assertEquals(100, cache.size());
+        assertEquals(100, entry.manifest().size());
+    }// servesTheSecondRequestFromMemory
+
+    @Test
+    void evictsTheLeastRecentlyUsedFiles() throws Exception
+    {
+        ContentCache cache = new ContentCache(250);
+        File a = file("a.png", 100, 1);
+        File b = file("b.png", 100, 2);
+        File c = file("c.png", 100, 3);
+        cache.get(a);
+        cache.get(b);
+        cache.get(a); // b is now the least recently used
+        cache.get(c);
+        assertEquals(200, cache.size());
+        assertEquals(3, cache.misses());
+
+        cache.get(a);
+        cache.get(c);
+        assertEquals(3, cache.misses());
+        cache.get(b); // evicts a
+        assertEquals(4, cache.misses());
+        assertEquals(200, cache.size());
+        cache.get(a);
+        assertEquals(5, cache.misses());
+    }// evictsTheLeastRecentlyUsedFiles
+
+    @Test
+    void reloadsChangedAndInvalidatedFiles() throws Exception
+    {
+        ContentCache cache = new ContentCache(1000);
+        File file = file("a.png", 100, 1);
+        cache.get(file);
+        file("a.png", 150, 2);
+        assertEquals(ByteBuffer.wrap(content(150, 2)),
+                     cache.get(file).content());
+        assertEquals(2, cache.misses());
+        assertEquals(150, cache.size());
+
+        cache.invalidate(file);
+        assertEquals(0, cache.size());
+        cache.get(file);
+        assertEquals(3, cache.misses());
+    }// reloadsChangedAndInvalidatedFiles
+
+    @Test
+    void leavesFilesLargerThanItselfOnDisk() throws Exception
+    {
+        ContentCache cache = new ContentCache(99);
+        assertNull(cache.get(file("a.png", 100, 1)));
+        assertEquals(0, cache.size());
+    }// leavesFilesLargerThanItselfOnDisk
+
+    // writes the given # of bytes, which depend on seed, to the file of the
+    // temp folder with the given name, and returns that file
+    private File file(String name, int length, int seed) throws Exception
+    {
+        Path path = Files.write(dir.resolve(name), content(length, seed));
+        return path.toFile();
+    }// file
+
+    // returns the given # of bytes, which depend on seed
+    private static byte[] content(int length, int seed)
+    {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++)
+            content[i] = (byte) (i * seed);
+        return content;
+    }// content
+}// ContentCacheTest
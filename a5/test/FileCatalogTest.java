@@ -0,0 +1,104 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: FileCatalogTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * FileCatalog over a temp folder: it lists the image files only, follows
+ * the files that are added and removed, and reports the changed ones.
+ */
+class FileCatalogTest
+{
+    @TempDir
+    Path dir;
+
+    @Test
+    void tellsImagesFromOtherFiles()
+    {
+        assertTrue(FileCatalog.isImage("a.jpg"));
+        assertTrue(FileCatalog.isImage("a.JPEG"));
+        assertTrue(FileCatalog.isImage("a.gif"));
+        assertTrue(FileCatalog.isImage("a.Png"));
+        assertTrue(FileCatalog.isImage("a.bmp"));
+        assertFalse(FileCatalog.isImage("a.txt"));
+        assertFalse(FileCatalog.isImage("a.png.part"));
+    }// tellsImagesFromOtherFiles
+
+    @Test
+    void listsTheImagesOfTheFolder() throws Exception
+    {
+        Files.write(dir.resolve("a.jpg"), new byte[1]);
+        Files.write(dir.resolve("b.PNG"), new byte[1]);
+        Files.write(dir.resolve("c.txt"), new byte[1]);
+        FileCatalog catalog = new FileCatalog(dir.toFile(), name -> {});
+        try {
+            assertEquals(2, catalog.size());
+            for (int i = 0; i < 20; i++) {
+                String name = catalog.randomFile();
+                assertTrue(name.equals("a.jpg") || name.equals("b.PNG"),
+                           name);
+            }
+        } finally {
+            catalog.close();
+        }
+        FileCatalog empty = new FileCatalog(
+            Files.createDirectory(dir.resolve("empty")).toFile(),
+            name -> {});
+        try {
+            assertEquals(0, empty.size());
+            assertNull(empty.randomFile());
+        } finally {
+            empty.close();
+        }
+    }// listsTheImagesOfTheFolder
+
+    @Test
+    @Timeout(60)
+    void followsTheChangesOfTheFolder() throws Exception
+    {
+        Files.write(dir.resolve("a.jpg"), new byte[1]);
+        Set<String> changed = ConcurrentHashMap.newKeySet();
+        FileCatalog catalog = new FileCatalog(dir.toFile(), changed::add);
+        try {
+            Files.write(dir.resolve("b.gif"), new byte[1]);
+            Files.write(dir.resolve("notes.txt"), new byte[1]);
+            waitFor(() -> catalog.size() == 2);
+
+            Files.write(dir.resolve("b.gif"), new byte[2]);
+            waitFor(() -> changed.contains("b.gif"));
+
+            Files.delete(dir.resolve("a.jpg"));
+            waitFor(() -> catalog.size() == 1);
+            assertTrue(changed.contains("a.jpg"));
+            assertEquals("b.gif", catalog.randomFile());
+            assertFalse(changed.contains("notes.txt"));
+        } finally {
+            catalog.close();
+        }
+    }// followsTheChangesOfTheFolder
+
+    // waits for the given condition to hold (the watching thread applies
+    // the changes asynchronously)
+    private static void waitFor(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        while (!condition.getAsBoolean())
+            Thread.sleep(10);
+    }// waitFor
+}// FileCatalogTest
@@ -0,0 +1,89 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: HistogramTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Histogram: exact small values, percentiles within a bucket's width of
+ * the truth, and recording from several threads at once.
+ */
+class HistogramTest
+{
+    @Test
+    void isEmptyAtFirstAndAfterAReset()
+    {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(0, histogram.mean());
+        assertEquals(0, histogram.max());
+
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.sum());
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(0, histogram.max());
+    }// isEmptyAtFirstAndAfterAReset
+
+    @Test
+    void countsSmallValuesExactly()
+    {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 8; value++)
+            histogram.record(value);
+        histogram.record(-5); // as 0
+        assertEquals(9, histogram.count());
+        assertEquals(28, histogram.sum());
+        assertEquals(7, histogram.max());
+        assertEquals(0, histogram.percentile(0));
+        assertEquals(3, histogram.percentile(0.5));
+        assertEquals(7, histogram.percentile(1));
+    }// countsSmallValuesExactly
+
+    @Test
+    void percentilesAreWithinABucketOfTheTruth()
+    {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 10_000; value++)
+            histogram.record(value);
+        assertEquals(5000.5, histogram.mean());
+        assertEquals(10_000, histogram.max());
+        // upper bounds of buckets 1/8th of a power of two wide
+        long p50 = histogram.percentile(0.5);
+        assertTrue(p50 >= 5000 && p50 <= 5000 * 9 / 8, "p50 = " + p50);
+        long p99 = histogram.percentile(0.99);
+        assertTrue(p99 >= 9900 && p99 <= 10_000, "p99 = " + p99);
+        assertEquals(10_000, histogram.percentile(1));
+
+        Histogram large = new Histogram();
+        large.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, large.percentile(1));
+    }// percentilesAreWithinABucketOfTheTruth
+
+    @Test
+    void recordsFromSeveralThreadsAtOnce() throws Exception
+    {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int value = 0; value < 100_000; value++)
+                    histogram.record(value % 100);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(400_000, histogram.count());
+        assertEquals(4 * 1000 * 4950, histogram.sum());
+        assertEquals(99, histogram.max());
+    }// recordsFromSeveralThreadsAtOnce
+}// HistogramTest
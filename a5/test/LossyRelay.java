@@ -0,0 +1,91 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: LossyRelay.java
+ *
+ **************************************************/
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+/**
+ * UDP relay between two RDT instances that forwards their packets through
+ * a pair of MyDatagramSockets, so that the errors those inject (socket.drop
+ * and the other socket.* properties, read when the relay is created) hit
+ * instances that do not run on a MyDatagramSocket themselves, such as
+ * those on the channel transport (see RDT.TransportType).
+ *
+ * The relay listens on two consecutive ports: the sender's peer port
+ * (firstPort) and the receiver's (firstPort + 1). What comes in on one of
+ * them goes out of the other one, so that each instance gets its packets
+ * from the very address it sends to.
+ */
+class LossyRelay implements AutoCloseable
+{
+    private static final int MAX_DATAGRAM = 65507; // largest UDP payload
+
+    private final MyDatagramSocket towardSender;   // bound to firstPort
+    private final MyDatagramSocket towardReceiver; // bound to firstPort + 1
+    private final Thread[] threads = new Thread[2]; // one per direction
+
+    /**
+     * Starts relaying between the instances receiving on the given ports;
+     * the errors injected either way are counted in the given metrics
+     */
+    LossyRelay(int firstPort, int senderPort, int receiverPort,
+               RDTMetrics metrics) throws IOException
+    {
+        towardSender = new MyDatagramSocket(firstPort);
+        try {
+            towardReceiver = new MyDatagramSocket(firstPort + 1);
+        } catch (IOException e) {
+            towardSender.close();
+            throw e;
+        }
+        towardSender.setMetrics(metrics);
+        towardReceiver.setMetrics(metrics);
+        threads[0] = forward(towardSender, towardReceiver, receiverPort);
+        threads[1] = forward(towardReceiver, towardSender, senderPort);
+    }// constructor
+
+    // starts a thread that sends what the first socket receives out of the
+    // second one, to the given local port
+    private static Thread forward(MyDatagramSocket from,
+                                  MyDatagramSocket to, int port)
+    {
+        InetSocketAddress target =
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        Thread thread = new Thread(() -> {
+            DatagramPacket packet =
+                new DatagramPacket(new byte[MAX_DATAGRAM], MAX_DATAGRAM);
+            try {
+                while (true) {
+                    packet.setLength(MAX_DATAGRAM);
+                    from.receive(packet);
+                    packet.setSocketAddress(target);
+                    to.send(packet);
+                }
+            } catch (IOException e) {
+                // closed: done
+            }
+        }, "relay-" + from.getLocalPort());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }// forward
+
+    @Override
+    public void close()
+    {
+        towardSender.close();
+        towardReceiver.close();
+        try {
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }// close
+}// LossyRelay
@@ -0,0 +1,127 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ManifestTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Manifest: chunk bookkeeping of a file and of a partial copy of it, and
+ * the manifest and the chunk set going through RDT in several messages.
+ */
+class ManifestTest
+{
+    private static final int CHUNK = Manifest.CHUNK_SIZE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void cutsTheFileIntoChunks()
+    {
+        Manifest manifest = Manifest.of(ByteBuffer.wrap(content(3 * CHUNK
+                                                                + 10)));
+        assertEquals(3 * CHUNK + 10, manifest.size());
+        assertEquals(4, manifest.chunkCount());
+        assertEquals(2L * CHUNK, manifest.offset(2));
+        assertEquals(3, Manifest.of(ByteBuffer.allocate(3 * CHUNK))
+                                .chunkCount());
+        assertEquals(0, Manifest.of(ByteBuffer.allocate(0)).chunkCount());
+    }// cutsTheFileIntoChunks
+
+    @Test
+    void findsTheIntactChunksOfAPartialCopy() throws IOException
+    {
+        byte[] content = content(5 * CHUNK + 100);
+        Path file = write("file", content);
+        Manifest manifest;
+        try (FileChannel channel = FileChannel.open(file)) {
+            manifest = Manifest.of(channel);
+            assertEquals(all(6), manifest.intactChunks(channel));
+        }
+        // the same manifest from the bytes in memory
+        try (FileChannel channel = FileChannel.open(file)) {
+            assertEquals(all(6), Manifest.of(ByteBuffer.wrap(content))
+                                         .intactChunks(channel));
+        }
+
+        // chunk 1 torn, chunk 4 cut short, chunk 5 missing
+        byte[] partial = Arrays.copyOf(content, 4 * CHUNK + 7);
+        partial[CHUNK + 3] ^= 1;
+        Path copy = write("copy", partial);
+        BitSet intact = new BitSet();
+        intact.set(0);
+        intact.set(2, 4);
+        try (FileChannel channel = FileChannel.open(copy)) {
+            assertEquals(intact, manifest.intactChunks(channel));
+        }
+    }// findsTheIntactChunksOfAPartialCopy
+
+    @Test
+    @Timeout(60)
+    void goesThroughRdt() throws Exception
+    {
+        // more hashes than fit in a single MSG_MANIFEST
+        Manifest manifest = Manifest.of(ByteBuffer.allocate(3000 * CHUNK
+                                                            + 1));
+        BitSet have = new BitSet();
+        have.set(0, 700);
+        have.set(1500);
+        have.set(2990, 3001);
+        int port = Ports.free(2);
+        RDT server = new RDT(null, port, port + 1, "S");
+        RDT client = new RDT(null, port + 1, port, "");
+        try {
+            manifest.send(server);
+            Manifest received = Manifest.receive(client);
+            assertEquals(manifest.size(), received.size());
+            assertEquals(manifest.chunkCount(), received.chunkCount());
+            Path zeros = write("zeros", new byte[3000 * CHUNK + 1]);
+            try (FileChannel channel = FileChannel.open(zeros)) {
+                assertEquals(all(3001), received.intactChunks(channel));
+            }
+
+            received.sendChunkSet(client, have);
+            assertEquals(have, manifest.receiveChunkSet(server));
+        } finally {
+            Streams.close(new RDT[]{server, client});
+        }
+    }// goesThroughRdt
+
+    private Path write(String name, byte[] content) throws IOException
+    {
+        Path file = dir.resolve(name);
+        Files.write(file, content, StandardOpenOption.CREATE_NEW);
+        return file;
+    }// write
+
+    private static byte[] content(int length)
+    {
+        byte[] content = new byte[length];
+        new Random(391).nextBytes(content);
+        return content;
+    }// content
+
+    // returns the set of the first n chunks
+    private static BitSet all(int n)
+    {
+        BitSet chunks = new BitSet();
+        chunks.set(0, n);
+        return chunks;
+    }// all
+}// ManifestTest
@@ -0,0 +1,185 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: PacketCodecTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+/**
+ * PacketCodec: data packets, piggybacked and standalone ACKs, and parity
+ * packets go through encoding and decoding unchanged, with either check,
+ * traced or not, in heap and direct buffers; a flipped bit fails the
+ * check.
+ */
+class PacketCodecTest
+{
+    private static final int SESSION = 0x12345678;
+
+    // every check, traced or not, in heap and direct buffers
+    static Stream<Arguments> codecs()
+    {
+        Stream.Builder<Arguments> codecs = Stream.builder();
+        for (IntegrityCheck check : new IntegrityCheck[]{new XorCheck(),
+                                                         new Crc32cCheck()})
+            for (boolean trace : new boolean[]{false, true})
+                for (boolean direct : new boolean[]{false, true})
+                    codecs.add(Arguments.of(check, trace, direct));
+        return codecs.build();
+    }// codecs
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void dataRoundTrip(IntegrityCheck check, boolean trace, boolean direct)
+    {
+        PacketCodec codec = new PacketCodec(check, trace);
+        byte[] message = message(1000);
+        ByteBuffer packet = allocate(codec.maxPacketSize(), direct);
+        int length = encode(codec, packet, message, 42);
+
+        assertTrue(codec.verify(packet, length));
+        assertEquals(PacketCodec.TYPE_DATA, PacketCodec.type(packet));
+        assertEquals(trace, PacketCodec.traced(packet));
+        assertFalse(PacketCodec.hasAck(packet));
+        assertEquals(SESSION, PacketCodec.sessionId(packet));
+        assertEquals(42, PacketCodec.seqNum(packet));
+        if (trace)
+            assertEquals(391L, codec.stampOf(packet));
+        codec.payload(packet, length);
+        assertEquals(ByteBuffer.wrap(message), packet);
+    }// dataRoundTrip
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void corruptionFailsTheCheck(IntegrityCheck check, boolean trace,
+                                 boolean direct)
+    {
+        PacketCodec codec = new PacketCodec(check, trace);
+        ByteBuffer packet = allocate(codec.maxPacketSize(), direct);
+        int length = encode(codec, packet, message(100), 7);
+        for (int at : new int[]{0, PacketCodec.HEADER_SIZE + 50,
+                                length - 1}) {
+            packet.put(at, (byte) (packet.get(at) ^ 0x10));
+            assertFalse(codec.verify(packet, length), "flipped at " + at);
+            packet.put(at, (byte) (packet.get(at) ^ 0x10));
+        }
+        assertTrue(codec.verify(packet, length));
+        assertFalse(codec.verify(packet, PacketCodec.HEADER_SIZE));
+    }// corruptionFailsTheCheck
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void piggybackedAckRoundTrip(IntegrityCheck check, boolean trace,
+                                 boolean direct)
+    {
+        PacketCodec codec = new PacketCodec(check, trace);
+        byte[] message = message(500);
+        ByteBuffer packet = allocate(codec.maxPacketSize(), direct);
+        encode(codec, packet, message, 9);
+        // a retransmission replaces the ACK of the previous one
+        codec.addAck(packet, 1, 2, 3, 4, 5, 6);
+        codec.addAck(packet, 17, 20, 0b1011, 24, 1234, 56);
+        int length = packet.limit();
+
+        assertTrue(codec.verify(packet, length));
+        assertTrue(PacketCodec.hasAck(packet));
+        assertEquals(PacketCodec.TYPE_DATA, PacketCodec.type(packet));
+        int at = codec.ackFields(packet, length);
+        assertEquals(17, PacketCodec.cumAck(packet, at));
+        assertEquals(20, PacketCodec.selectiveAck(packet, at));
+        assertEquals(0b1011, PacketCodec.sackBitmap(packet, at));
+        assertEquals(24, PacketCodec.window(packet, at));
+        if (trace) {
+            assertEquals(1234, PacketCodec.echo(packet, at));
+            assertEquals(56, PacketCodec.hold(packet, at));
+            assertEquals(391L, codec.stampOf(packet));
+        }
+        ByteBuffer payload = packet.duplicate();
+        codec.payload(payload, length);
+        assertEquals(ByteBuffer.wrap(message), payload);
+
+        codec.dropAck(packet);
+        assertFalse(PacketCodec.hasAck(packet));
+        assertTrue(codec.verify(packet, packet.limit()));
+        codec.payload(packet, packet.limit());
+        assertEquals(ByteBuffer.wrap(message), packet);
+    }// piggybackedAckRoundTrip
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void ackRoundTrip(IntegrityCheck check, boolean trace, boolean direct)
+    {
+        PacketCodec codec = new PacketCodec(check, trace);
+        ByteBuffer ack = allocate(codec.ackSize(), direct);
+        codec.encodeAck(ack, SESSION, 100, 104, 0x8000_0001, 32, 77, 88);
+
+        assertEquals(codec.ackSize(), ack.limit());
+        assertTrue(codec.verify(ack, ack.limit()));
+        assertEquals(PacketCodec.TYPE_ACK, PacketCodec.type(ack));
+        assertEquals(SESSION, PacketCodec.sessionId(ack));
+        int at = codec.ackFields(ack, ack.limit());
+        assertEquals(100, PacketCodec.cumAck(ack));
+        assertEquals(104, PacketCodec.selectiveAck(ack, at));
+        assertEquals(0x8000_0001, PacketCodec.sackBitmap(ack, at));
+        assertEquals(32, PacketCodec.window(ack, at));
+        if (trace) {
+            assertEquals(77, PacketCodec.echo(ack, at));
+            assertEquals(88, PacketCodec.hold(ack, at));
+        }
+    }// ackRoundTrip
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void parityRoundTrip(IntegrityCheck check, boolean trace, boolean direct)
+    {
+        PacketCodec codec = new PacketCodec(check, trace);
+        byte[] sum = message(300);
+        ByteBuffer packet = allocate(codec.maxPacketSize(), direct);
+        codec.encodeParity(packet, SESSION, 64, 8, 5, ByteBuffer.wrap(sum));
+        int length = packet.limit();
+
+        assertTrue(codec.verify(packet, length));
+        assertEquals(PacketCodec.TYPE_PARITY, PacketCodec.type(packet));
+        assertEquals(64, PacketCodec.seqNum(packet));
+        assertEquals(8, PacketCodec.blockSize(packet));
+        assertEquals(5, PacketCodec.parityCount(packet));
+        codec.parity(packet, length);
+        assertEquals(ByteBuffer.wrap(sum), packet);
+    }// parityRoundTrip
+
+    // encodes the given message into a data packet of the given sequence
+    // number and returns its length
+    private static int encode(PacketCodec codec, ByteBuffer packet,
+                              byte[] message, int seqNum)
+    {
+        codec.startData(packet);
+        packet.put(message);
+        codec.endData(packet);
+        codec.stamp(packet, 391);
+        codec.sealData(packet, SESSION, seqNum);
+        return packet.limit();
+    }// encode
+
+    static byte[] message(int length)
+    {
+        byte[] message = new byte[length];
+        new Random(length).nextBytes(message);
+        return message;
+    }// message
+
+    private static ByteBuffer allocate(int capacity, boolean direct)
+    {
+        return direct ? ByteBuffer.allocateDirect(capacity)
+                      : ByteBuffer.allocate(capacity);
+    }// allocate
+}// PacketCodecTest
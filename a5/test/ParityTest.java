@@ -0,0 +1,145 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: ParityTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Parity: the one packet of a block that the receiver misses is rebuilt
+ * from the parity of the sender, sent in a parity packet, and from that of
+ * the packets that the receiver got, whatever their lengths and types.
+ */
+class ParityTest
+{
+    private static final int BLOCK = 8;
+
+    private final PacketCodec codec = new PacketCodec(new Crc32cCheck());
+
+    @Test
+    void rebuildsAnyMissingPacket()
+    {
+        ByteBuffer[] packets = block();
+        for (int missing = 0; missing < BLOCK; missing++) {
+            Parity sent = new Parity();
+            Parity received = new Parity();
+            sent.reset(3);
+            received.reset(3);
+            for (int i = 0; i < BLOCK; i++) {
+                add(sent, i, packets[i]);
+                if (i != missing)
+                    add(received, i, packets[i]);
+            }
+            assertEquals(-1L, sent.members() | (-1L << BLOCK));
+            assertFalse(received.has(missing));
+
+            ByteBuffer rebuilt = ByteBuffer.allocate(codec.maxPacketSize());
+            assertTrue(received.rebuild(sent.sum(), rebuilt));
+            assertEquals(PacketCodec.type(packets[missing]),
+                         PacketCodec.type(rebuilt), "packet " + missing);
+            assertEquals(packets[missing], rebuilt, "packet " + missing);
+        }
+    }// rebuildsAnyMissingPacket
+
+    @Test
+    void rebuildsFromAParityPacket()
+    {
+        ByteBuffer[] packets = block();
+        Parity sent = new Parity();
+        Parity received = new Parity();
+        sent.reset(0);
+        received.reset(0);
+        for (int i = 0; i < BLOCK; i++) {
+            add(sent, i, packets[i]);
+            if (i != 5)
+                add(received, i, packets[i]);
+        }
+        ByteBuffer parity = ByteBuffer.allocate(codec.maxPacketSize());
+        codec.encodeParity(parity, 1, 0, BLOCK, BLOCK, sent.sum());
+        int length = parity.limit();
+        assertTrue(codec.verify(parity, length));
+        codec.parity(parity, length);
+
+        ByteBuffer rebuilt = ByteBuffer.allocate(codec.maxPacketSize());
+        assertTrue(received.rebuild(parity, rebuilt));
+        assertEquals(packets[5], rebuilt);
+    }// rebuildsFromAParityPacket
+
+    @Test
+    void startsAfreshOnReset()
+    {
+        ByteBuffer[] packets = block();
+        Parity parity = new Parity();
+        parity.reset(0);
+        for (int i = 0; i < BLOCK; i++)
+            add(parity, i, packets[i]);
+        // a shorter block next: what is left of the longest packet of the
+        // previous one must not show through
+        parity.reset(1);
+        assertEquals(1, parity.block());
+        assertEquals(0, parity.members());
+        assertEquals(0, parity.sum().remaining());
+        add(parity, 0, packets[1]);
+        Parity empty = new Parity();
+        empty.reset(1);
+        ByteBuffer rebuilt = ByteBuffer.allocate(codec.maxPacketSize());
+        assertTrue(empty.rebuild(parity.sum(), rebuilt));
+        assertEquals(packets[1], rebuilt);
+    }// startsAfreshOnReset
+
+    @Test
+    void rejectsWhatIsNoPacket()
+    {
+        Parity parity = new Parity();
+        parity.reset(0);
+        ByteBuffer rebuilt = ByteBuffer.allocate(codec.maxPacketSize());
+        // too short to hold a type and a length
+        assertFalse(parity.rebuild(ByteBuffer.allocate(2), rebuilt));
+        // not a data type
+        ByteBuffer sum = ByteBuffer.allocate(Parity.SUM_HEADER);
+        sum.put(0, PacketCodec.TYPE_ACK);
+        assertFalse(parity.rebuild(sum, rebuilt));
+        // longer than a message
+        sum.put(0, PacketCodec.TYPE_DATA)
+           .putShort(1, (short) (A5.MAX_MSG_SIZE + 1));
+        assertFalse(parity.rebuild(sum, rebuilt));
+    }// rejectsWhatIsNoPacket
+
+    // adds the given packet (see block) as packet i of the block
+    private static void add(Parity parity, int i, ByteBuffer packet)
+    {
+        parity.add(i, PacketCodec.type(packet), packet, packet.position(),
+                   packet.limit());
+    }// add
+
+    /**
+     * Returns the data packets of a block, of every data type and of
+     * various lengths (an empty one, a full one), each trimmed down to its
+     * payload as the receiver leaves it (see PacketCodec.payload)
+     */
+    private ByteBuffer[] block()
+    {
+        int[] lengths = {1000, 8, A5.MAX_MSG_SIZE, 0, 13, 4096, 7, 999};
+        ByteBuffer[] packets = new ByteBuffer[BLOCK];
+        for (int i = 0; i < BLOCK; i++) {
+            ByteBuffer packet = ByteBuffer.allocate(codec.maxPacketSize());
+            codec.startData(packet);
+            packet.put(PacketCodecTest.message(lengths[i]));
+            if (lengths[i] == 0)
+                codec.endFin(packet);
+            else
+                codec.endData(packet, i % 2 == 0);
+            codec.sealData(packet, 1, i);
+            codec.payload(packet, packet.limit());
+            packets[i] = packet;
+        }
+        return packets;
+    }// block
+}// ParityTest
@@ -0,0 +1,46 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: Ports.java
+ *
+ **************************************************/
+
+import java.net.DatagramSocket;
+import java.net.SocketException;
+
+/**
+ * UDP ports for the tests, picked by the OS among its ephemeral ports
+ * rather than hard-coded, so that tests never clash with each other nor
+ * with whatever else runs on the machine.
+ */
+class Ports
+{
+    private static final int ATTEMPTS = 100;
+
+    /**
+     * Returns the first of the given # of consecutive UDP ports that were
+     * free a moment ago: the OS picks the first one, and the next ones are
+     * tried in turn (over again if one of them is taken)
+     */
+    static int free(int count)
+    {
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            DatagramSocket[] sockets = new DatagramSocket[count];
+            try {
+                sockets[0] = new DatagramSocket(0);
+                int first = sockets[0].getLocalPort();
+                for (int i = 1; i < count; i++)
+                    sockets[i] = new DatagramSocket(first + i);
+                return first;
+            } catch (SocketException | IllegalArgumentException e) {
+                // one of them is taken (or out of range): try again
+            } finally {
+                for (DatagramSocket socket : sockets)
+                    if (socket != null)
+                        socket.close();
+            }
+        }
+        throw new IllegalStateException(
+            "no " + count + " consecutive free UDP ports");
+    }// free
+}// Ports
@@ -0,0 +1,133 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTServerTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * An RDTServer on one port and plain RDT clients on theirs: every client
+ * gets a session of its own, found by its session ID, several clients are
+ * served at once, and the sessions of clients that went away are reaped.
+ */
+class RDTServerTest
+{
+    private static final int CLIENTS = 4;
+    private static final int MESSAGES = 100;
+
+    @Test
+    @Timeout(60)
+    void servesConcurrentSessionsByTheirId() throws Exception
+    {
+        int port = Ports.free(1 + CLIENTS);
+        Set<Integer> served = ConcurrentHashMap.newKeySet();
+        // echoes the messages of every session until its client closes
+        RDTServer server = new RDTServer(port, new RDTConfig(), session -> {
+            served.add(session.sessionId());
+            byte[] message;
+            while ((message = session.receiveData()) != null)
+                session.sendData(message);
+            session.close();
+        }, 1, CLIENTS, 10_000, 60_000);
+        server.start();
+        try {
+            RDT[] clients = new RDT[CLIENTS];
+            Set<Integer> opened = ConcurrentHashMap.newKeySet();
+            Thread[] threads = new Thread[CLIENTS];
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                clients[c] = new RDT(null, port + 1 + c, port, "");
+                opened.add(clients[c].sessionId());
+                RDT client = clients[c];
+                int id = c;
+                threads[c] = new Thread(() -> {
+                    try {
+                        echo(client, id);
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                threads[c].start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+            assertNull(failure.get());
+            assertEquals(CLIENTS, opened.size());
+            assertEquals(opened, served);
+        } finally {
+            server.close();
+        }
+    }// servesConcurrentSessionsByTheirId
+
+    @Test
+    @Timeout(60)
+    void reapsTheSessionsOfClientsThatWentAway() throws Exception
+    {
+        int port = Ports.free(2);
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch ended = new CountDownLatch(1);
+        RDTServer server = new RDTServer(port, new RDTConfig(), session -> {
+            opened.countDown();
+            while (session.receiveData() != null)
+                ;
+            ended.countDown(); // terminated under the handler
+        }, 1, 1, 60_000, 300);
+        server.start();
+        RDT client = new RDT(null, port + 1, port, "");
+        try {
+            client.sendData(new byte[]{1, 2, 3});
+            assertTrue(opened.await(10, TimeUnit.SECONDS));
+            assertEquals(1, server.sessionCount());
+            client.terminate(); // no FIN: the server never hears again
+            assertTrue(ended.await(10, TimeUnit.SECONDS));
+            assertEquals(0, server.sessionCount());
+        } finally {
+            client.terminate();
+            server.close();
+        }
+    }// reapsTheSessionsOfClientsThatWentAway
+
+    @Test
+    @Timeout(60)
+    void reapsWithTheShortestIdleTime() throws Exception
+    {
+        RDTServer server = new RDTServer(Ports.free(1), new RDTConfig(),
+                                         session -> { }, 1, 1, 0, 1);
+        server.start(); // reaps every ms
+        server.close();
+    }// reapsWithTheShortestIdleTime
+
+    // sends MESSAGES messages specific to the given client over it, checks
+    // that they all come back in order, then closes the client
+    private static void echo(RDT client, int id) throws Exception
+    {
+        for (int i = 0; i < MESSAGES; i++)
+            client.sendData(message(id, i));
+        for (int i = 0; i < MESSAGES; i++)
+            assertArrayEquals(message(id, i), client.receiveData(),
+                              "client " + id + ", message " + i);
+        assertTrue(client.close(5000));
+    }// echo
+
+    // returns message i of the given client
+    private static byte[] message(int id, int i)
+    {
+        byte[] message = new byte[1 + (id * 131 + i * 997) % 4000];
+        for (int j = 0; j < message.length; j++)
+            message[j] = (byte) (id * 31 + i + j);
+        return message;
+    }// message
+}// RDTServerTest
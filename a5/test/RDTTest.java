@@ -0,0 +1,611 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RDTTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Two RDT instances over the loopback interface: every message arrives
+ * intact and in order whatever MyDatagramSocket drops (socket.drop, or in
+ * bursts across its NetEmulator), with either sliding window, with parity
+ * packets (see Parity), in segments (see RDTConfig.mtu), on the loops of
+ * an RDTEngine (through a LossyRelay), and when a slow receiver keeps its
+ * receive window (see RDTConfig.receiveQueueCapacity) closed. Both sides close gracefully,
+ * even under losses, a close gives up on a dead peer, and neither close
+ * nor terminate leaves a thread behind. The futures of sendAsync complete
+ * once their whole message is ACKed, and the receive publisher pushes no
+ * more messages than requested. Delayed ACKs (see RDTConfig.ackFrequency)
+ * and bursts (see RDTConfig.ioBatch) cut the # of ACKs. The metrics (see
+ * RDTMetrics) add up, locally and through JMX, and so do the traces (see
+ * PacketTrace) dumped in files.
+ */
+class RDTTest
+{
+    @AfterEach
+    void noMoreErrors()
+    {
+        System.clearProperty("socket.drop");
+        System.clearProperty("socket.seed");
+        System.clearProperty("socket.mtu");
+        System.clearProperty("socket.gemodel");
+        System.clearProperty("socket.latency");
+    }// noMoreErrors
+
+    @Test
+    @Timeout(60)
+    void selectiveRepeatRecoversFromDrops() throws Exception
+    {
+        System.setProperty("socket.drop", "10");
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        transfer(config, new RDTConfig(), 300, 0);
+        assertTrue(config.metrics.getInjectedDrops() > 0);
+        assertTrue(config.metrics.getRetransmissions() > 0);
+    }// selectiveRepeatRecoversFromDrops
+
+    @Test
+    @Timeout(60)
+    void goBackNRecoversFromDrops() throws Exception
+    {
+        System.setProperty("socket.drop", "10");
+        RDTConfig config = config(RDT.Mode.GO_BACK_N, 8);
+        transfer(config, new RDTConfig(), 300, 0);
+        assertTrue(config.metrics.getRetransmissions() > 0);
+    }// goBackNRecoversFromDrops
+
+    @Test
+    @Timeout(60)
+    void recoversFromBurstsOfLosses() throws Exception
+    {
+        // Gilbert-Elliott: the bad state, where every packet is lost, lasts
+        // 4 packets on average and takes up about 1 packet out of 9; the
+        // path has 1 ms of latency (see NetEmulator)
+        System.setProperty("socket.gemodel", "3,25");
+        System.setProperty("socket.latency", "1");
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        transfer(config, receiver, 300, 0);
+        assertTrue(config.metrics.getInjectedDrops()
+                   + receiver.metrics.getInjectedDrops() > 0);
+        assertTrue(config.metrics.getRetransmissions() > 0);
+    }// recoversFromBurstsOfLosses
+
+    @Test
+    @Timeout(60)
+    void parityRebuildsDroppedPackets() throws Exception
+    {
+        System.setProperty("socket.drop", "20");
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        config.fecBlock = 4;
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        receiver.fecBlock = 4;
+        transfer(config, receiver, 300, 0);
+        assertTrue(config.metrics.getParityPacketsSent() > 0);
+        assertTrue(receiver.metrics.getPacketsRebuilt() > 0);
+    }// parityRebuildsDroppedPackets
+
+    @Test
+    @Timeout(60)
+    void segmentsMessagesLargerThanTheMtu() throws Exception
+    {
+        // datagrams above 1500 bytes are dropped, like the path MTU probes
+        // beyond it: messages of up to 8 KB must go in segments
+        System.setProperty("socket.drop", "10");
+        System.setProperty("socket.mtu", "1500");
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        config.mtu = 1200;
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        receiver.mtu = 1200;
+        transfer(config, receiver, 100, 0);
+        assertTrue(config.metrics.getPacketsSent()
+                   - config.metrics.getRetransmissions() > 2 * 100);
+    }// segmentsMessagesLargerThanTheMtu
+
+    @Test
+    @Timeout(60)
+    void delayedAcksCutTheAckCount() throws Exception
+    {
+        // the receiver ACKs every 4th packet, or once it held an ACK back
+        // for 5 ms
+        RDTConfig everyPacket = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        transfer(config(RDT.Mode.SELECTIVE_REPEAT, 16), everyPacket, 300, 0);
+        RDTConfig delayed = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        delayed.ackFrequency = 4;
+        delayed.maxAckDelayMillis = 5;
+        transfer(config(RDT.Mode.SELECTIVE_REPEAT, 16), delayed, 300, 0);
+        assertTrue(delayed.metrics.getAcksSent()
+                   < everyPacket.metrics.getAcksSent() / 2);
+    }// delayedAcksCutTheAckCount
+
+    @Test
+    @Timeout(60)
+    void ioBatchMovesPacketsInBursts() throws Exception
+    {
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 32);
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 32);
+        for (RDTConfig c : new RDTConfig[]{config, receiver}) {
+            c.transport = RDT.TransportType.CHANNEL;
+            c.ioBatch = 32;
+        }
+        transfer(config, receiver, 1000, 0);
+        // the in-order packets of a burst share an ACK
+        assertTrue(receiver.metrics.getAcksSent()
+                   < receiver.metrics.getPacketsReceived());
+    }// ioBatchMovesPacketsInBursts
+
+    @Test
+    @Timeout(60)
+    void metricsAccountForTheTransfer() throws Exception
+    {
+        System.setProperty("socket.drop", "10");
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        transfer(config, receiver, 300, 0);
+        RDTMetrics sent = config.metrics;
+        assertTrue(sent.getPacketsSent() >= 300 + sent.getRetransmissions());
+        assertTrue(sent.getAcksReceived() > 0);
+        assertTrue(receiver.metrics.getPacketsReceived() >= 300);
+        assertTrue(receiver.metrics.getAcksSent() > 0);
+        assertTrue(sent.getInjectedDrops() > 0);
+        assertTrue(sent.getTimeouts() + sent.getRetransmissions() > 0);
+        assertTrue(sent.getRttP50Micros() > 0);
+        assertTrue(sent.getRttP50Micros() <= sent.getRttP99Micros());
+        assertTrue(sent.getRttP99Micros() <= sent.getRttMaxMicros());
+        assertTrue(sent.getSendQueueDepthMax() <= config.sendQueueCapacity);
+        assertTrue(receiver.metrics.getReceiveQueueDepthMax()
+                   <= receiver.receiveQueueCapacity);
+
+        // the same figures through JMX
+        String name = "metrics-test-" + System.nanoTime();
+        sent.register(name);
+        ObjectName object = new ObjectName(
+            "a5:type=RDT,name=" + ObjectName.quote(name));
+        try {
+            assertEquals(sent.getPacketsSent(),
+                         ManagementFactory.getPlatformMBeanServer()
+                             .getAttribute(object, "PacketsSent"));
+            ManagementFactory.getPlatformMBeanServer()
+                .invoke(object, "reset", null, null);
+            assertEquals(0, sent.getPacketsSent());
+            assertEquals(0, sent.getRttMaxMicros());
+        } finally {
+            ManagementFactory.getPlatformMBeanServer()
+                .unregisterMBean(object);
+        }
+    }// metricsAccountForTheTransfer
+
+    @Test
+    @Timeout(60)
+    void dumpsATraceThatParsesBack(@TempDir Path dir) throws Exception
+    {
+        System.setProperty("socket.drop", "10");
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        for (RDTConfig c : new RDTConfig[]{config, receiver}) {
+            c.trace = true;
+            c.traceDump = dir.resolve("rdt").toString();
+        }
+        transfer(config, receiver, 300, 0);
+        // one file per instance, named after its tag (see RDT.terminate)
+        Map<PacketTrace.Event, Set<Integer>> sender =
+            parseTrace(onlyFile(dir, "rdt-S-"));
+        Map<PacketTrace.Event, Set<Integer>> app =
+            parseTrace(onlyFile(dir, "rdt--"));
+        for (int seqNum = 0; seqNum < 300; seqNum++) {
+            for (PacketTrace.Event event : new PacketTrace.Event[] {
+                     PacketTrace.Event.QUEUED, PacketTrace.Event.SENT })
+                assertTrue(sender.get(event).contains(seqNum),
+                           event + " " + seqNum);
+            for (PacketTrace.Event event : new PacketTrace.Event[] {
+                     PacketTrace.Event.RECEIVED, PacketTrace.Event.DELIVERED,
+                     PacketTrace.Event.TAKEN })
+                assertTrue(app.get(event).contains(seqNum),
+                           event + " " + seqNum);
+        }
+        // 1 packet out of 10 dropped
+        assertTrue(sender.get(PacketTrace.Event.RESENT).size() > 0);
+        assertTrue(sender.get(PacketTrace.Event.ACKED).size() > 0);
+        assertTrue(app.get(PacketTrace.Event.ACK_SENT).size() > 0);
+    }// dumpsATraceThatParsesBack
+
+    @Test
+    @Timeout(60)
+    void engineRecoversFromDrops() throws Exception
+    {
+        // the channel transport injects no error: the packets go through a
+        // relay of MyDatagramSockets that drop them both ways
+        System.setProperty("socket.drop", "10");
+        RDTEngine engine = new RDTEngine(2);
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        RDTConfig receiverConfig = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        for (RDTConfig c : new RDTConfig[]{config, receiverConfig}) {
+            c.transport = RDT.TransportType.CHANNEL;
+            c.engine = engine;
+        }
+        RDTMetrics injected = new RDTMetrics();
+        int port = Ports.free(4);
+        try (LossyRelay relay =
+                 new LossyRelay(port + 2, port, port + 1, injected)) {
+            transfer(new RDT(null, port, port + 2, "S", config),
+                     new RDT(null, port + 1, port + 3, "", receiverConfig),
+                     300, 0);
+        }
+        assertTrue(injected.getInjectedDrops() > 0);
+        assertTrue(config.metrics.getRetransmissions() > 0);
+    }// engineRecoversFromDrops
+
+    @Test
+    @Timeout(60)
+    void slowReceiverHoldsTheSenderBack() throws Exception
+    {
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 32);
+        RDTConfig receiver = config(RDT.Mode.SELECTIVE_REPEAT, 32);
+        receiver.receiveQueueCapacity = 2;
+        // the window closes over and over: the sender probes it and waits
+        // for the window updates, never sending beyond the window
+        transfer(config, receiver, 200, 10);
+        assertTrue(config.metrics.getWindowProbes() > 0);
+        assertEquals(0, receiver.metrics.getWindowOverruns());
+        assertTrue(receiver.metrics.getReceiveQueueDepthMax() <= 2);
+    }// slowReceiverHoldsTheSenderBack
+
+    @Test
+    @Timeout(60)
+    void closesGracefullyOnBothSides() throws Exception
+    {
+        int port = Ports.free(2);
+        RDT sender = new RDT(null, port, port + 1, "S", new RDTConfig());
+        RDT receiver = new RDT(null, port + 1, port, "", new RDTConfig());
+        for (int i = 0; i < 10; i++)
+            sender.sendData(message(i));
+        AtomicBoolean closed = new AtomicBoolean();
+        Thread closer = new Thread(() -> closed.set(sender.close(5000)));
+        closer.start();
+        for (int i = 0; i < 10; i++)
+            assertArrayEquals(message(i), receiver.receiveData());
+        // the sender's FIN ends the stream
+        assertNull(receiver.receiveData());
+        assertTrue(receiver.close(5000));
+        closer.join();
+        assertTrue(closed.get());
+        assertNoThreadsLeft(sender, receiver);
+    }// closesGracefullyOnBothSides
+
+    @Test
+    @Timeout(60)
+    void closesGracefullyUnderLoss() throws Exception
+    {
+        System.setProperty("socket.drop", "10");
+        // with these seeds, the receiver's FIN or its ACK is dropped; the
+        // receiver, which only sent ACKs before, resends its FIN after its
+        // initial RTO, which the sender must linger for
+        for (long seed : new long[]{7919, 79190, 300922}) {
+            System.setProperty("socket.seed", Long.toString(seed));
+            int port = Ports.free(2);
+            RDT sender = new RDT(null, port, port + 1, "S", new RDTConfig());
+            RDT receiver = new RDT(null, port + 1, port, "",
+                                   new RDTConfig());
+            for (int i = 0; i < 50; i++)
+                sender.sendData(new byte[1000]);
+            for (int i = 0; i < 50; i++)
+                assertEquals(1000, receiver.receiveData().length);
+            AtomicBoolean closed = new AtomicBoolean();
+            Thread closer = new Thread(() -> closed.set(sender.close(5000)));
+            closer.start();
+            assertTrue(receiver.close(5000), "receiver, seed " + seed);
+            closer.join();
+            assertTrue(closed.get(), "sender, seed " + seed);
+        }
+    }// closesGracefullyUnderLoss
+
+    @Test
+    @Timeout(60)
+    void closeGivesUpOnADeadPeer() throws Exception
+    {
+        int port = Ports.free(2);
+        // nothing listens on port + 1
+        RDT lonely = new RDT(null, port, port + 1, "S", new RDTConfig());
+        lonely.sendData(message(1));
+        long start = System.nanoTime();
+        assertFalse(lonely.close(2000));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+                                                     - start);
+        assertTrue(elapsed < 2500, elapsed + " ms");
+        assertNoThreadsLeft(lonely);
+    }// closeGivesUpOnADeadPeer
+
+    @Test
+    @Timeout(60)
+    void terminateLeavesNoThreads() throws Exception
+    {
+        int port = Ports.free(2);
+        RDT sender = new RDT(null, port, port + 1, "S", new RDTConfig());
+        RDT receiver = new RDT(null, port + 1, port, "", new RDTConfig());
+        for (int i = 0; i < 10; i++)
+            sender.sendData(message(i));
+        sender.terminate();
+        receiver.terminate();
+        assertNoThreadsLeft(sender, receiver);
+    }// terminateLeavesNoThreads
+
+    @Test
+    @Timeout(60)
+    void sendAsyncCompletesOnceTheWholeMessageIsAcked() throws Exception
+    {
+        int port = Ports.free(2);
+        // the message takes several packets, only two of which fit in the
+        // receive buffer until the app takes them
+        RDTConfig config = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        config.mtu = 1200;
+        config.probeMtu = false;
+        RDTConfig receiverConfig = config(RDT.Mode.SELECTIVE_REPEAT, 16);
+        receiverConfig.mtu = 1200;
+        receiverConfig.probeMtu = false;
+        receiverConfig.receiveQueueCapacity = 2;
+        RDT sender = new RDT(null, port, port + 1, "S", config);
+        RDT receiver = new RDT(null, port + 1, port, "", receiverConfig);
+        try {
+            CompletableFuture<Void> acked =
+                sender.sendAsync(ByteBuffer.wrap(message(6)));
+            long deadline = System.nanoTime()
+                            + TimeUnit.SECONDS.toNanos(10);
+            while (config.metrics.getAcksReceived() == 0 &&
+                   System.nanoTime() < deadline)
+                Thread.sleep(10);
+            // the first packets are ACKed, not the last one
+            assertTrue(config.metrics.getAcksReceived() > 0);
+            Thread.sleep(200);
+            assertFalse(acked.isDone());
+            assertArrayEquals(message(6), receiver.receiveData());
+            acked.get(10, TimeUnit.SECONDS);
+        } finally {
+            Streams.close(new RDT[]{sender, receiver});
+        }
+    }// sendAsyncCompletesOnceTheWholeMessageIsAcked
+
+    @Test
+    @Timeout(60)
+    void sendAsyncFailsOnTerminate() throws Exception
+    {
+        int port = Ports.free(2);
+        // nothing listens on port + 1: no ACK ever comes
+        RDT lonely = new RDT(null, port, port + 1, "S", new RDTConfig());
+        CompletableFuture<Void> acked =
+            lonely.sendAsync(ByteBuffer.wrap(message(1)));
+        Thread.sleep(100);
+        assertFalse(acked.isDone());
+        lonely.terminate();
+        ExecutionException failure = assertThrows(
+            ExecutionException.class, () -> acked.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, failure.getCause());
+    }// sendAsyncFailsOnTerminate
+
+    @Test
+    @Timeout(60)
+    void publisherPushesWhatIsRequestedAndCompletesAtFin() throws Exception
+    {
+        int port = Ports.free(2);
+        RDT sender = new RDT(null, port, port + 1, "S",
+                             config(RDT.Mode.SELECTIVE_REPEAT, 16));
+        RDT receiver = new RDT(null, port + 1, port, "",
+                               config(RDT.Mode.SELECTIVE_REPEAT, 16));
+        List<byte[]> received = Collections.synchronizedList(
+                                    new ArrayList<>());
+        AtomicReference<Flow.Subscription> subscription =
+            new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch completed = new CountDownLatch(1);
+        receiver.receivePublisher().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription inSubscription)
+            {
+                subscription.set(inSubscription);
+                inSubscription.request(3);
+            }// onSubscribe
+
+            @Override
+            public void onNext(ByteBuffer message)
+            {
+                byte[] copy = new byte[message.remaining()];
+                message.get(copy);
+                received.add(copy);
+            }// onNext
+
+            @Override
+            public void onError(Throwable e)
+            {
+                failure.set(e);
+            }// onError
+
+            @Override
+            public void onComplete()
+            {
+                completed.countDown();
+            }// onComplete
+        });
+        try {
+            for (int i = 0; i < 10; i++)
+                sender.sendData(message(i));
+            sender.flush(); // all in the receive buffer
+            Thread.sleep(200);
+            assertEquals(3, received.size());
+            assertEquals(1, completed.getCount());
+
+            subscription.get().request(7);
+            AtomicBoolean closed = new AtomicBoolean();
+            Thread closer = new Thread(() -> closed.set(sender.close(5000)));
+            closer.start();
+            assertTrue(completed.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 10; i++)
+                assertArrayEquals(message(i), received.get(i));
+            assertNull(failure.get());
+            assertTrue(receiver.close(5000));
+            closer.join();
+            assertTrue(closed.get());
+        } finally {
+            Streams.close(new RDT[]{sender, receiver});
+        }
+    }// publisherPushesWhatIsRequestedAndCompletesAtFin
+
+    // checks that none of the threads of the given instances is alive
+    private static void assertNoThreadsLeft(RDT... instances)
+    {
+        for (RDT rdt : instances) {
+            String session = Integer.toHexString(rdt.sessionId());
+            for (Thread thread : Thread.getAllStackTraces().keySet())
+                assertFalse(thread.getName().equals("rdt-sender-" + session)
+                            || thread.getName().equals("rdt-receiver-"
+                                                       + session),
+                            thread.getName() + " is alive");
+        }
+    }// assertNoThreadsLeft
+
+    private static RDTConfig config(RDT.Mode mode, int window)
+    {
+        RDTConfig config = new RDTConfig();
+        config.mode = mode;
+        config.windowSize = window;
+        return config;
+    }// config
+
+    /**
+     * Sends the given # of messages (of various lengths) from an instance
+     * with the given configuration to one with the other, on free ports
+     * (see Ports), and checks that they all arrive intact and in
+     * order; the receiver pauses for a millisecond every pauseEvery
+     * messages (0: never)
+     */
+    private static void transfer(RDTConfig senderConfig,
+                                 RDTConfig receiverConfig, int messages,
+                                 int pauseEvery) throws Exception
+    {
+        int port = Ports.free(2);
+        transfer(new RDT(null, port, port + 1, "S", senderConfig),
+                 new RDT(null, port + 1, port, "", receiverConfig),
+                 messages, pauseEvery);
+    }// transfer
+
+    // same as above between the given instances, which it closes
+    private static void transfer(RDT sender, RDT receiver, int messages,
+                                 int pauseEvery) throws Exception
+    {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread app = new Thread(() -> {
+            try {
+                for (int i = 0; i < messages; i++)
+                    sender.sendData(ByteBuffer.wrap(message(i)));
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        app.start();
+        try {
+            ByteBuffer received = ByteBuffer.allocate(A5.MAX_MSG_SIZE);
+            for (int i = 0; i < messages; i++) {
+                received.clear();
+                int length = receiver.receiveData(received);
+                assertEquals(message(i).length, length, "message " + i);
+                assertEquals(ByteBuffer.wrap(message(i)), received.flip(),
+                             "message " + i);
+                if (pauseEvery > 0 && i % pauseEvery == 0)
+                    Thread.sleep(1);
+            }
+            app.join();
+            assertNull(failure.get());
+        } finally {
+            Streams.close(new RDT[]{sender, receiver});
+        }
+    }// transfer
+
+    // returns the only file of the given directory whose name starts with
+    // the given prefix
+    private static Path onlyFile(Path dir, String prefix) throws IOException
+    {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> found = files.filter(f -> f.getFileName().toString()
+                                                  .startsWith(prefix))
+                                    .toList();
+            assertEquals(1, found.size(), prefix + "* files: " + found);
+            return found.get(0);
+        }
+    }// onlyFile
+
+    /**
+     * Parses the given trace dump (see PacketTrace.dump): checks that every
+     * line is well-formed and in time order, and that as many events as
+     * announced were kept, then returns the sequence numbers met with
+     * each event
+     */
+    private static Map<PacketTrace.Event, Set<Integer>> parseTrace(Path file)
+        throws IOException
+    {
+        Map<PacketTrace.Event, Set<Integer>> seqNums =
+            new EnumMap<>(PacketTrace.Event.class);
+        for (PacketTrace.Event event : PacketTrace.Event.values())
+            seqNums.put(event, new HashSet<>());
+        List<String> lines = Files.readAllLines(file);
+        assertTrue(lines.get(0).startsWith("# queue "), lines.get(0));
+        String counts = lines.get(1);
+        assertTrue(counts.startsWith("# origin="), counts);
+        int kept = Integer.parseInt(
+            counts.substring(counts.indexOf("kept=") + 5));
+        assertEquals("time_us,event,seq,value_us", lines.get(2));
+        assertEquals(kept, lines.size() - 3);
+        double previous = 0;
+        for (String line : lines.subList(3, lines.size())) {
+            String[] fields = line.split(",");
+            assertEquals(4, fields.length, line);
+            double time = Double.parseDouble(fields[0]);
+            assertTrue(time >= previous, line);
+            previous = time;
+            assertTrue(Double.parseDouble(fields[3]) >= 0, line);
+            seqNums.get(PacketTrace.Event.valueOf(fields[1]))
+                   .add(Integer.parseInt(fields[2]));
+        }
+        return seqNums;
+    }// parseTrace
+
+    // returns message i, whose length and content depend on i
+    private static byte[] message(int i)
+    {
+        byte[] message = new byte[1 + i * 997 % A5.MAX_DATA_SIZE];
+        for (int j = 0; j < message.length; j++)
+            message[j] = (byte) (i + j);
+        return message;
+    }// message
+}// RDTTest
@@ -0,0 +1,153 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RingBufferTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+/**
+ * RingBuffer: capacity, FIFO order across wrap-arounds, the non-blocking
+ * and blocking sides, close, and one producer and one consumer running at
+ * once.
+ */
+class RingBufferTest
+{
+    @Test
+    void roundsCapacityUpToAPowerOfTwo()
+    {
+        assertEquals(1, new RingBuffer<Integer>(1).capacity());
+        assertEquals(8, new RingBuffer<Integer>(5).capacity());
+        assertEquals(8, new RingBuffer<Integer>(8).capacity());
+        assertThrows(IllegalArgumentException.class,
+                     () -> new RingBuffer<Integer>(0));
+    }// roundsCapacityUpToAPowerOfTwo
+
+    @Test
+    void offerFailsWhenFullAndPollWhenEmpty()
+    {
+        RingBuffer<Integer> queue = new RingBuffer<>(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        assertNull(queue.peek());
+        for (int i = 0; i < 4; i++)
+            assertTrue(queue.offer(i));
+        assertFalse(queue.offer(4));
+        assertEquals(4, queue.size());
+        assertEquals(0, queue.peek());
+        assertEquals(0, queue.poll());
+        assertTrue(queue.offer(4));
+        for (int i = 1; i <= 4; i++)
+            assertEquals(i, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }// offerFailsWhenFullAndPollWhenEmpty
+
+    @Test
+    void keepsOrderAcrossWrapArounds()
+    {
+        RingBuffer<Integer> queue = new RingBuffer<>(4);
+        int next = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 3; i++)
+                assertTrue(queue.offer(round * 3 + i));
+            for (int i = 0; i < 3; i++)
+                assertEquals(next++, queue.poll());
+        }
+    }// keepsOrderAcrossWrapArounds
+
+    @Test
+    @Timeout(10)
+    void closeWakesUpBothSides() throws Exception
+    {
+        RingBuffer<Integer> empty = new RingBuffer<>(1);
+        AtomicReference<Object> taken = new AtomicReference<>("not yet");
+        Thread consumer = new Thread(() -> {
+            try {
+                taken.set(empty.take());
+            } catch (InterruptedException e) {
+                taken.set(e);
+            }
+        });
+        RingBuffer<Integer> full = new RingBuffer<>(1);
+        full.offer(0);
+        AtomicReference<Throwable> put = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                full.put(1);
+            } catch (Throwable e) {
+                put.set(e);
+            }
+        });
+        consumer.start();
+        producer.start();
+        waitUntilParked(consumer);
+        waitUntilParked(producer);
+        empty.close();
+        full.close();
+        consumer.join();
+        producer.join();
+        assertNull(taken.get());
+        assertTrue(put.get() instanceof IllegalStateException);
+        // what is left can still be taken
+        assertEquals(0, full.take());
+        assertNull(full.take());
+    }// closeWakesUpBothSides
+
+    @Test
+    @Timeout(30)
+    void oneProducerAndOneConsumerAtOnce() throws Exception
+    {
+        int count = 200_000;
+        RingBuffer<Integer> queue = new RingBuffer<>(16);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; i++) {
+                    // both the non-blocking and the blocking path
+                    if (i % 2 == 0 || !queue.offer(i))
+                        queue.put(i);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            Integer element = i % 3 == 0 ? queue.take() : poll(queue);
+            assertEquals(i, element);
+            sum += element;
+        }
+        producer.join();
+        assertNull(failure.get());
+        assertEquals((long) count * (count - 1) / 2, sum);
+        assertTrue(queue.isEmpty());
+    }// oneProducerAndOneConsumerAtOnce
+
+    // spins on poll until an element comes in
+    private static Integer poll(RingBuffer<Integer> queue)
+    {
+        Integer element;
+        while ((element = queue.poll()) == null)
+            Thread.onSpinWait();
+        return element;
+    }// poll
+
+    private static void waitUntilParked(Thread thread)
+        throws InterruptedException
+    {
+        while (thread.getState() != Thread.State.WAITING)
+            TimeUnit.MILLISECONDS.sleep(1);
+    }// waitUntilParked
+}// RingBufferTest
@@ -0,0 +1,83 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: RttEstimatorTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * RttEstimator: the RFC 6298 estimates, the bounds of the RTO and the
+ * exponential backoff.
+ */
+class RttEstimatorTest
+{
+    private static final long MS = 1_000_000;
+
+    @Test
+    void startsFromTheInitialRto()
+    {
+        RttEstimator rtt = new RttEstimator(1000, 200, 60_000);
+        assertEquals(1000 * MS, rtt.rtoNanos());
+        assertEquals(-1, rtt.rttNanos());
+        assertEquals(-1, rtt.smoothedRttNanos());
+        assertThrows(IllegalArgumentException.class,
+                     () -> new RttEstimator(1000, 0, 100));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new RttEstimator(1000, 200, 100));
+    }// startsFromTheInitialRto
+
+    @Test
+    void followsJacobsonKarels()
+    {
+        RttEstimator rtt = new RttEstimator(1000, 1, 60_000);
+        rtt.sample(100 * MS);
+        assertEquals(100 * MS, rtt.smoothedRttNanos());
+        assertEquals(50 * MS, rtt.rttVariationNanos());
+        assertEquals(300 * MS, rtt.rtoNanos());         // 100 + 4 x 50
+
+        rtt.sample(200 * MS);
+        assertEquals(200 * MS, rtt.rttNanos());
+        // RTTVAR = 3/4 50 + 1/4 |100 - 200|, SRTT = 7/8 100 + 1/8 200
+        assertEquals(62_500_000, rtt.rttVariationNanos());
+        assertEquals(112_500_000, rtt.smoothedRttNanos());
+        assertEquals(362_500_000, rtt.rtoNanos());
+    }// followsJacobsonKarels
+
+    @Test
+    void keepsTheRtoWithinItsBounds()
+    {
+        RttEstimator rtt = new RttEstimator(1000, 200, 2000);
+        rtt.sample(1 * MS);
+        assertEquals(200 * MS, rtt.rtoNanos());
+        rtt.sample(10_000 * MS);
+        assertEquals(2000 * MS, rtt.rtoNanos());
+        // the clock granularity when the variation is gone
+        RttEstimator steady = new RttEstimator(1000, 1, 60_000);
+        for (int i = 0; i < 100; i++)
+            steady.sample(10 * MS);
+        assertEquals(11 * MS, steady.rtoNanos());
+    }// keepsTheRtoWithinItsBounds
+
+    @Test
+    void backsOffUntilTheNextSample()
+    {
+        RttEstimator rtt = new RttEstimator(1000, 200, 5000);
+        rtt.backoff();
+        assertEquals(2000 * MS, rtt.rtoNanos());
+        rtt.backoff();
+        assertEquals(4000 * MS, rtt.rtoNanos());
+        rtt.backoff();
+        rtt.backoff();
+        assertEquals(5000 * MS, rtt.rtoNanos());
+        rtt.resetBackoff();
+        assertEquals(1000 * MS, rtt.rtoNanos());
+        rtt.backoff();
+        rtt.sample(100 * MS);
+        assertEquals(300 * MS, rtt.rtoNanos());
+    }// backsOffUntilTheNextSample
+}// RttEstimatorTest
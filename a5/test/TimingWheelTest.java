@@ -0,0 +1,178 @@
+/**************************************************
+ * CS 391 - Spring 2024 - A5
+ *
+ * File: TimingWheelTest.java
+ *
+ **************************************************/
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * TimingWheel: timers expire neither early nor more than a tick late,
+ * whether they are cancelled, rescheduled (also from expired) or due
+ * several revolutions ahead, and nanosToNextExpiry finds the next one.
+ */
+class TimingWheelTest
+{
+    private static final long TICK = 1_000_000;       // 1 ms
+
+    private TimingWheel wheel;
+    private long start;                               // right after tick 0
+    private final List<String> expired = new ArrayList<>();
+
+    /*** inner class: NamedTimer ***/
+
+    // a timer that records its name when it expires
+    private class NamedTimer extends TimingWheel.Timer
+    {
+        private final String name;
+
+        NamedTimer(String inName)
+        {
+            name = inName;
+        }// constructor
+
+        @Override
+        protected void expired()
+        {
+            expired.add(name);
+        }// expired
+    }// NamedTimer
+
+    @BeforeEach
+    void newWheel()
+    {
+        wheel = new TimingWheel(TICK, 8);
+        start = System.nanoTime();
+    }// newWheel
+
+    @Test
+    void rejectsAnEmptyWheel()
+    {
+        assertThrows(IllegalArgumentException.class,
+                     () -> new TimingWheel(0, 8));
+        assertThrows(IllegalArgumentException.class,
+                     () -> new TimingWheel(TICK, 0));
+    }// rejectsAnEmptyWheel
+
+    @Test
+    void expiresNeitherEarlyNorLate()
+    {
+        NamedTimer timer = new NamedTimer("a");
+        wheel.schedule(timer, start + 5 * TICK);
+        assertTrue(timer.isScheduled());
+        assertEquals(1, wheel.size());
+        wheel.advance(start + 5 * TICK - 1);
+        assertEquals(List.of(), expired);
+        wheel.advance(start + 6 * TICK);
+        assertEquals(List.of("a"), expired);
+        assertFalse(timer.isScheduled());
+        assertEquals(0, wheel.size());
+    }// expiresNeitherEarlyNorLate
+
+    @Test
+    void expiresInDeadlineOrder()
+    {
+        wheel.schedule(new NamedTimer("late"), start + 6 * TICK);
+        wheel.schedule(new NamedTimer("early"), start + 2 * TICK);
+        wheel.schedule(new NamedTimer("past"), start - 10 * TICK);
+        for (int tick = 1; tick <= 10; tick++)
+            wheel.advance(start + tick * TICK);
+        assertEquals(List.of("past", "early", "late"), expired);
+    }// expiresInDeadlineOrder
+
+    @Test
+    void catchesUpAfterALongPause()
+    {
+        wheel.schedule(new NamedTimer("a"), start + 2 * TICK);
+        wheel.schedule(new NamedTimer("b"), start + 6 * TICK);
+        wheel.schedule(new NamedTimer("c"), start + 30 * TICK);
+        // more than a revolution at once: every bucket is visited once
+        wheel.advance(start + 20 * TICK);
+        assertEquals(2, expired.size());
+        assertTrue(expired.containsAll(List.of("a", "b")));
+        assertEquals(1, wheel.size());
+    }// expiresInDeadlineOrder
+
+    @Test
+    void cancelledTimersDoNotExpire()
+    {
+        NamedTimer a = new NamedTimer("a");
+        NamedTimer b = new NamedTimer("b");
+        NamedTimer c = new NamedTimer("c");
+        // all three in one bucket, b in the middle of its list
+        wheel.schedule(a, start + 3 * TICK);
+        wheel.schedule(b, start + 3 * TICK);
+        wheel.schedule(c, start + 3 * TICK);
+        wheel.cancel(b);
+        wheel.cancel(b);
+        assertEquals(2, wheel.size());
+        wheel.advance(start + 4 * TICK);
+        assertEquals(List.of("c", "a"), expired);
+    }// cancelledTimersDoNotExpire
+
+    @Test
+    void reschedulingMovesTheTimer()
+    {
+        NamedTimer timer = new NamedTimer("a");
+        wheel.schedule(timer, start + 2 * TICK);
+        wheel.schedule(timer, start + 5 * TICK);
+        assertEquals(1, wheel.size());
+        wheel.advance(start + 4 * TICK);
+        assertEquals(List.of(), expired);
+        wheel.advance(start + 6 * TICK);
+        assertEquals(List.of("a"), expired);
+    }// reschedulingMovesTheTimer
+
+    @Test
+    void keepsTimersDueAfterARevolution()
+    {
+        // 8 buckets: same bucket as tick 3, two revolutions later
+        wheel.schedule(new NamedTimer("far"), start + 19 * TICK);
+        wheel.advance(start + 4 * TICK);
+        wheel.advance(start + 12 * TICK);
+        assertEquals(List.of(), expired);
+        assertEquals(1, wheel.size());
+        wheel.advance(start + 20 * TICK);
+        assertEquals(List.of("far"), expired);
+    }// keepsTimersDueAfterARevolution
+
+    @Test
+    void timersCanBeRescheduledWhenTheyExpire()
+    {
+        int[] rounds = {0};
+        TimingWheel.Timer periodic = new TimingWheel.Timer() {
+            @Override
+            protected void expired()
+            {
+                if (++rounds[0] < 3)
+                    wheel.schedule(this, start + (rounds[0] + 1) * 10 * TICK);
+            }// expired
+        };
+        wheel.schedule(periodic, start + 10 * TICK);
+        for (int tick = 1; tick <= 40; tick++)
+            wheel.advance(start + tick * TICK);
+        assertEquals(3, rounds[0]);
+        assertFalse(periodic.isScheduled());
+    }// timersCanBeRescheduledWhenTheyExpire
+
+    @Test
+    void findsTheNextExpiry()
+    {
+        assertEquals(-1, wheel.nanosToNextExpiry(start));
+        wheel.schedule(new NamedTimer("a"), start + 5 * TICK);
+        long wait = wheel.nanosToNextExpiry(start);
+        // the tick holding the deadline ends at most one tick after it
+        assertTrue(wait >= 5 * TICK && wait <= 6 * TICK, "waits " + wait);
+        wheel.advance(start + wait);
+        assertEquals(List.of("a"), expired);
+    }// findsTheNextExpiry
+}// TimingWheelTest